@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * 接续图片解码流水线
+ * 在后台线程中先读取图片尺寸，再按目标View大小计算采样率解码，解码时复用已淘汰的Bitmap内存；
+ * 解码结果按图片内容缓存，同一张图片重复接续时直接使用缓存结果
+ *
+ * @since 2023-03-24
+ */
+public class BitmapDecodePipeline {
+    private static final String TAG = "HandoverDemo-BitmapDecodePipeline";
+
+    /**
+     * 计算内容key时读取文件头尾的字节数
+     */
+    private static final int CONTENT_KEY_SAMPLE_SIZE = 64 * 1024;
+
+    private static final int TEMP_STORAGE_SIZE = 16 * 1024;
+
+    private static final int MAX_REUSABLE_BITMAPS = 4;
+
+    private static volatile BitmapDecodePipeline sInstance;
+
+    private final ExecutorService mDecodeExecutor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "bitmap-decoder"));
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final LinkedList<SoftReference<Bitmap>> mReusableBitmaps = new LinkedList<>();
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    /**
+     * 解码临时缓冲区，只在解码线程中使用
+     */
+    private final byte[] mTempStorage = new byte[TEMP_STORAGE_SIZE];
+
+    private volatile Bitmap mLastDelivered;
+
+    /**
+     * 解码结果回调，在主线程中回调
+     */
+    public interface Callback {
+        /**
+         * 解码完成
+         *
+         * @param bitmap 解码结果，解码失败时为null
+         */
+        void onDecoded(Bitmap bitmap);
+    }
+
+    private BitmapDecodePipeline() {
+        // 使用最大可用内存的1/8作为解码缓存
+        int cacheSize = (int) (Runtime.getRuntime().maxMemory() / 8);
+        mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (evicted && oldValue != mLastDelivered) {
+                    addReusableBitmap(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * 获取解码流水线单例
+     *
+     * @return 解码流水线单例
+     */
+    public static BitmapDecodePipeline getInstance() {
+        if (sInstance == null) {
+            synchronized (BitmapDecodePipeline.class) {
+                if (sInstance == null) {
+                    sInstance = new BitmapDecodePipeline();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 在后台线程中解码图片，结果在主线程中回调
+     *
+     * @param path 图片路径
+     * @param reqWidth 目标宽度
+     * @param reqHeight 目标高度
+     * @param callback 解码结果回调
+     */
+    public void decode(String path, int reqWidth, int reqHeight, Callback callback) {
+        mDecodeExecutor.execute(() -> {
+            Bitmap bitmap = decodeSync(path, reqWidth, reqHeight);
+            mMainHandler.post(() -> callback.onDecoded(bitmap));
+        });
+    }
+
+    /**
+     * 预热解码线程，提前完成线程创建和缓存初始化
+     */
+    public void warmUp() {
+        mDecodeExecutor.execute(() -> Log.d(TAG, "warmUp: decode thread ready."));
+    }
+
+    /**
+     * 在当前线程中解码图片，不能在主线程调用
+     *
+     * @param path 图片路径
+     * @param reqWidth 目标宽度
+     * @param reqHeight 目标高度
+     * @return 解码结果，解码失败时为null
+     */
+    public Bitmap decodeSync(String path, int reqWidth, int reqHeight) {
+        long startTime = SystemClock.elapsedRealtime();
+        String key = contentKey(path, reqWidth, reqHeight);
+        if (key != null) {
+            Bitmap cached = mMemoryCache.get(key);
+            if (cached != null && !cached.isRecycled()) {
+                Log.i(TAG, "decodeSync: hit memory cache.");
+                mLastDelivered = cached;
+                return cached;
+            }
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "decodeSync: decode bounds failed.");
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inTempStorage = mTempStorage;
+        options.inBitmap = takeReusableBitmap(options);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // 复用的Bitmap不满足要求时不复用重新解码
+            Log.w(TAG, "decodeSync: inBitmap can not be reused.");
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(path, options);
+        }
+        if (bitmap == null) {
+            Log.e(TAG, "decodeSync: decode failed.");
+            return null;
+        }
+        if (key != null) {
+            mMemoryCache.put(key, bitmap);
+        }
+        mLastDelivered = bitmap;
+        Log.i(TAG, "decodeSync: " + options.outWidth + "x" + options.outHeight + " sample "
+                + options.inSampleSize + " cost " + (SystemClock.elapsedRealtime() - startTime) + "ms");
+        return bitmap;
+    }
+
+    /**
+     * 清空解码缓存和可复用Bitmap
+     */
+    public void clear() {
+        mMemoryCache.evictAll();
+        synchronized (mReusableBitmaps) {
+            mReusableBitmaps.clear();
+        }
+    }
+
+    /**
+     * 计算采样率，取使解码后宽高均不小于目标宽高的最大2的幂
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private void addReusableBitmap(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()) {
+            return;
+        }
+        synchronized (mReusableBitmaps) {
+            mReusableBitmaps.addFirst(new SoftReference<>(bitmap));
+            while (mReusableBitmaps.size() > MAX_REUSABLE_BITMAPS) {
+                mReusableBitmaps.removeLast();
+            }
+        }
+    }
+
+    /**
+     * 取出一个内存足够容纳本次解码结果的Bitmap
+     */
+    private Bitmap takeReusableBitmap(BitmapFactory.Options options) {
+        int width = options.outWidth / options.inSampleSize;
+        int height = options.outHeight / options.inSampleSize;
+        // ARGB_8888每个像素4字节
+        long byteCount = (long) width * height * 4;
+        synchronized (mReusableBitmaps) {
+            Iterator<SoftReference<Bitmap>> iterator = mReusableBitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap candidate = iterator.next().get();
+                if (candidate == null || candidate.isRecycled() || candidate == mLastDelivered) {
+                    iterator.remove();
+                    continue;
+                }
+                if (candidate.getAllocationByteCount() >= byteCount) {
+                    iterator.remove();
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按文件长度和文件头尾内容计算缓存key，同一张图片重复接续到同一路径时也能命中缓存
+     */
+    private static String contentKey(String path, int reqWidth, int reqHeight) {
+        File file = new File(path);
+        long length = file.length();
+        if (length <= 0) {
+            return null;
+        }
+        CRC32 crc32 = new CRC32();
+        byte[] buffer = new byte[(int) Math.min(length, CONTENT_KEY_SAMPLE_SIZE)];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            randomAccessFile.readFully(buffer);
+            crc32.update(buffer);
+            if (length > CONTENT_KEY_SAMPLE_SIZE) {
+                randomAccessFile.seek(length - buffer.length);
+                randomAccessFile.readFully(buffer);
+                crc32.update(buffer);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "contentKey: catch IOException.");
+            return null;
+        }
+        return length + "-" + Long.toHexString(crc32.getValue()) + "-" + reqWidth + "x" + reqHeight;
+    }
+}
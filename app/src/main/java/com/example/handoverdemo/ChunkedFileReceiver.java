@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分块可续传文件接续(Sink端)
+ * 按分块文件头中的偏移量将数据写入以传输ID命名的临时文件，写入后将已连续接收的数据量回复给Source端；
+ * 临时文件长度即为已确认的偏移量，应用进程重启后仍可从该位置继续接收。最后一个分块写入后先将临时文件
+ * 重命名为目标文件，成功后才确认全部接收，失败时回复错误，Source端结束传输
+ *
+ * @since 2023-03-08
+ */
+public class ChunkedFileReceiver {
+    public static final int RESULT_CHUNK_ACCEPTED = 2;
+
+    public static final int RESULT_COMPLETED = 0;
+
+    public static final int RESULT_ERR = -1;
+
+    private static final String TAG = "HandoverDemo-ChunkedFileReceiver";
+
+    private static final String PART_SUFFIX = ".part";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 记录的已完成传输数，用于在最后一个分块的确认丢失、Source端重发时直接回复已全部接收
+     */
+    private static final int MAX_COMPLETED_TRANSFERS = 32;
+
+    /**
+     * 超过该时间未写入的临时文件视为已中断的传输，开始新的传输时清理
+     */
+    private static final long STALE_PART_MS = 60 * 60 * 1000;
+
+    private final Context mContext;
+
+    private final HandoverManager mHandoverManager;
+
+    /**
+     * 最近完成的传输ID
+     */
+    private final Set<String> mCompletedTransfers = Collections.newSetFromMap(
+        new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_COMPLETED_TRANSFERS;
+            }
+        });
+
+    /**
+     * 分块处理结果
+     */
+    public static final class Result {
+        /**
+         * 处理结果，RESULT_XXX
+         */
+        public final int mCode;
+
+        /**
+         * 传输完成时为组装完成的文件路径，否则为空字符串
+         */
+        public final String mFilePath;
+
+        Result(int code, String filePath) {
+            this.mCode = code;
+            this.mFilePath = filePath;
+        }
+    }
+
+    ChunkedFileReceiver(Context context, HandoverManager handoverManager) {
+        this.mContext = context;
+        this.mHandoverManager = handoverManager;
+    }
+
+    /**
+     * 处理收到的分块文件，写入临时文件并回复确认，调用方已读取并校验文件头标记CHUNK_MAGIC
+     *
+     * @param peerNodeId Source端设备ID
+     * @param inputStream 接续文件输入流，位于文件头标记之后
+     * @return 处理结果
+     */
+    public Result onChunkReceived(String peerNodeId, DataInputStream inputStream) {
+        try {
+            if (inputStream.readInt() != ChunkedFileSender.CHUNK_VERSION) {
+                Log.e(TAG, "onChunkReceived: unsupported chunk version.");
+                return new Result(RESULT_ERR, "");
+            }
+            String transferId = inputStream.readUTF();
+            String fileName = inputStream.readUTF();
+            long totalSize = inputStream.readLong();
+            long offset = inputStream.readLong();
+            int length = inputStream.readInt();
+            if (!isPlainName(transferId)) {
+                // 传输ID用作临时文件名，不能包含路径
+                Log.e(TAG, "onChunkReceived: invalid transfer id.");
+                return new Result(RESULT_ERR, "");
+            }
+            if (isCompleted(transferId)) {
+                // 最后一个分块的确认丢失，Source端重发了分块，重新确认已全部接收
+                Log.w(TAG, "onChunkReceived: transfer " + transferId + " already completed, re-ack.");
+                sendAck(peerNodeId, transferId, totalSize, 0);
+                return new Result(RESULT_CHUNK_ACCEPTED, "");
+            }
+            File dir = mContext.getExternalFilesDir(null);
+            if (offset == 0) {
+                purgeStaleParts(dir);
+            }
+            File partFile = new File(dir, transferId + PART_SUFFIX);
+            long ackOffset = writeChunk(inputStream, partFile, offset, length);
+            if (ackOffset < totalSize) {
+                sendAck(peerNodeId, transferId, ackOffset, 0);
+                return new Result(RESULT_CHUNK_ACCEPTED, "");
+            }
+            // 先重命名再确认，Source端收到全部确认后即删除传输状态，不能再重发
+            File targetFile = targetFileOf(dir, fileName, transferId);
+            if (!partFile.renameTo(targetFile)) {
+                Log.e(TAG, "onChunkReceived: rename part file failed.");
+                deleteQuietly(partFile);
+                sendAck(peerNodeId, transferId, ackOffset, ChunkedFileSender.ERR_SINK_FAILED);
+                return new Result(RESULT_ERR, "");
+            }
+            synchronized (mCompletedTransfers) {
+                mCompletedTransfers.add(transferId);
+            }
+            sendAck(peerNodeId, transferId, totalSize, 0);
+            Log.i(TAG, "onChunkReceived: transfer " + transferId + " completed, " + targetFile.getPath());
+            return new Result(RESULT_COMPLETED, targetFile.getPath());
+        } catch (IOException e) {
+            Log.e(TAG, "onChunkReceived: catch IOException.");
+        }
+        return new Result(RESULT_ERR, "");
+    }
+
+    private boolean isCompleted(String transferId) {
+        synchronized (mCompletedTransfers) {
+            return mCompletedTransfers.contains(transferId);
+        }
+    }
+
+    /**
+     * 目标文件名由Source端指定，只取文件名部分；同名文件已存在时加上传输ID前缀，不覆盖已有文件
+     */
+    private static File targetFileOf(File dir, String fileName, String transferId) {
+        String name = new File(fileName).getName();
+        if (!isPlainName(name)) {
+            return new File(dir, transferId);
+        }
+        File targetFile = new File(dir, name);
+        return targetFile.exists() ? new File(dir, transferId + "_" + name) : targetFile;
+    }
+
+    private static boolean isPlainName(String name) {
+        return !TextUtils.isEmpty(name) && name.equals(new File(name).getName()) && !".".equals(name)
+            && !"..".equals(name);
+    }
+
+    /**
+     * 清理长时间未写入的临时文件，Source端已放弃的传输不会再继续
+     */
+    private static void purgeStaleParts(File dir) {
+        File[] files = dir == null ? null : dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (file.getName().endsWith(PART_SUFFIX) && now - file.lastModified() > STALE_PART_MS) {
+                Log.i(TAG, "purgeStaleParts: delete " + file.getName());
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "deleteQuietly: delete " + file.getName() + " failed.");
+        }
+    }
+
+    /**
+     * 将分块数据写入临时文件，只接受与已接收数据连续的分块，重复或超前的分块直接回复当前已接收的偏移量
+     *
+     * @return 临时文件中已连续接收的数据量
+     */
+    private long writeChunk(InputStream inputStream, File partFile, long offset, int length) throws IOException {
+        if (offset != 0 && !partFile.exists()) {
+            // 临时文件不存在时只接受第一个分块，不创建空的临时文件
+            Log.w(TAG, "writeChunk: no part file for offset " + offset);
+            return 0;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(partFile, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            long received = channel.size();
+            if (offset != received) {
+                Log.w(TAG, "writeChunk: expect offset " + received + " but got " + offset);
+                return received;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = offset;
+            int remaining = length;
+            while (remaining > 0) {
+                int read = inputStream.read(buffer.array(), 0, Math.min(remaining, BUFFER_SIZE));
+                if (read < 0) {
+                    break;
+                }
+                buffer.limit(read);
+                buffer.position(0);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                remaining -= read;
+            }
+            if (remaining > 0) {
+                // 分块数据不完整，截断到分块起始位置，由Source端重发
+                Log.w(TAG, "writeChunk: chunk truncated, discard it.");
+                channel.truncate(offset);
+                return offset;
+            }
+            channel.force(false);
+            return position;
+        }
+    }
+
+    /**
+     * 回复分块确认
+     *
+     * @param errorCode 0表示正常确认，否则为接收失败的错误码，Source端收到后结束传输
+     */
+    private void sendAck(String peerNodeId, String transferId, long ackOffset, int errorCode) {
+        if (TextUtils.isEmpty(peerNodeId)) {
+            Log.e(TAG, "sendAck: peerNodeId is null.");
+            return;
+        }
+        JSONObject ack = new JSONObject();
+        try {
+            ack.put(HandoverManager.CTRL, ChunkedFileSender.CTRL_CHUNK_ACK);
+            ack.put(ChunkedFileSender.TRANSFER_ID, transferId);
+            ack.put(ChunkedFileSender.ACK_OFFSET, ackOffset);
+            if (errorCode != 0) {
+                ack.put(ChunkedFileSender.ACK_ERROR, errorCode);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        mHandoverManager.sendNormalMsg(peerNodeId, ack.toString());
+    }
+}
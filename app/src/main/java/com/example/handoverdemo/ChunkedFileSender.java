@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分块可续传文件接续(Source端)
+ * 将大文件按固定大小切分为多个分块，每个分块作为接续文件直接逐个发送，Sink端每收到一个分块后
+ * 通过NORMAL_MSG回复确认偏移量；链路断开后在onStateChg恢复可用时从最后确认的偏移量继续发送。
+ * 分块文件在确认后才删除，超时重发和恢复传输时重新发送同一个分块文件
+ *
+ * @since 2023-03-08
+ */
+public class ChunkedFileSender {
+    public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+
+    public static final int ERR_FILE_NOT_EXIST = -1;
+
+    public static final int ERR_STAGE_CHUNK_FAILED = -2;
+
+    public static final int ERR_TRANSFER_REPLACED = -3;
+
+    /**
+     * Sink端组装文件失败
+     */
+    public static final int ERR_SINK_FAILED = -4;
+
+    /**
+     * 分块文件头魔数"HOCH"，Sink端据此区分分块文件和普通接续文件
+     */
+    static final int CHUNK_MAGIC = 0x484F4348;
+
+    static final int CHUNK_VERSION = 1;
+
+    static final String CTRL_CHUNK_ACK = "chunkAck";
+
+    static final String TRANSFER_ID = "transferId";
+
+    static final String ACK_OFFSET = "ackOffset";
+
+    static final String ACK_ERROR = "ackError";
+
+    private static final String TAG = "HandoverDemo-ChunkedFileSender";
+
+    private static final String CHUNK_DIR = "handover_chunks";
+
+    private static final long ACK_TIMEOUT = 10000;
+
+    private static final int MAX_RETRY_COUNT = 3;
+
+    private final Context mContext;
+
+    private final HandoverManager mHandoverManager;
+
+    private final HandlerThread mHandlerThread;
+
+    private final Handler mHandler;
+
+    /**
+     * 进行中的分块传输，以对端设备NodeId为key，同一对端同时只保留一个传输任务
+     */
+    private final Map<String, Transfer> mTransfers = new ConcurrentHashMap<>();
+
+    private volatile boolean mIsServiceAvailable = true;
+
+    /**
+     * 分块传输进度监听
+     */
+    public interface TransferListener {
+        /**
+         * 对端确认的数据量发生变化
+         *
+         * @param peerNodeId 对端设备ID
+         * @param transferId 传输ID
+         * @param ackedBytes 已确认字节数
+         * @param totalBytes 文件总字节数
+         */
+        void onProgress(String peerNodeId, String transferId, long ackedBytes, long totalBytes);
+
+        /**
+         * 传输暂停，等待接续服务恢复后从ackedBytes处继续
+         *
+         * @param peerNodeId 对端设备ID
+         * @param transferId 传输ID
+         * @param ackedBytes 已确认字节数
+         */
+        void onPaused(String peerNodeId, String transferId, long ackedBytes);
+
+        /**
+         * 传输完成
+         *
+         * @param peerNodeId 对端设备ID
+         * @param transferId 传输ID
+         */
+        void onCompleted(String peerNodeId, String transferId);
+
+        /**
+         * 传输失败
+         *
+         * @param peerNodeId 对端设备ID
+         * @param transferId 传输ID
+         * @param errorCode 错误码
+         */
+        void onFailed(String peerNodeId, String transferId, int errorCode);
+    }
+
+    ChunkedFileSender(Context context, HandoverManager handoverManager) {
+        this.mContext = context;
+        this.mHandoverManager = handoverManager;
+        this.mHandlerThread = new HandlerThread("chunk-sender-thread");
+        mHandlerThread.start();
+        this.mHandler = new Handler(mHandlerThread.getLooper());
+    }
+
+    /**
+     * 停止分块发送线程，未完成的传输不再继续
+     */
+    void shutdown() {
+        mHandlerThread.quitSafely();
+    }
+
+    /**
+     * 开始分块发送文件
+     *
+     * @param peerNodeId 对端设备ID
+     * @param filePath 文件路径
+     * @param chunkSize 分块大小
+     * @param listener 进度监听，可为null
+     * @return 传输ID，参数错误时返回空字符串
+     */
+    public String send(String peerNodeId, String filePath, int chunkSize, TransferListener listener) {
+        if (TextUtils.isEmpty(peerNodeId) || TextUtils.isEmpty(filePath) || chunkSize <= 0) {
+            Log.e(TAG, "send: param is invalid.");
+            return "";
+        }
+        File file = new File(filePath);
+        String transferId = UUID.randomUUID().toString();
+        if (!file.isFile()) {
+            Log.e(TAG, "send: file is not exist.");
+            if (listener != null) {
+                listener.onFailed(peerNodeId, transferId, ERR_FILE_NOT_EXIST);
+            }
+            return "";
+        }
+        Transfer transfer = new Transfer(peerNodeId, transferId, file, chunkSize, listener);
+        Transfer replaced = mTransfers.put(peerNodeId, transfer);
+        if (replaced != null) {
+            Log.w(TAG, "send: replace unfinished transfer " + replaced.mTransferId);
+            mHandler.post(() -> finish(replaced, ERR_TRANSFER_REPLACED));
+        }
+        Log.i(TAG, "send: transfer " + transferId + " size " + transfer.mTotalSize + " to " + peerNodeId);
+        mHandler.post(() -> sendNextChunk(transfer));
+        return transferId;
+    }
+
+    /**
+     * 处理Sink端通过NORMAL_MSG回复的分块确认消息
+     *
+     * @param peerNodeId 对端设备ID
+     * @param normalMsg NORMAL_MSG消息内容
+     * @return true:消息为分块确认消息并已处理 false:非分块确认消息
+     */
+    public boolean onNormalMsg(String peerNodeId, String normalMsg) {
+        if (TextUtils.isEmpty(normalMsg) || !normalMsg.contains(CTRL_CHUNK_ACK)) {
+            return false;
+        }
+        try {
+            JSONObject ack = new JSONObject(normalMsg);
+            if (!CTRL_CHUNK_ACK.equals(ack.optString(HandoverManager.CTRL))) {
+                return false;
+            }
+            String transferId = ack.getString(TRANSFER_ID);
+            long ackOffset = ack.getLong(ACK_OFFSET);
+            int errorCode = ack.optInt(ACK_ERROR, 0);
+            mHandler.post(() -> onAck(peerNodeId, transferId, ackOffset, errorCode));
+            return true;
+        } catch (JSONException e) {
+            Log.e(TAG, "onNormalMsg: catch JSONException.");
+        }
+        return false;
+    }
+
+    /**
+     * 接续服务状态变化，不可用时暂停所有传输，恢复可用后从最后确认的偏移量继续发送
+     *
+     * @param state 接续服务状态
+     */
+    public void onServiceStateChanged(int state) {
+        boolean isAvailable = state == HandoverManager.HANDOVER_STATE_AVAILABLE;
+        if (mIsServiceAvailable == isAvailable) {
+            return;
+        }
+        mIsServiceAvailable = isAvailable;
+        mHandler.post(() -> {
+            for (Transfer transfer : mTransfers.values()) {
+                if (isAvailable) {
+                    resume(transfer);
+                } else {
+                    pause(transfer);
+                }
+            }
+        });
+    }
+
+    /**
+     * 手动从最后确认的偏移量恢复指定对端的传输
+     *
+     * @param peerNodeId 对端设备ID
+     */
+    public void resume(String peerNodeId) {
+        mHandler.post(() -> {
+            Transfer transfer = mTransfers.get(peerNodeId);
+            if (transfer != null) {
+                resume(transfer);
+            }
+        });
+    }
+
+    private void onAck(String peerNodeId, String transferId, long ackOffset, int errorCode) {
+        Transfer transfer = mTransfers.get(peerNodeId);
+        if (transfer == null || !transfer.mTransferId.equals(transferId)) {
+            Log.w(TAG, "onAck: no transfer " + transferId + " for " + peerNodeId);
+            return;
+        }
+        if (errorCode != 0) {
+            Log.e(TAG, "onAck: transfer " + transferId + " failed on sink, errorCode " + errorCode);
+            mTransfers.remove(peerNodeId, transfer);
+            finish(transfer, errorCode);
+            return;
+        }
+        if (ackOffset <= transfer.mAckedOffset) {
+            // 过期或重复的确认没有确认新的数据，已确认的偏移量不回退，在途分块保持不变，等待其确认或超时重发
+            Log.w(TAG, "onAck: ignore stale ack " + ackOffset + " of " + transferId + ", acked "
+                + transfer.mAckedOffset);
+            return;
+        }
+        mHandler.removeCallbacks(transfer.mAckTimeout);
+        transfer.mRetryCount = 0;
+        // 在途分块已确认，可以删除
+        deleteStagedChunk(transfer);
+        transfer.mAckedOffset = Math.min(ackOffset, transfer.mTotalSize);
+        if (transfer.mListener != null) {
+            transfer.mListener.onProgress(peerNodeId, transferId, transfer.mAckedOffset, transfer.mTotalSize);
+        }
+        if (transfer.mAckedOffset >= transfer.mTotalSize) {
+            Log.i(TAG, "onAck: transfer " + transferId + " completed.");
+            mTransfers.remove(peerNodeId, transfer);
+            if (transfer.mListener != null) {
+                transfer.mListener.onCompleted(peerNodeId, transferId);
+            }
+            return;
+        }
+        sendNextChunk(transfer);
+    }
+
+    private void sendNextChunk(Transfer transfer) {
+        if (!mIsServiceAvailable || transfer.mIsPaused) {
+            return;
+        }
+        if (transfer.mStagedChunk == null) {
+            // 超时重发和恢复传输时复用尚未确认的分块文件
+            File chunkFile = stageChunk(transfer, transfer.mAckedOffset);
+            if (chunkFile == null) {
+                mTransfers.remove(transfer.mPeerNodeId, transfer);
+                finish(transfer, ERR_STAGE_CHUNK_FAILED);
+                return;
+            }
+            transfer.mStagedChunk = chunkFile;
+        }
+        // 分块文件内容唯一，直接发送，不进行内容摘要握手，也不经过OutboundQueue合并
+        mHandoverManager.sendChunkFile(transfer.mPeerNodeId, transfer.mStagedChunk).whenComplete(
+            (result, throwable) -> {
+                if (throwable != null) {
+                    Log.w(TAG, "sendNextChunk: send chunk of " + transfer.mTransferId + " failed, wait for retry.");
+                }
+            });
+        mHandler.postDelayed(transfer.mAckTimeout, ACK_TIMEOUT);
+    }
+
+    private void onAckTimeout(Transfer transfer) {
+        if (mTransfers.get(transfer.mPeerNodeId) != transfer) {
+            return;
+        }
+        transfer.mRetryCount++;
+        if (transfer.mRetryCount > MAX_RETRY_COUNT) {
+            Log.w(TAG, "onAckTimeout: transfer " + transfer.mTransferId + " paused at " + transfer.mAckedOffset);
+            pause(transfer);
+            return;
+        }
+        Log.w(TAG, "onAckTimeout: resend chunk at " + transfer.mAckedOffset + ", retry " + transfer.mRetryCount);
+        sendNextChunk(transfer);
+    }
+
+    private void pause(Transfer transfer) {
+        if (transfer.mIsPaused) {
+            return;
+        }
+        transfer.mIsPaused = true;
+        mHandler.removeCallbacks(transfer.mAckTimeout);
+        if (transfer.mListener != null) {
+            transfer.mListener.onPaused(transfer.mPeerNodeId, transfer.mTransferId, transfer.mAckedOffset);
+        }
+    }
+
+    private void resume(Transfer transfer) {
+        if (!transfer.mIsPaused) {
+            return;
+        }
+        Log.i(TAG, "resume: transfer " + transfer.mTransferId + " from " + transfer.mAckedOffset);
+        transfer.mIsPaused = false;
+        transfer.mRetryCount = 0;
+        sendNextChunk(transfer);
+    }
+
+    private void finish(Transfer transfer, int errorCode) {
+        mHandler.removeCallbacks(transfer.mAckTimeout);
+        deleteStagedChunk(transfer);
+        if (transfer.mListener != null) {
+            transfer.mListener.onFailed(transfer.mPeerNodeId, transfer.mTransferId, errorCode);
+        }
+    }
+
+    /**
+     * 生成分块文件：文件头(魔数、版本、传输ID、文件名、总大小、偏移量、分块长度)+分块数据
+     * 分块文件放在files目录下，以便通过FileProvider授权给接续框架
+     *
+     * @param transfer 传输任务
+     * @param offset 分块在原文件中的偏移量
+     * @return 分块文件，失败时返回null
+     */
+    private File stageChunk(Transfer transfer, long offset) {
+        File chunkDir = new File(mContext.getFilesDir(), CHUNK_DIR);
+        if (!chunkDir.exists() && !chunkDir.mkdirs()) {
+            Log.e(TAG, "stageChunk: create chunk dir failed.");
+            return null;
+        }
+        int length = (int) Math.min(transfer.mChunkSize, transfer.mTotalSize - offset);
+        File chunkFile = new File(chunkDir, transfer.mTransferId + "_" + offset + ".part");
+        try (FileInputStream inputStream = new FileInputStream(transfer.mFile);
+             FileOutputStream outputStream = new FileOutputStream(chunkFile)) {
+            DataOutputStream header = new DataOutputStream(outputStream);
+            header.writeInt(CHUNK_MAGIC);
+            header.writeInt(CHUNK_VERSION);
+            header.writeUTF(transfer.mTransferId);
+            header.writeUTF(transfer.mFile.getName());
+            header.writeLong(transfer.mTotalSize);
+            header.writeLong(offset);
+            header.writeInt(length);
+            header.flush();
+            FileChannel source = inputStream.getChannel();
+            FileChannel target = outputStream.getChannel();
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                long transferred = source.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    Log.e(TAG, "stageChunk: source file truncated.");
+                    return null;
+                }
+                position += transferred;
+            }
+            return chunkFile;
+        } catch (IOException e) {
+            Log.e(TAG, "stageChunk: catch IOException.");
+        }
+        return null;
+    }
+
+    private void deleteStagedChunk(Transfer transfer) {
+        if (transfer.mStagedChunk != null && !transfer.mStagedChunk.delete()) {
+            Log.w(TAG, "deleteStagedChunk: delete " + transfer.mStagedChunk.getName() + " failed.");
+        }
+        transfer.mStagedChunk = null;
+    }
+
+    private final class Transfer {
+        private final String mPeerNodeId;
+
+        private final String mTransferId;
+
+        private final File mFile;
+
+        private final long mTotalSize;
+
+        private final int mChunkSize;
+
+        private final TransferListener mListener;
+
+        private final Runnable mAckTimeout = () -> onAckTimeout(this);
+
+        private long mAckedOffset;
+
+        private int mRetryCount;
+
+        private boolean mIsPaused;
+
+        private File mStagedChunk;
+
+        private Transfer(String peerNodeId, String transferId, File file, int chunkSize,
+            TransferListener listener) {
+            this.mPeerNodeId = peerNodeId;
+            this.mTransferId = transferId;
+            this.mFile = file;
+            this.mTotalSize = file.length();
+            this.mChunkSize = chunkSize;
+            this.mListener = listener;
+        }
+    }
+}
@@ -10,11 +10,9 @@ import android.util.Log;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
@@ -32,7 +30,7 @@ public class CommonUtils {
     private static final int RESULT_ERR = -1;
 
     /**
-     * 对Uri中的文件进行转存
+     * 对Uri中的文件进行转存，数据先写入临时文件，成功后再替换目标文件
      *
      * @param context 上下文
      * @param uri 原始文件Uri
@@ -40,50 +38,17 @@ public class CommonUtils {
      * @return RESULT_OK(0)：成功  RESULT_ERR(-1)：失败
      */
     public static int copyUriFile(Context context, Uri uri, String savePath) {
-        InputStream inputStream = null;
-        OutputStream outputStream = null;
-        int ret = RESULT_OK;
-        try {
-            File saveFile = new File(savePath);
-            if (!saveFile.exists()) {
-                if (!saveFile.createNewFile()) {
-                    Log.e(TAG, "copyUriFile: saveFile create failed.");
-                    return RESULT_ERR;
-                }
-            }
-            if (!saveFile.isFile()) {
-                Log.e(TAG, "copyUriFile: savePath is not point to a file.");
-                return RESULT_ERR;
-            }
-            inputStream = context.getContentResolver().openInputStream(uri);
-            outputStream = new FileOutputStream(saveFile);
-            byte[] buff = new byte[1024];
-            int len = 0;
-            while ((len = inputStream.read(buff)) >= 0) {
-                outputStream.write(buff, 0, len);
-            }
-            ret = RESULT_OK;
-        } catch (IOException e) {
-            Log.e(TAG, "copyUriFile: catch IOException.");
-            ret = RESULT_ERR;
-        } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "copyUriFile: catch IOException when close inputStream.");
-                }
-            }
-            if (outputStream != null) {
-                try {
-                    outputStream.flush();
-                    outputStream.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "copyUriFile: catch IOException when close outputStream.");
-                }
-            }
+        if (context == null || uri == null || TextUtils.isEmpty(savePath)) {
+            Log.e(TAG, "copyUriFile: param is null.");
+            return RESULT_ERR;
         }
-        return ret;
+        File saveFile = new File(savePath);
+        if (saveFile.isDirectory()) {
+            Log.e(TAG, "copyUriFile: savePath is not point to a file.");
+            return RESULT_ERR;
+        }
+        FileCopyEngine.CopyResult result = FileCopyEngine.copy(context, uri, saveFile);
+        return result.mCode == FileCopyEngine.RESULT_OK ? RESULT_OK : RESULT_ERR;
     }
 
     /**
@@ -159,20 +124,7 @@ public class CommonUtils {
         if (file.exists()) {
             return path;
         }
-        try (InputStream inputStream = context.getAssets().open("HonorLogo.jpg");
-             OutputStream outputStream = new FileOutputStream(path)) {
-            byte[] buffer = new byte[1024];
-            int byteRead;
-            while ((byteRead = inputStream.read(buffer)) != -1) {
-                Log.d(TAG, "byteRead : " + byteRead);
-                outputStream.write(buffer, 0, byteRead);
-            }
-            inputStream.close();
-            outputStream.flush();
-            return path;
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return "";
+        FileCopyEngine.CopyResult result = FileCopyEngine.copyAsset(context, "HonorLogo.jpg", file);
+        return result.mCode == FileCopyEngine.RESULT_OK ? path : "";
     }
 }
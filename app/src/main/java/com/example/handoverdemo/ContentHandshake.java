@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接续文件传输前的内容摘要握手
+ * Source端通过NORMAL_MSG向Sink端提供文件的SHA-256，Sink端内容存储中已有该内容时回复已存在，
+ * Source端改为发送携带内容引用的接续消息，不再传输文件；Sink端未回复或超时时按原流程发送文件
+ *
+ * @since 2023-03-28
+ */
+public class ContentHandshake {
+    public static final long DEFAULT_OFFER_TIMEOUT_MS = 500;
+
+    static final String CTRL_OFFER = "offer";
+
+    static final String CTRL_OFFER_ACK = "offerAck";
+
+    static final String CONTENT_HASH = "contentHash";
+
+    static final String CONTENT_SIZE = "contentSize";
+
+    static final String HAS_CONTENT = "hasContent";
+
+    private static final String TAG = "HandoverDemo-ContentHandshake";
+
+    /**
+     * 接续消息中的内容引用前缀，Sink端据此从内容存储中取出文件
+     */
+    private static final String CONTENT_REF_PREFIX = "\u0003CAS1:";
+
+    private final HandoverManager mHandoverManager;
+
+    private final ContentStore mContentStore;
+
+    /**
+     * 等待Sink端回复的摘要询问，key为nodeId/sha256
+     */
+    private final Map<String, CompletableFuture<String>> mPendingOffers = new ConcurrentHashMap<>();
+
+    /**
+     * Source端文件摘要缓存，key为文件路径，文件长度或修改时间变化时重新计算
+     */
+    private final Map<String, HashEntry> mHashCache = new ConcurrentHashMap<>();
+
+    /**
+     * 计算文件摘要和处理询问超时的线程，避免阻塞发送线程
+     */
+    private final ScheduledExecutorService mExecutor;
+
+    private static final class HashEntry {
+        private final long mLength;
+
+        private final long mLastModified;
+
+        private final String mSha256;
+
+        HashEntry(long length, long lastModified, String sha256) {
+            this.mLength = length;
+            this.mLastModified = lastModified;
+            this.mSha256 = sha256;
+        }
+    }
+
+    ContentHandshake(HandoverManager handoverManager, ContentStore contentStore) {
+        this.mHandoverManager = handoverManager;
+        this.mContentStore = contentStore;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            runnable -> new Thread(runnable, "content-handshake"));
+        executor.setRemoveOnCancelPolicy(true);
+        this.mExecutor = executor;
+    }
+
+    /**
+     * 停止握手线程，等待中的询问不再超时回调
+     */
+    void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * 判断接续消息是否为内容引用
+     *
+     * @param continuityMsg 接续消息内容
+     * @return true:内容引用
+     */
+    public static boolean isContentRef(String continuityMsg) {
+        return continuityMsg != null && continuityMsg.startsWith(CONTENT_REF_PREFIX);
+    }
+
+    /**
+     * 从内容引用中取出内容摘要
+     *
+     * @param continuityMsg 接续消息内容
+     * @return 内容摘要，不是内容引用时返回null
+     */
+    public static String parseContentRef(String continuityMsg) {
+        return isContentRef(continuityMsg) ? continuityMsg.substring(CONTENT_REF_PREFIX.length()) : null;
+    }
+
+    static String toContentRef(String sha256) {
+        return CONTENT_REF_PREFIX + sha256;
+    }
+
+    /**
+     * 向Sink端询问文件内容是否已存在
+     *
+     * @param peerNodeId 对端设备ID
+     * @param file 接续文件
+     * @return Sink端已有该内容时完成为内容摘要，否则(包括超时、计算摘要失败)完成为null
+     */
+    public CompletableFuture<String> offer(String peerNodeId, File file) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        mExecutor.execute(() -> {
+            String sha256 = getFileHash(file);
+            if (sha256 == null) {
+                future.complete(null);
+                return;
+            }
+            String key = peerNodeId + "/" + sha256;
+            CompletableFuture<String> pending = mPendingOffers.putIfAbsent(key, future);
+            if (pending != null) {
+                // 同一内容已在询问中，复用其结果
+                pending.whenComplete((result, throwable) -> future.complete(result));
+                return;
+            }
+            mExecutor.schedule(() -> {
+                if (mPendingOffers.remove(key, future) && future.complete(null)) {
+                    Log.w(TAG, "offer: " + peerNodeId + " reply timeout.");
+                }
+            }, DEFAULT_OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            JSONObject offer = new JSONObject();
+            try {
+                offer.put(HandoverManager.CTRL, CTRL_OFFER);
+                offer.put(CONTENT_HASH, sha256);
+                offer.put(CONTENT_SIZE, file.length());
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+            mHandoverManager.sendNormalMsgAsync(peerNodeId, offer.toString()).whenComplete((result, throwable) -> {
+                if (throwable != null && mPendingOffers.remove(key, future)) {
+                    future.complete(null);
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * 处理摘要询问和回复控制消息
+     *
+     * @param peerNodeId 对端设备ID
+     * @param ctrlType 控制消息类型
+     * @param ctrl 控制消息
+     * @return true:已处理 false:不是摘要握手消息
+     */
+    boolean onControlMsg(String peerNodeId, String ctrlType, JSONObject ctrl) {
+        String sha256 = ctrl.optString(CONTENT_HASH);
+        if (CTRL_OFFER.equals(ctrlType)) {
+            // Sink端：查询内容存储并回复，已存在的内容在收到内容引用前不会被淘汰
+            boolean hasContent = mContentStore.pin(sha256);
+            Log.i(TAG, "onControlMsg: offer " + sha256 + " from " + peerNodeId + ", hasContent " + hasContent);
+            JSONObject ack = new JSONObject();
+            try {
+                ack.put(HandoverManager.CTRL, CTRL_OFFER_ACK);
+                ack.put(CONTENT_HASH, sha256);
+                ack.put(HAS_CONTENT, hasContent);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+            mHandoverManager.sendNormalMsgAsync(peerNodeId, ack.toString());
+            return true;
+        }
+        if (CTRL_OFFER_ACK.equals(ctrlType)) {
+            // Source端：完成对应的询问
+            CompletableFuture<String> future = mPendingOffers.remove(peerNodeId + "/" + sha256);
+            if (future != null) {
+                future.complete(ctrl.optBoolean(HAS_CONTENT) ? sha256 : null);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取文件摘要，文件未变化时使用缓存结果；预先准备接续文件时调用可提前计算
+     *
+     * @param file 文件
+     * @return SHA-256摘要，文件不存在或读取失败时返回null
+     */
+    String getFileHash(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        long length = file.length();
+        long lastModified = file.lastModified();
+        HashEntry entry = mHashCache.get(file.getPath());
+        if (entry != null && entry.mLength == length && entry.mLastModified == lastModified) {
+            return entry.mSha256;
+        }
+        String sha256 = FileCopyEngine.hashFile(file);
+        if (!TextUtils.isEmpty(sha256)) {
+            mHashCache.put(file.getPath(), new HashEntry(length, lastModified, sha256));
+        }
+        return sha256;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 接续文件内容寻址存储(Sink端)
+ * 收到的接续文件以转存时同步计算的SHA-256作为文件名保存，相同内容只保存一份；
+ * 总大小超过预算时按最近使用时间淘汰，Source端可先询问内容是否已存在，已存在时无需再次传输文件；
+ * 回复已存在的内容在收到内容引用前不会被淘汰
+ *
+ * @since 2023-03-28
+ */
+public class ContentStore {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * 回复内容已存在后保留该内容的最长时间，超时未收到内容引用时恢复按使用时间淘汰
+     */
+    public static final long PIN_TIMEOUT_MS = 60 * 1000;
+
+    private static final String TAG = "HandoverDemo-ContentStore";
+
+    private static final String STORE_DIR = "content_store";
+
+    private static final String INCOMING_PREFIX = "incoming-";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Context mContext;
+
+    private final long mMaxBytes;
+
+    /**
+     * 按访问顺序排列的内容索引，key为SHA-256
+     */
+    private final LinkedHashMap<String, File> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 已回复存在、等待内容引用的内容，key为SHA-256，淘汰时跳过
+     */
+    private final Map<String, Pin> mPins = new HashMap<>();
+
+    private File mDir;
+
+    private long mTotalBytes;
+
+    private static final class Pin {
+        private int mCount;
+
+        private long mExpireTime;
+    }
+
+    ContentStore(Context context, long maxBytes) {
+        this.mContext = context;
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 预先创建存储目录并扫描已有内容，避免首次转存接续文件时在接收路径上扫描目录
+     */
+    public synchronized void prewarm() {
+        load();
+    }
+
+    /**
+     * 判断内容是否已存在，存在时更新其最近使用时间
+     *
+     * @param sha256 内容摘要
+     * @return true:内容已存在
+     */
+    public boolean contains(String sha256) {
+        return lookup(sha256) != null;
+    }
+
+    /**
+     * 查找内容对应的本地文件，存在时更新其最近使用时间
+     *
+     * @param sha256 内容摘要
+     * @return 文件路径，不存在时返回null
+     */
+    public synchronized String lookup(String sha256) {
+        if (TextUtils.isEmpty(sha256) || !load()) {
+            return null;
+        }
+        File file = mEntries.get(sha256);
+        if (file == null) {
+            return null;
+        }
+        if (!file.exists()) {
+            // 文件被外部删除
+            mEntries.remove(sha256);
+            return null;
+        }
+        // 记录到文件修改时间中，进程重启后仍能恢复使用顺序
+        file.setLastModified(System.currentTimeMillis());
+        return file.getPath();
+    }
+
+    /**
+     * 判断内容是否已存在，存在时在收到内容引用(调用unpin)或PIN_TIMEOUT_MS超时前不再淘汰该内容
+     *
+     * @param sha256 内容摘要
+     * @return true:内容已存在
+     */
+    public synchronized boolean pin(String sha256) {
+        if (lookup(sha256) == null) {
+            return false;
+        }
+        Pin pin = mPins.get(sha256);
+        if (pin == null) {
+            pin = new Pin();
+            mPins.put(sha256, pin);
+        }
+        pin.mCount++;
+        pin.mExpireTime = SystemClock.elapsedRealtime() + PIN_TIMEOUT_MS;
+        return true;
+    }
+
+    /**
+     * 收到内容引用后释放pin，同一内容被多次pin时需要对应次数的释放
+     *
+     * @param sha256 内容摘要
+     */
+    public synchronized void unpin(String sha256) {
+        Pin pin = sha256 == null ? null : mPins.get(sha256);
+        if (pin != null && --pin.mCount <= 0) {
+            mPins.remove(sha256);
+        }
+    }
+
+    /**
+     * 转存接续文件的内容，转存时同步计算内容摘要，内容已存在时丢弃本次数据
+     *
+     * @param inputStream 接续文件输入流，由调用方关闭
+     * @return 存储后的文件路径，失败时返回空字符串
+     */
+    public String store(InputStream inputStream) {
+        File dir;
+        synchronized (this) {
+            // 首次扫描存储目录时会清理残留的临时文件，必须在创建本次的临时文件前完成
+            dir = load() ? mDir : null;
+        }
+        if (dir == null) {
+            return "";
+        }
+        File incoming = new File(dir, INCOMING_PREFIX + System.nanoTime() + TEMP_SUFFIX);
+        FileCopyEngine.CopyResult result = FileCopyEngine.copyAndHash(inputStream, incoming);
+        if (result.mCode != FileCopyEngine.RESULT_OK || result.mSha256 == null) {
+            Log.e(TAG, "store: copy continuity file failed.");
+            deleteQuietly(incoming);
+            return "";
+        }
+        return commit(incoming, result.mSha256);
+    }
+
+    /**
+     * 将本地文件移动到存储中，如分块传输组装完成的文件
+     *
+     * @param file 本地文件
+     * @return 存储后的文件路径，失败时返回空字符串
+     */
+    public String storeFile(File file) {
+        String sha256 = FileCopyEngine.hashFile(file);
+        if (sha256 == null) {
+            return "";
+        }
+        return commit(file, sha256);
+    }
+
+    private synchronized String commit(File file, String sha256) {
+        if (!load()) {
+            deleteQuietly(file);
+            return "";
+        }
+        File target = new File(mDir, sha256);
+        File existing = mEntries.get(sha256);
+        if (existing != null && existing.exists()) {
+            Log.i(TAG, "commit: content " + sha256 + " already exists.");
+            deleteQuietly(file);
+            existing.setLastModified(System.currentTimeMillis());
+            return existing.getPath();
+        }
+        if (!file.renameTo(target)) {
+            Log.e(TAG, "commit: rename to store failed.");
+            deleteQuietly(file);
+            return "";
+        }
+        mEntries.put(sha256, target);
+        mTotalBytes += target.length();
+        trim();
+        return target.getPath();
+    }
+
+    /**
+     * 淘汰最久未使用的内容直到总大小不超过预算，最近存入的内容和等待内容引用的内容始终保留
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, File>> iterator = mEntries.entrySet().iterator();
+        while (mTotalBytes > mMaxBytes && mEntries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, File> entry = iterator.next();
+            if (isPinned(entry.getKey()) || !iterator.hasNext()) {
+                continue;
+            }
+            File file = entry.getValue();
+            mTotalBytes -= file.length();
+            deleteQuietly(file);
+            iterator.remove();
+        }
+    }
+
+    private boolean isPinned(String sha256) {
+        Pin pin = mPins.get(sha256);
+        if (pin == null) {
+            return false;
+        }
+        if (SystemClock.elapsedRealtime() >= pin.mExpireTime) {
+            Log.w(TAG, "isPinned: content " + sha256 + " ref not received, unpin.");
+            mPins.remove(sha256);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 首次使用时扫描存储目录，按文件修改时间恢复使用顺序
+     */
+    private boolean load() {
+        if (mDir != null) {
+            return true;
+        }
+        File dir = getDir();
+        if (dir == null) {
+            return false;
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            Arrays.sort(files, (left, right) -> Long.compare(left.lastModified(), right.lastModified()));
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    // 上次转存中断残留的临时文件
+                    deleteQuietly(file);
+                    continue;
+                }
+                mEntries.put(file.getName(), file);
+                mTotalBytes += file.length();
+            }
+        }
+        mDir = dir;
+        trim();
+        Log.i(TAG, "load: " + mEntries.size() + " entries, " + mTotalBytes + " bytes.");
+        return true;
+    }
+
+    private File getDir() {
+        File root = mContext.getExternalFilesDir(null);
+        if (root == null) {
+            root = mContext.getFilesDir();
+        }
+        File dir = new File(root, STORE_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "getDir: create store dir failed.");
+            return null;
+        }
+        return dir;
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "deleteQuietly: delete " + file.getName() + " failed.");
+        }
+    }
+}
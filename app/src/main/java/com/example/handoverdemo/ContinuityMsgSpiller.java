@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 超大接续消息转文件发送
+ * 接续消息超过阈值时Source端将编码后的内容写入带文件头标记的临时文件，通过接续文件通道发送，
+ * 避免大字符串放入Json和Intent extra时超过binder传输限制；Sink端识别文件头后还原为接续消息，
+ * 按接续消息的流程解码。多文件接续包(见HandoverBundle)同样作为临时文件发送。
+ * 接续反馈不携带对应的传输，因此临时文件不在反馈时删除，每个对端只保留最近几个，超时后清理
+ *
+ * @since 2023-04-11
+ */
+final class ContinuityMsgSpiller {
+    /**
+     * 默认转文件发送的阈值，编码(压缩)后的接续消息长度超过该值时转文件发送
+     */
+    static final int DEFAULT_SPILL_THRESHOLD = 256 * 1024;
+
+    static final int SPILL_MAGIC = 0x484F534D;
+
+    static final int SPILL_VERSION = 1;
+
+    private static final String TAG = "HandoverDemo-ContinuityMsgSpiller";
+
+    private static final String SPILL_DIR = "continuity_spill";
+
+    private static final String SPILL_SUFFIX = ".hmsg";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String BUNDLE_SUFFIX = ".hbdl";
+
+    /**
+     * 每个对端保留的临时文件数，超出时删除最早的文件
+     */
+    private static final int MAX_FILES_PER_PEER = 4;
+
+    /**
+     * 临时文件超过该时间后清理，包括上次进程退出前残留的文件
+     */
+    private static final long STALE_SPILL_MS = 10 * 60 * 1000;
+
+    private final Context mContext;
+
+    /**
+     * 各对端最近发送的临时文件，按发送顺序排列
+     */
+    private final Map<String, ArrayDeque<File>> mSpilledFiles = new HashMap<>();
+
+    private final AtomicLong mSeq = new AtomicLong();
+
+    ContinuityMsgSpiller(Context context) {
+        this.mContext = context;
+    }
+
+    /**
+     * Source端：将编码后的接续消息写入临时文件
+     *
+     * @param peerNodeId 对端设备ID
+     * @param dataContent 编码(增量、压缩)后的接续消息
+     * @return 临时文件
+     * @throws IOException 写入失败
+     */
+    File spill(String peerNodeId, String dataContent) throws IOException {
+        File file = newFile(peerNodeId, SPILL_SUFFIX);
+        byte[] content = dataContent.getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream outputStream = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            outputStream.writeInt(SPILL_MAGIC);
+            outputStream.writeInt(SPILL_VERSION);
+            outputStream.writeInt(content.length);
+            outputStream.write(content);
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        track(peerNodeId, file);
+        return file;
+    }
+
+    /**
+     * Source端：将多个接续文件写入临时的接续包
+     *
+     * @param peerNodeId 对端设备ID
+     * @param files 要打包的文件
+     * @return 接续包文件
+     * @throws IOException 文件不存在或写入失败
+     */
+    File bundle(String peerNodeId, List<File> files) throws IOException {
+        File file = newFile(peerNodeId, BUNDLE_SUFFIX);
+        HandoverBundle.write(file, files);
+        track(peerNodeId, file);
+        return file;
+    }
+
+    /**
+     * Source端：临时文件发送失败，立即删除
+     *
+     * @param peerNodeId 对端设备ID
+     * @param file spill或bundle返回的临时文件
+     */
+    void discard(String peerNodeId, File file) {
+        synchronized (mSpilledFiles) {
+            ArrayDeque<File> files = mSpilledFiles.get(peerNodeId);
+            if (files != null && files.remove(file) && files.isEmpty()) {
+                mSpilledFiles.remove(peerNodeId);
+            }
+        }
+        deleteQuietly(file);
+    }
+
+    /**
+     * Sink端：读取转文件发送的接续消息，调用方已读取并校验文件头标记SPILL_MAGIC
+     *
+     * @param inputStream 接续文件输入流，位于文件头标记之后
+     * @return 编码后的接续消息
+     * @throws IOException 版本不支持或内容不完整
+     */
+    String read(DataInputStream inputStream) throws IOException {
+        if (inputStream.readInt() != SPILL_VERSION) {
+            throw new IOException("unsupported spill version.");
+        }
+        int length = inputStream.readInt();
+        if (length < 0) {
+            throw new IOException("invalid spill length " + length);
+        }
+        byte[] content = new byte[length];
+        inputStream.readFully(content);
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    private File getDir() throws IOException {
+        File dir = new File(mContext.getFilesDir(), SPILL_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("create spill dir failed.");
+        }
+        return dir;
+    }
+
+    private File newFile(String peerNodeId, String suffix) throws IOException {
+        File dir = getDir();
+        purgeStale(dir);
+        return new File(dir, Integer.toHexString(peerNodeId.hashCode()) + "-" + mSeq.incrementAndGet() + suffix);
+    }
+
+    private void track(String peerNodeId, File file) {
+        File evicted = null;
+        synchronized (mSpilledFiles) {
+            ArrayDeque<File> files = mSpilledFiles.get(peerNodeId);
+            if (files == null) {
+                files = new ArrayDeque<>();
+                mSpilledFiles.put(peerNodeId, files);
+            }
+            files.addLast(file);
+            if (files.size() > MAX_FILES_PER_PEER) {
+                evicted = files.pollFirst();
+            }
+        }
+        deleteQuietly(evicted);
+    }
+
+    private void purgeStale(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() > STALE_SPILL_MS) {
+                deleteQuietly(file);
+            }
+        }
+        synchronized (mSpilledFiles) {
+            for (ArrayDeque<File> peerFiles : mSpilledFiles.values()) {
+                peerFiles.removeIf(file -> !file.exists());
+            }
+            mSpilledFiles.values().removeIf(ArrayDeque::isEmpty);
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            Log.w(TAG, "deleteQuietly: delete " + file.getName() + " failed.");
+        }
+    }
+}
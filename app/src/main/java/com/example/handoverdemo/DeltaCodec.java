@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 二进制差分编解码
+ * 以固定长度的块为单位对基准数据建立滚动哈希索引，扫描目标数据时匹配到的区域编码为COPY(基准偏移, 长度)，
+ * 其余区域编码为INSERT(原始字节)；差分数据中携带目标数据的长度和CRC32，应用差分时校验基准是否正确
+ *
+ * @since 2023-03-29
+ */
+public final class DeltaCodec {
+    private static final String TAG = "HandoverDemo-DeltaCodec";
+
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int HASH_BASE = 31;
+
+    private static final int OP_COPY = 0;
+
+    private static final int OP_INSERT = 1;
+
+    private DeltaCodec() {
+    }
+
+    /**
+     * 计算目标数据相对于基准数据的差分
+     *
+     * @param base 基准数据
+     * @param target 目标数据
+     * @return 差分数据
+     */
+    public static byte[] diff(byte[] base, byte[] target) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(32, target.length / 8));
+        writeVarLong(outputStream, target.length);
+        writeVarLong(outputStream, crc32(target));
+        if (base.length < BLOCK_SIZE || target.length < BLOCK_SIZE) {
+            writeInsert(outputStream, target, 0, target.length);
+            return outputStream.toByteArray();
+        }
+        Map<Integer, Integer> index = buildIndex(base);
+        int highPower = power(BLOCK_SIZE - 1);
+        int insertStart = 0;
+        int pos = 0;
+        int hash = hash(target, 0);
+        while (pos + BLOCK_SIZE <= target.length) {
+            Integer offset = index.get(hash);
+            if (offset != null && regionMatches(base, offset, target, pos, BLOCK_SIZE)) {
+                // 向前扩展到未编码区域，向后扩展到不再相同为止
+                int baseStart = offset;
+                int targetStart = pos;
+                while (baseStart > 0 && targetStart > insertStart && base[baseStart - 1] == target[targetStart - 1]) {
+                    baseStart--;
+                    targetStart--;
+                }
+                int length = pos - targetStart + BLOCK_SIZE;
+                while (baseStart + length < base.length && targetStart + length < target.length
+                        && base[baseStart + length] == target[targetStart + length]) {
+                    length++;
+                }
+                writeInsert(outputStream, target, insertStart, targetStart);
+                outputStream.write(OP_COPY);
+                writeVarLong(outputStream, baseStart);
+                writeVarLong(outputStream, length);
+                pos = targetStart + length;
+                insertStart = pos;
+                if (pos + BLOCK_SIZE <= target.length) {
+                    hash = hash(target, pos);
+                }
+                continue;
+            }
+            if (pos + BLOCK_SIZE < target.length) {
+                hash = (hash - target[pos] * highPower) * HASH_BASE + target[pos + BLOCK_SIZE];
+            }
+            pos++;
+        }
+        writeInsert(outputStream, target, insertStart, target.length);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 对基准数据应用差分
+     *
+     * @param base 基准数据
+     * @param delta 差分数据
+     * @return 目标数据，差分数据无效或与基准数据不匹配时返回null
+     */
+    public static byte[] patch(byte[] base, byte[] delta) {
+        int[] cursor = new int[1];
+        try {
+            long targetLength = readVarLong(delta, cursor);
+            long expectCrc = readVarLong(delta, cursor);
+            if (targetLength < 0 || targetLength > Integer.MAX_VALUE) {
+                Log.e(TAG, "patch: invalid target length " + targetLength);
+                return null;
+            }
+            byte[] target = new byte[(int) targetLength];
+            int written = 0;
+            while (cursor[0] < delta.length) {
+                int op = delta[cursor[0]++];
+                int length;
+                if (op == OP_COPY) {
+                    long offset = readVarLong(delta, cursor);
+                    length = (int) readVarLong(delta, cursor);
+                    if (offset < 0 || length < 0 || offset + length > base.length || written + length > target.length) {
+                        Log.e(TAG, "patch: copy out of range.");
+                        return null;
+                    }
+                    System.arraycopy(base, (int) offset, target, written, length);
+                } else if (op == OP_INSERT) {
+                    length = (int) readVarLong(delta, cursor);
+                    if (length < 0 || cursor[0] + length > delta.length || written + length > target.length) {
+                        Log.e(TAG, "patch: insert out of range.");
+                        return null;
+                    }
+                    System.arraycopy(delta, cursor[0], target, written, length);
+                    cursor[0] += length;
+                } else {
+                    Log.e(TAG, "patch: unknown op " + op);
+                    return null;
+                }
+                written += length;
+            }
+            if (written != target.length || crc32(target) != expectCrc) {
+                Log.e(TAG, "patch: result mismatch, base may be stale.");
+                return null;
+            }
+            return target;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            Log.e(TAG, "patch: delta truncated.");
+            return null;
+        }
+    }
+
+    private static Map<Integer, Integer> buildIndex(byte[] base) {
+        Map<Integer, Integer> index = new HashMap<>(base.length / BLOCK_SIZE * 2);
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            // 相同哈希只保留第一个块
+            index.putIfAbsent(hash(base, offset), offset);
+        }
+        return index;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            hash = hash * HASH_BASE + data[offset + i];
+        }
+        return hash;
+    }
+
+    private static int power(int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= HASH_BASE;
+        }
+        return result;
+    }
+
+    private static boolean regionMatches(byte[] left, int leftOffset, byte[] right, int rightOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (left[leftOffset + i] != right[rightOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream outputStream, byte[] data, int start, int end) {
+        if (end <= start) {
+            return;
+        }
+        outputStream.write(OP_INSERT);
+        writeVarLong(outputStream, end - start);
+        outputStream.write(data, start, end - start);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream outputStream, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            outputStream.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        outputStream.write((int) remaining);
+    }
+
+    private static long readVarLong(byte[] data, int[] cursor) {
+        long value = 0;
+        int shift = 0;
+        while (shift < 64) {
+            int current = data[cursor[0]++];
+            value |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        throw new ArrayIndexOutOfBoundsException("varint too long");
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Optional;
+
+/**
+ * 能力协商策略缓存
+ * 首次使用时读取并校验能力协商策略，之后重复发送接续广播时直接复用解析好的策略，不再进行assets读取和Json解析；
+ * 每次发送只新建包含两个字段的顶层信令，缓存的策略对象不对外暴露。策略来源发生变化时可通过invalidate/reload进行失效或热更新
+ *
+ * @since 2023-03-06
+ */
+public class EligibilityCache {
+    public static final String DEFAULT_ELIGIBILITY_ASSET = "eligibility_demo.json";
+
+    private static final String TAG = "HandoverDemo-EligibilityCache";
+
+    private static final String KEY_VERSION = "Version";
+
+    private static final String KEY_APP_ID = "AppId";
+
+    private static final String KEY_POLICY = "Policy";
+
+    private static final String[] DEVICE_TYPES = {"Phone", "Tablet", "Tv", "Windows"};
+
+    private final Context mContext;
+
+    private final String mAssetName;
+
+    private final Object mLock = new Object();
+
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * 构造函数
+     *
+     * @param context 上下文
+     * @param assetName assets中能力协商策略文件名
+     */
+    public EligibilityCache(Context context, String assetName) {
+        this.mContext = context;
+        this.mAssetName = assetName;
+    }
+
+    /**
+     * 获取接续广播信令，首次调用时从assets中加载策略
+     * 每次返回新的顶层信令，只包含消息类型和缓存的策略两个字段，不重新解析策略；
+     * 调用方向返回的信令中添加或替换字段不会影响之后的发送，但不能修改其中的策略对象
+     *
+     * @return CONTINUITY_BROADCAST信令，策略加载或校验失败时为空
+     */
+    public Optional<JSONObject> getBroadcastEnvelope() {
+        Snapshot snapshot = getSnapshot();
+        if (snapshot == null) {
+            return Optional.empty();
+        }
+        JSONObject envelope = new JSONObject();
+        try {
+            envelope.put(HandoverManager.MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_BROADCAST);
+            envelope.put(HandoverManager.ELIGIBILITY, snapshot.mEligibility);
+        } catch (JSONException e) {
+            Log.e(TAG, "getBroadcastEnvelope: catch JSONException.");
+            return Optional.empty();
+        }
+        return Optional.of(envelope);
+    }
+
+    /**
+     * 获取当前缓存的能力协商策略，不在发送路径上调用
+     *
+     * @return 能力协商策略Json对象的副本
+     */
+    public Optional<JSONObject> getEligibility() {
+        Snapshot snapshot = getSnapshot();
+        if (snapshot == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new JSONObject(snapshot.mEligibility.toString()));
+        } catch (JSONException e) {
+            Log.e(TAG, "getEligibility: catch JSONException.");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 预加载能力协商策略，建议在后台线程调用，避免首次发送广播时在点击路径上进行文件读取
+     *
+     * @return true:策略可用 false:策略加载或校验失败
+     */
+    public boolean preload() {
+        return getSnapshot() != null;
+    }
+
+    /**
+     * 使缓存失效，下次发送广播时重新从assets中加载策略
+     */
+    public void invalidate() {
+        synchronized (mLock) {
+            mSnapshot = null;
+        }
+        Log.i(TAG, "invalidate: eligibility cache cleared.");
+    }
+
+    /**
+     * 使用新的策略内容热更新缓存，校验失败时保留原有缓存
+     *
+     * @param policyStr 能力协商策略Json字符串
+     * @return true:更新成功 false:策略内容校验失败
+     */
+    public boolean reload(String policyStr) {
+        Snapshot loaded = buildSnapshot(policyStr);
+        if (loaded == null) {
+            Log.e(TAG, "reload: policy is invalid, keep current cache.");
+            return false;
+        }
+        synchronized (mLock) {
+            mSnapshot = loaded;
+        }
+        Log.i(TAG, "reload: eligibility policy updated, version " + loaded.mVersion);
+        return true;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (mLock) {
+            if (mSnapshot == null) {
+                // 加载失败不缓存，下次发送广播时重新尝试
+                mSnapshot = buildSnapshot(CommonUtils.getJsonStrFromAssets(mContext, mAssetName));
+            }
+            return mSnapshot;
+        }
+    }
+
+    private Snapshot buildSnapshot(String policyStr) {
+        if (TextUtils.isEmpty(policyStr)) {
+            Log.e(TAG, "buildSnapshot: policy string is empty.");
+            return null;
+        }
+        try {
+            JSONObject eligibility = new JSONObject(policyStr);
+            if (!isValid(eligibility)) {
+                return null;
+            }
+            return new Snapshot(eligibility.getString(KEY_VERSION), eligibility);
+        } catch (JSONException e) {
+            Log.e(TAG, "buildSnapshot: catch JSONException.");
+        }
+        return null;
+    }
+
+    /**
+     * 校验策略内容：需要包含版本号，且至少配置一种设备类型，每条配置需要包含AppId和Policy字段
+     *
+     * @param eligibility 能力协商策略Json对象
+     * @return true:校验通过 false:校验失败
+     */
+    private boolean isValid(JSONObject eligibility) {
+        if (TextUtils.isEmpty(eligibility.optString(KEY_VERSION))) {
+            Log.e(TAG, "isValid: missing " + KEY_VERSION);
+            return false;
+        }
+        int deviceTypeCount = 0;
+        for (String deviceType : DEVICE_TYPES) {
+            JSONArray apps = eligibility.optJSONArray(deviceType);
+            if (apps == null) {
+                continue;
+            }
+            for (int i = 0; i < apps.length(); i++) {
+                JSONObject app = apps.optJSONObject(i);
+                if (app == null || !app.has(KEY_APP_ID) || !app.has(KEY_POLICY)) {
+                    Log.e(TAG, "isValid: invalid entry in " + deviceType + " at " + i);
+                    return false;
+                }
+            }
+            if (apps.length() > 0) {
+                deviceTypeCount++;
+            }
+        }
+        if (deviceTypeCount == 0) {
+            Log.e(TAG, "isValid: no device type configured.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 校验通过的策略，策略对象只放入接续广播信令中发送，不对外提供修改
+     */
+    private static final class Snapshot {
+        private final String mVersion;
+
+        private final JSONObject mEligibility;
+
+        private Snapshot(String version, JSONObject eligibility) {
+            this.mVersion = version;
+            this.mEligibility = eligibility;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 接续数据分发器
+ * 将同一份接续消息或接续文件发送给多个对端设备：消息内容的压缩和文件Uri、内容摘要在准备线程中只准备一次，
+ * 每个对端再经过与单独发送相同的OutboundQueue和发送线程(增量编码、压缩、能力协商、耗时统计)，
+ * 最终汇总每个对端的发送结果和耗时
+ *
+ * @since 2023-03-22
+ */
+public class FanOutSender {
+    private static final String TAG = "HandoverDemo-FanOutSender";
+
+    private final HandoverManager mHandoverManager;
+
+    /**
+     * 单个对端的发送结果
+     */
+    public static final class PeerResult {
+        /**
+         * 对端设备ID
+         */
+        public final String mNodeId;
+
+        /**
+         * 错误码，0表示成功，其他取值见HandoverSendException
+         */
+        public final int mErrorCode;
+
+        /**
+         * 从开始分发到该对端发送完成的耗时，单位毫秒
+         */
+        public final long mLatencyMs;
+
+        PeerResult(String nodeId, int errorCode, long latencyMs) {
+            this.mNodeId = nodeId;
+            this.mErrorCode = errorCode;
+            this.mLatencyMs = latencyMs;
+        }
+
+        /**
+         * 是否发送成功
+         *
+         * @return true:发送成功
+         */
+        public boolean isSuccess() {
+            return mErrorCode == 0;
+        }
+    }
+
+    /**
+     * 分发汇总结果
+     */
+    public static final class FanOutResult {
+        private final List<PeerResult> mPeerResults;
+
+        private final long mTotalMs;
+
+        FanOutResult(List<PeerResult> peerResults, long totalMs) {
+            this.mPeerResults = Collections.unmodifiableList(peerResults);
+            this.mTotalMs = totalMs;
+        }
+
+        /**
+         * 获取每个对端的发送结果，顺序与传入的对端列表一致
+         *
+         * @return 对端发送结果列表
+         */
+        public List<PeerResult> getPeerResults() {
+            return mPeerResults;
+        }
+
+        /**
+         * 获取发送成功的对端数量
+         *
+         * @return 发送成功的对端数量
+         */
+        public int getSuccessCount() {
+            int count = 0;
+            for (PeerResult result : mPeerResults) {
+                if (result.isSuccess()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 获取总耗时
+         *
+         * @return 总耗时，单位毫秒
+         */
+        public long getTotalMs() {
+            return mTotalMs;
+        }
+    }
+
+    FanOutSender(HandoverManager handoverManager) {
+        this.mHandoverManager = handoverManager;
+    }
+
+    /**
+     * 向多个对端发送同一条接续消息
+     *
+     * @param peerNodeIds 对端设备ID列表
+     * @param msgStr 接续消息内容
+     * @return 汇总结果，所有对端发送完成后完成
+     */
+    public CompletableFuture<FanOutResult> sendContinuityMsg(List<String> peerNodeIds, String msgStr) {
+        return fanOut(peerNodeIds, "sendContinuityMsg", mHandoverManager.prestageContinuityMsg(msgStr),
+            nodeId -> mHandoverManager.sendContinuityMsgAsync(nodeId, msgStr));
+    }
+
+    /**
+     * 向多个对端发送同一个接续文件
+     *
+     * @param peerNodeIds 对端设备ID列表
+     * @param filePath 接续文件的路径
+     * @return 汇总结果，所有对端发送完成后完成
+     */
+    public CompletableFuture<FanOutResult> sendContinuityFile(List<String> peerNodeIds, String filePath) {
+        return fanOut(peerNodeIds, "sendContinuityFile", mHandoverManager.prestageContinuityFile(filePath),
+            nodeId -> mHandoverManager.sendContinuityFileAsync(nodeId, filePath));
+    }
+
+    private CompletableFuture<FanOutResult> fanOut(List<String> peerNodeIds, String name,
+        CompletableFuture<Void> staging, PeerSend peerSend) {
+        // 去重并保持顺序，同一对端只发送一次
+        List<String> nodeIds = new ArrayList<>(new LinkedHashSet<>(peerNodeIds));
+        CompletableFuture<FanOutResult> future = new CompletableFuture<>();
+        if (nodeIds.isEmpty()) {
+            future.complete(new FanOutResult(new ArrayList<>(), 0));
+            return future;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        PeerResult[] results = new PeerResult[nodeIds.size()];
+        AtomicInteger remaining = new AtomicInteger(nodeIds.size());
+        // 准备失败时发送线程会重新编码，不影响发送，因此准备完成后无论结果如何都继续发送
+        staging.whenComplete((value, throwable) -> {
+            for (int i = 0; i < nodeIds.size(); i++) {
+                int index = i;
+                String nodeId = nodeIds.get(index);
+                sendToPeer(nodeId, peerSend).whenComplete((errorCode, unused) -> {
+                    results[index] = new PeerResult(nodeId, errorCode, SystemClock.elapsedRealtime() - startTime);
+                    if (remaining.decrementAndGet() == 0) {
+                        long totalMs = SystemClock.elapsedRealtime() - startTime;
+                        FanOutResult fanOutResult = new FanOutResult(Arrays.asList(results), totalMs);
+                        Log.i(TAG, "fanOut: " + name + " to " + nodeIds.size() + " peers, success "
+                                + fanOutResult.getSuccessCount() + ", cost " + totalMs + "ms");
+                        future.complete(fanOutResult);
+                    }
+                });
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<Integer> sendToPeer(String nodeId, PeerSend peerSend) {
+        // 只有已发起请求的对端会话才随发送结果流转状态
+        HandoverSession session = mHandoverManager.getSessionRegistry().get(nodeId);
+        boolean isTracked = session != null && session.getState() == HandoverSession.State.REQUESTED
+                && session.moveTo(HandoverSession.State.SENDING);
+        return peerSend.send(nodeId).handle((value, throwable) -> {
+            int errorCode = throwable == null ? 0 : errorCodeOf(throwable);
+            if (isTracked) {
+                session.moveTo(errorCode == 0 ? HandoverSession.State.AWAITING_FEEDBACK
+                    : HandoverSession.State.FAILED);
+            }
+            return errorCode;
+        });
+    }
+
+    private static int errorCodeOf(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause() : throwable;
+        if (cause instanceof HandoverSendException) {
+            return ((HandoverSendException) cause).getErrorCode();
+        }
+        Log.e(TAG, "errorCodeOf: unexpected " + cause.getClass().getSimpleName());
+        return HandoverSendException.ERR_SEND_FAILED;
+    }
+
+    /**
+     * 向单个对端发送
+     */
+    private interface PeerSend {
+        /**
+         * 经过OutboundQueue向对端发送
+         *
+         * @param nodeId 对端设备ID
+         * @return 发送结果
+         */
+        CompletableFuture<Void> send(String nodeId);
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 文件转存引擎
+ * 源端和目标端都是文件时使用FileChannel.transferTo在内核中直接拷贝，否则使用复用的大块直接内存缓冲区拷贝；
+ * 数据先写入同目录下的临时文件，完成后再重命名为目标文件，避免拷贝失败时覆盖已有文件
+ *
+ * @since 2023-03-10
+ */
+public final class FileCopyEngine {
+    public static final int RESULT_OK = 0;
+
+    public static final int RESULT_ERR = -1;
+
+    private static final String TAG = "HandoverDemo-FileCopyEngine";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final int BUFFER_POOL_SIZE = 2;
+
+    private static final BlockingQueue<ByteBuffer> BUFFER_POOL = new ArrayBlockingQueue<>(BUFFER_POOL_SIZE);
+
+    private FileCopyEngine() {
+    }
+
+    /**
+     * 拷贝结果
+     */
+    public static final class CopyResult {
+        /**
+         * RESULT_OK(0)：成功  RESULT_ERR(-1)：失败
+         */
+        public final int mCode;
+
+        /**
+         * 拷贝的字节数
+         */
+        public final long mBytes;
+
+        /**
+         * 拷贝耗时，单位毫秒
+         */
+        public final long mElapsedMs;
+
+        /**
+         * 是否通过FileChannel在内核中直接拷贝
+         */
+        public final boolean mIsZeroCopy;
+
+        /**
+         * 拷贝过程中计算的SHA-256(十六进制小写)，未要求计算时为null
+         */
+        public final String mSha256;
+
+        CopyResult(int code, long bytes, long elapsedMs, boolean isZeroCopy, String sha256) {
+            this.mCode = code;
+            this.mBytes = bytes;
+            this.mElapsedMs = elapsedMs;
+            this.mIsZeroCopy = isZeroCopy;
+            this.mSha256 = sha256;
+        }
+
+        /**
+         * 拷贝速率
+         *
+         * @return 每秒拷贝的字节数
+         */
+        public long getBytesPerSecond() {
+            return mElapsedMs <= 0 ? mBytes * 1000 : mBytes * 1000 / mElapsedMs;
+        }
+    }
+
+    /**
+     * 将Uri中的文件转存到本地路径
+     *
+     * @param context 上下文
+     * @param uri 原始文件Uri
+     * @param saveFile 要转存的文件
+     * @return 拷贝结果
+     */
+    public static CopyResult copy(Context context, Uri uri, File saveFile) {
+        return copy(context, uri, saveFile, false);
+    }
+
+    /**
+     * 将Uri中的文件转存到本地路径，同时计算文件内容的SHA-256，数据只读取一次
+     * 需要计算摘要时不能使用transferTo，固定使用缓冲区拷贝
+     *
+     * @param context 上下文
+     * @param uri 原始文件Uri
+     * @param saveFile 要转存的文件
+     * @return 拷贝结果，成功时mSha256为文件内容摘要
+     */
+    public static CopyResult copyAndHash(Context context, Uri uri, File saveFile) {
+        return copy(context, uri, saveFile, true);
+    }
+
+    /**
+     * 将已打开的输入流转存到本地路径，同时计算内容的SHA-256，用于调用方已读取过文件头的接续文件
+     *
+     * @param inputStream 输入流，由调用方关闭
+     * @param saveFile 要转存的文件
+     * @return 拷贝结果，成功时mSha256为文件内容摘要
+     */
+    public static CopyResult copyAndHash(InputStream inputStream, File saveFile) {
+        return copyToFile(Channels.newChannel(inputStream), 0, -1, saveFile, SystemClock.elapsedRealtime(),
+            newDigest());
+    }
+
+    private static CopyResult copy(Context context, Uri uri, File saveFile, boolean isHash) {
+        long startTime = SystemClock.elapsedRealtime();
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                Log.e(TAG, "copy: open file descriptor failed.");
+                return failed(startTime);
+            }
+            // getStatSize返回-1时说明不是普通文件(如管道)，无法使用transferTo
+            long size = pfd.getStatSize();
+            try (FileInputStream inputStream = new FileInputStream(pfd.getFileDescriptor())) {
+                return copyToFile(inputStream.getChannel(), 0, size, saveFile, startTime,
+                    isHash ? newDigest() : null);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "copy: catch IOException.");
+        }
+        return failed(startTime);
+    }
+
+    /**
+     * 将assets中的文件转存到本地路径，未压缩的资源通过文件描述符直接拷贝
+     *
+     * @param context 上下文
+     * @param assetName 资源文件名
+     * @param saveFile 要转存的文件
+     * @return 拷贝结果
+     */
+    public static CopyResult copyAsset(Context context, String assetName, File saveFile) {
+        long startTime = SystemClock.elapsedRealtime();
+        try (AssetFileDescriptor afd = context.getAssets().openFd(assetName);
+             FileInputStream inputStream = afd.createInputStream()) {
+            return copyToFile(inputStream.getChannel(), afd.getStartOffset(), afd.getLength(), saveFile, startTime,
+                null);
+        } catch (FileNotFoundException e) {
+            // 压缩存储的资源无法获取文件描述符，使用流方式拷贝
+            Log.d(TAG, "copyAsset: " + assetName + " is compressed, fall back to stream copy.");
+        } catch (IOException e) {
+            Log.e(TAG, "copyAsset: catch IOException when open fd.");
+            return failed(startTime);
+        }
+        try (InputStream inputStream = context.getAssets().open(assetName)) {
+            return copyToFile(Channels.newChannel(inputStream), 0, -1, saveFile, startTime, null);
+        } catch (IOException e) {
+            Log.e(TAG, "copyAsset: catch IOException.");
+        }
+        return failed(startTime);
+    }
+
+    /**
+     * 预先分配拷贝缓冲区并加载摘要算法，避免首次转存接续文件时分配直接内存和初始化算法提供者
+     */
+    public static void prewarm() {
+        while (BUFFER_POOL.size() < BUFFER_POOL_SIZE) {
+            if (!BUFFER_POOL.offer(ByteBuffer.allocateDirect(BUFFER_SIZE))) {
+                break;
+            }
+        }
+        MessageDigest digest = newDigest();
+        if (digest != null) {
+            digest.digest();
+        }
+    }
+
+    /**
+     * 计算本地文件内容的SHA-256
+     *
+     * @param file 文件
+     * @return 十六进制小写的摘要，读取失败时返回null
+     */
+    public static String hashFile(File file) {
+        MessageDigest digest = newDigest();
+        if (digest == null) {
+            return null;
+        }
+        ByteBuffer buffer = takeBuffer();
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            FileChannel channel = inputStream.getChannel();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            Log.e(TAG, "hashFile: catch IOException.");
+            return null;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * 拷贝到临时文件后重命名为目标文件
+     *
+     * @param source 源数据通道
+     * @param position 源数据起始位置，仅在源数据为文件时有效
+     * @param size 源数据长度，小于0时表示长度未知，使用缓冲区拷贝直到读取结束
+     * @param saveFile 目标文件
+     * @param startTime 开始时间
+     * @param digest 拷贝时同步计算的摘要，为null时不计算
+     * @return 拷贝结果
+     */
+    private static CopyResult copyToFile(ReadableByteChannel source, long position, long size, File saveFile,
+        long startTime, MessageDigest digest) {
+        File parent = saveFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log.e(TAG, "copyToFile: create parent dir failed.");
+            return failed(startTime);
+        }
+        File tempFile = new File(saveFile.getPath() + TEMP_SUFFIX);
+        boolean isZeroCopy = size >= 0 && source instanceof FileChannel && digest == null;
+        long bytes;
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            FileChannel target = outputStream.getChannel();
+            bytes = isZeroCopy ? transfer((FileChannel) source, position, size, target)
+                    : bufferedCopy(source, target, digest);
+            target.force(false);
+        } catch (IOException e) {
+            Log.e(TAG, "copyToFile: catch IOException.");
+            deleteQuietly(tempFile);
+            return failed(startTime);
+        }
+        if (!tempFile.renameTo(saveFile)) {
+            Log.e(TAG, "copyToFile: rename temp file failed.");
+            deleteQuietly(tempFile);
+            return failed(startTime);
+        }
+        String sha256 = digest == null ? null : toHex(digest.digest());
+        CopyResult result = new CopyResult(RESULT_OK, bytes, SystemClock.elapsedRealtime() - startTime, isZeroCopy,
+            sha256);
+        Log.i(TAG, "copyToFile: " + bytes + " bytes in " + result.mElapsedMs + "ms, "
+                + result.getBytesPerSecond() + " B/s, zeroCopy " + isZeroCopy);
+        return result;
+    }
+
+    private static long transfer(FileChannel source, long position, long size, FileChannel target)
+        throws IOException {
+        long transferred = 0;
+        while (transferred < size) {
+            long count = source.transferTo(position + transferred, size - transferred, target);
+            if (count <= 0) {
+                break;
+            }
+            transferred += count;
+        }
+        if (transferred != size) {
+            throw new IOException("source truncated, expect " + size + " but " + transferred);
+        }
+        return transferred;
+    }
+
+    private static long bufferedCopy(ReadableByteChannel source, FileChannel target, MessageDigest digest)
+        throws IOException {
+        ByteBuffer buffer = takeBuffer();
+        try {
+            long copied = 0;
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                if (digest != null) {
+                    buffer.mark();
+                    digest.update(buffer);
+                    buffer.reset();
+                }
+                while (buffer.hasRemaining()) {
+                    copied += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return copied;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private static ByteBuffer takeBuffer() {
+        ByteBuffer buffer = BUFFER_POOL.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        BUFFER_POOL.offer(buffer);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "newDigest: " + DIGEST_ALGORITHM + " not supported.");
+            return null;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static CopyResult failed(long startTime) {
+        return new CopyResult(RESULT_ERR, 0, SystemClock.elapsedRealtime() - startTime, false, null);
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "deleteQuietly: delete " + file.getName() + " failed.");
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * 多文件接续包
+ * 将多个接续文件不压缩地顺序写入一个文件，通过一次接续文件传输发送，避免每个文件单独握手和反馈。
+ * 文件头之后是清单(文件名、相对数据区的偏移量、长度)，Sink端只需读取清单即可定位任意文件，
+ * 可并行转存各文件，也可直接内存映射读取，无需先解出全部文件
+ * 格式: magic(int) version(int) manifestLength(int) manifest data
+ * manifest: count(int) [name(UTF) offset(long) length(long)]*
+ *
+ * @since 2023-04-12
+ */
+public final class HandoverBundle implements Closeable {
+    static final int BUNDLE_MAGIC = 0x484F4246;
+
+    static final int BUNDLE_VERSION = 1;
+
+    /**
+     * 一个接续包最多包含的文件数
+     */
+    public static final int MAX_ENTRIES = 1024;
+
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    private static final int MAX_MANIFEST_SIZE = 1024 * 1024;
+
+    private final File mFile;
+
+    private final RandomAccessFile mRandomAccessFile;
+
+    private final FileChannel mChannel;
+
+    private final long mDataOffset;
+
+    private final List<Entry> mEntries;
+
+    /**
+     * 接续包中的一个文件
+     */
+    public static final class Entry {
+        /**
+         * 文件名，不含路径
+         */
+        public final String mName;
+
+        /**
+         * 相对数据区起始位置的偏移量
+         */
+        public final long mOffset;
+
+        /**
+         * 文件长度
+         */
+        public final long mLength;
+
+        Entry(String name, long offset, long length) {
+            this.mName = name;
+            this.mOffset = offset;
+            this.mLength = length;
+        }
+    }
+
+    private HandoverBundle(File file, RandomAccessFile randomAccessFile, long dataOffset, List<Entry> entries) {
+        this.mFile = file;
+        this.mRandomAccessFile = randomAccessFile;
+        this.mChannel = randomAccessFile.getChannel();
+        this.mDataOffset = dataOffset;
+        this.mEntries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Source端：将多个文件顺序写入接续包，文件内容通过FileChannel直接传输，不经过Java堆
+     *
+     * @param target 接续包文件
+     * @param files 要打包的文件，重名文件加序号前缀区分
+     * @throws IOException 文件不存在或写入失败
+     */
+    static void write(File target, List<File> files) throws IOException {
+        if (files.isEmpty() || files.size() > MAX_ENTRIES) {
+            throw new IOException("invalid bundle entry count " + files.size());
+        }
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        DataOutputStream manifestStream = new DataOutputStream(manifest);
+        manifestStream.writeInt(files.size());
+        Set<String> names = new HashSet<>();
+        long offset = 0;
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            if (!file.isFile()) {
+                throw new FileNotFoundException("bundle entry " + file.getName() + " not exist.");
+            }
+            String name = names.add(file.getName()) ? file.getName() : i + "_" + file.getName();
+            names.add(name);
+            manifestStream.writeUTF(name);
+            manifestStream.writeLong(offset);
+            manifestStream.writeLong(file.length());
+            offset += file.length();
+        }
+        manifestStream.flush();
+        try (FileOutputStream outputStream = new FileOutputStream(target);
+            FileChannel outChannel = outputStream.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + manifest.size());
+            header.putInt(BUNDLE_MAGIC).putInt(BUNDLE_VERSION).putInt(manifest.size()).put(manifest.toByteArray());
+            header.flip();
+            while (header.hasRemaining()) {
+                outChannel.write(header);
+            }
+            for (File file : files) {
+                transferFully(file, outChannel);
+            }
+        } catch (IOException e) {
+            if (target.exists() && !target.delete()) {
+                target.deleteOnExit();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sink端：打开接续包并读取清单，不读取文件内容
+     *
+     * @param file 收到的接续文件
+     * @return 接续包，不是接续包时返回null
+     * @throws IOException 有接续包标记但清单无效
+     */
+    public static HandoverBundle open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            if (randomAccessFile.length() < HEADER_SIZE || randomAccessFile.readInt() != BUNDLE_MAGIC) {
+                randomAccessFile.close();
+                return null;
+            }
+            if (randomAccessFile.readInt() != BUNDLE_VERSION) {
+                throw new IOException("unsupported bundle version.");
+            }
+            int manifestSize = randomAccessFile.readInt();
+            if (manifestSize <= 0 || manifestSize > MAX_MANIFEST_SIZE) {
+                throw new IOException("invalid bundle manifest size " + manifestSize);
+            }
+            byte[] manifest = new byte[manifestSize];
+            randomAccessFile.readFully(manifest);
+            long dataOffset = HEADER_SIZE + (long) manifestSize;
+            List<Entry> entries = readManifest(manifest, randomAccessFile.length() - dataOffset);
+            return new HandoverBundle(file, randomAccessFile, dataOffset, entries);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 获取接续包中的文件清单
+     *
+     * @return 文件清单，按打包顺序排列
+     */
+    public List<Entry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * 只读内存映射接续包中的一个文件，无需转存即可读取
+     *
+     * @param entry 清单中的文件
+     * @return 文件内容的只读映射
+     * @throws IOException 映射失败
+     */
+    public MappedByteBuffer map(Entry entry) throws IOException {
+        return mChannel.map(FileChannel.MapMode.READ_ONLY, mDataOffset + entry.mOffset, entry.mLength);
+    }
+
+    /**
+     * 将接续包中的一个文件转存到目录中，目录中已有相同长度的同名文件时不再转存
+     * 按位置读取接续包，可在多个线程中同时调用
+     *
+     * @param entry 清单中的文件
+     * @param dir 目标目录
+     * @return 转存后的文件
+     * @throws IOException 转存失败
+     */
+    public File extract(Entry entry, File dir) throws IOException {
+        File target = new File(dir, entry.mName);
+        if (target.isFile() && target.length() == entry.mLength) {
+            return target;
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(target);
+            FileChannel outChannel = outputStream.getChannel()) {
+            long position = mDataOffset + entry.mOffset;
+            long remaining = entry.mLength;
+            while (remaining > 0) {
+                long count = mChannel.transferTo(position, remaining, outChannel);
+                if (count <= 0) {
+                    throw new EOFException("bundle truncated at " + entry.mName);
+                }
+                position += count;
+                remaining -= count;
+            }
+        } catch (IOException e) {
+            if (target.exists() && !target.delete()) {
+                target.deleteOnExit();
+            }
+            throw e;
+        }
+        return target;
+    }
+
+    /**
+     * 在指定线程池中并行转存接续包中的所有文件
+     *
+     * @param dir 目标目录
+     * @param executor 转存线程池
+     * @return 按清单顺序排列的转存后文件，任一文件转存失败时以IOException异常完成
+     */
+    public CompletableFuture<List<File>> extractAll(File dir, Executor executor) {
+        List<CompletableFuture<File>> futures = new ArrayList<>(mEntries.size());
+        for (Entry entry : mEntries) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return extract(entry, dir);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<File> files = new ArrayList<>(futures.size());
+            for (CompletableFuture<File> future : futures) {
+                files.add(future.join());
+            }
+            return files;
+        });
+    }
+
+    /**
+     * 获取接续包文件
+     *
+     * @return 接续包文件
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mRandomAccessFile.close();
+    }
+
+    private static List<Entry> readManifest(byte[] manifest, long dataSize) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(manifest));
+        int count = inputStream.readInt();
+        if (count <= 0 || count > MAX_ENTRIES) {
+            throw new IOException("invalid bundle entry count " + count);
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = inputStream.readUTF();
+            long offset = inputStream.readLong();
+            long length = inputStream.readLong();
+            // 文件名不能包含路径，防止转存到目标目录之外
+            if (name.isEmpty() || !name.equals(new File(name).getName()) || ".".equals(name)
+                || "..".equals(name)) {
+                throw new IOException("invalid bundle entry name " + name);
+            }
+            if (offset < 0 || length < 0 || offset > dataSize - length) {
+                throw new IOException("invalid bundle entry range " + name);
+            }
+            entries.add(new Entry(name, offset, length));
+        }
+        return entries;
+    }
+
+    private static void transferFully(File file, FileChannel outChannel) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel inChannel = randomAccessFile.getChannel()) {
+            long position = 0;
+            long size = inChannel.size();
+            while (position < size) {
+                long count = inChannel.transferTo(position, size - position, outChannel);
+                if (count <= 0) {
+                    throw new EOFException("bundle entry " + file.getName() + " truncated.");
+                }
+                position += count;
+            }
+        }
+    }
+}
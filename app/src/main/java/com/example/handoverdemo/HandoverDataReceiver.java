@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+
+import android.content.Context;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 接续数据接收器(Sink端)，进程内唯一
+ * 接续框架拉起RecDataActivity后直接把接续数据交给接收器，在接收线程中立即开始解码接续消息或转存接续文件，
+ * 处理完成后立即反馈接续结果，不等待展示界面启动；界面启动后再设置监听获取处理结果进行展示，
+ * 界面设置监听前处理完成的最近一次结果在设置监听时补发。收到多文件接续包时按清单并行转存包中的所有文件
+ *
+ * @since 2023-04-09
+ */
+public class HandoverDataReceiver {
+    private static final String TAG = "HandoverDemo-HandoverDataReceiver";
+
+    private static final String BUNDLE_DIR = "continuity_bundle";
+
+    private static final int MAX_EXTRACT_THREADS = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * 接续数据处理结果监听，在接收线程中回调
+     */
+    public interface Listener {
+        /**
+         * 接续数据处理完成
+         *
+         * @param result 处理结果
+         */
+        void onContinuityData(Result result);
+    }
+
+    /**
+     * 接续数据处理结果
+     */
+    public static final class Result {
+        /**
+         * Source端设备ID
+         */
+        public final String mPeerNodeId;
+
+        /**
+         * 接续消息内容，接续数据为文件或内容引用时为null
+         */
+        public final String mContinuityMsg;
+
+        /**
+         * 转存后的接续文件路径，接续数据为消息时为null，接续包时为包中第一个文件的路径
+         */
+        public final String mFilePath;
+
+        /**
+         * 转存后的所有接续文件路径，接续包时按打包顺序排列，接续数据为消息时为空
+         */
+        public final List<String> mFilePaths;
+
+        Result(String peerNodeId, String continuityMsg, String filePath) {
+            this(peerNodeId, continuityMsg, filePath,
+                filePath == null ? Collections.emptyList() : Collections.singletonList(filePath));
+        }
+
+        Result(String peerNodeId, String continuityMsg, String filePath, List<String> filePaths) {
+            this.mPeerNodeId = peerNodeId;
+            this.mContinuityMsg = continuityMsg;
+            this.mFilePath = filePath;
+            this.mFilePaths = Collections.unmodifiableList(filePaths);
+        }
+    }
+
+    private final Context mContext;
+
+    private final HandoverManager mHandoverManager;
+
+    /**
+     * 接收线程，按到达顺序处理接续数据，保证增量内容按顺序解码
+     */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "handover-receiver"));
+
+    /**
+     * 接续包转存线程池，空闲线程自动退出
+     */
+    private final ThreadPoolExecutor mExtractExecutor;
+
+    private Listener mListener;
+
+    /**
+     * 界面设置监听前处理完成的最近一次结果
+     */
+    private Result mPendingResult;
+
+    HandoverDataReceiver(Context context, HandoverManager handoverManager) {
+        this.mContext = context;
+        this.mHandoverManager = handoverManager;
+        int threads = Math.max(1, Math.min(MAX_EXTRACT_THREADS, Runtime.getRuntime().availableProcessors()));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "handover-bundle"));
+        executor.allowCoreThreadTimeOut(true);
+        this.mExtractExecutor = executor;
+    }
+
+    /**
+     * 处理接续框架通过ACTION_APP_DATA_HANDOVER送达的接续数据，处理完成后立即反馈接续结果
+     *
+     * @param peerNodeId Source端设备ID
+     * @param dataContent 接续消息内容，接续文件时为null
+     * @param uri 接续文件Uri，接续消息时为null
+     * @return 处理结果，分块文件尚未全部接收时结果为null，失败时以HandoverReceiveException异常完成
+     */
+    public CompletableFuture<Result> receive(String peerNodeId, String dataContent, Uri uri) {
+        HandoverMetrics metrics = mHandoverManager.getMetrics();
+        metrics.mark(peerNodeId, HandoverMetrics.Phase.DATA_RECEIVED, dataContent == null ? -1 : dataContent.length());
+        // 未经ACTION_LAUNCH_APP预热时在此开始注册，反馈在接续服务可用前排队
+        mHandoverManager.startRegistration();
+        mHandoverManager.onPeerContact(peerNodeId);
+        CompletableFuture<Result> processing;
+        if (dataContent != null) {
+            processing = supplyAsync(() -> receiveContinuityMsg(peerNodeId, dataContent));
+        } else if (uri != null) {
+            processing = supplyAsync(() -> receiveContinuityFile(peerNodeId, uri));
+        } else {
+            Log.w(TAG, "receive: don't receive any continuity data.");
+            processing = new CompletableFuture<>();
+            processing.completeExceptionally(
+                new HandoverReceiveException(HandoverReceiveException.ERR_NO_DATA, "no continuity data."));
+        }
+        // 1.接续数据处理完成后立即通知框架接续结果，收到接续反馈后框架会将结果返回给Source端
+        // 2.接续服务尚不可用时反馈会排队，接续服务可用后立即发送
+        // 3.如果是文件接续，框架收到此反馈后会进行删除接续缓存文件等操作，因此在文件转存完成后才反馈
+        // 4.分块文件的中间分块已通过分块确认应答，不反馈接续结果，全部分块接收完成后才反馈
+        mHandoverManager.feedbackOnCompletion(peerNodeId, processing, result -> result == null);
+        processing.thenAccept(result -> {
+            if (result != null) {
+                deliver(result);
+            }
+        });
+        return processing;
+    }
+
+    /**
+     * 停止接收线程和接续包转存线程，已提交的接续数据处理完成后线程退出
+     */
+    void shutdown() {
+        mExecutor.shutdown();
+        mExtractExecutor.shutdown();
+    }
+
+    /**
+     * 设置处理结果监听，界面设置监听前处理完成的最近一次结果立即补发
+     *
+     * @param listener 监听
+     */
+    public void attach(Listener listener) {
+        Result pending;
+        synchronized (this) {
+            mListener = listener;
+            pending = mPendingResult;
+            mPendingResult = null;
+        }
+        if (pending != null) {
+            listener.onContinuityData(pending);
+        }
+    }
+
+    /**
+     * 移除处理结果监听
+     *
+     * @param listener 设置监听时的监听
+     */
+    public synchronized void detach(Listener listener) {
+        if (mListener == listener) {
+            mListener = null;
+        }
+    }
+
+    private void deliver(Result result) {
+        Listener listener;
+        synchronized (this) {
+            listener = mListener;
+            if (listener == null) {
+                mPendingResult = result;
+                return;
+            }
+        }
+        listener.onContinuityData(result);
+    }
+
+    private Result receiveContinuityMsg(String peerNodeId, String dataContent) {
+        String continuityMsg = mHandoverManager.decodeContinuityMsg(peerNodeId, dataContent);
+        HandoverEventLog.getInstance().message(Log.INFO, TAG, "receiveContinuityMsg",
+            HandoverSdk.MsgType.CONTINUITY_MSG, peerNodeId, continuityMsg);
+        if (continuityMsg == null) {
+            // 增量内容的基准缺失，反馈失败后Source端会重新发送完整内容
+            throw receiveFailed(HandoverReceiveException.ERR_DECODE_FAILED, "decode continuity msg failed.");
+        }
+        if (!ContentHandshake.isContentRef(continuityMsg)) {
+            return new Result(peerNodeId, continuityMsg, null);
+        }
+        // Source端确认本端已有该文件，直接从内容存储中取出，取出后释放回复询问时的pin
+        String sha256 = ContentHandshake.parseContentRef(continuityMsg);
+        ContentStore contentStore = mHandoverManager.getContentStore();
+        String filePath = contentStore.lookup(sha256);
+        contentStore.unpin(sha256);
+        if (TextUtils.isEmpty(filePath)) {
+            throw receiveFailed(HandoverReceiveException.ERR_CONTENT_MISSING, "content not in store.");
+        }
+        return fileResult(peerNodeId, filePath);
+    }
+
+    private Result receiveContinuityFile(String peerNodeId, Uri uri) {
+        String spilledMsg = null;
+        ChunkedFileReceiver.Result chunkResult = null;
+        String filePath = null;
+        // 接续文件只打开一次，按文件头标记分类后由同一个流继续解析或转存，不重复读取
+        try (InputStream rawStream = mContext.getContentResolver().openInputStream(uri)) {
+            if (rawStream == null) {
+                throw receiveFailed(HandoverReceiveException.ERR_FILE_COPY_FAILED, "open continuity file failed.");
+            }
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(rawStream, BUFFER_SIZE));
+            int magic = readMagic(inputStream);
+            if (magic == ContinuityMsgSpiller.SPILL_MAGIC) {
+                spilledMsg = readSpilledMsg(inputStream);
+            } else if (magic == ChunkedFileSender.CHUNK_MAGIC) {
+                chunkResult = mHandoverManager.getChunkedFileReceiver().onChunkReceived(peerNodeId, inputStream);
+            } else {
+                // 普通接续文件回到文件开头，按内容摘要转存，相同内容只保存一份
+                inputStream.reset();
+                filePath = mHandoverManager.getContentStore().store(inputStream);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "receiveContinuityFile: read continuity file failed.");
+            throw receiveFailed(HandoverReceiveException.ERR_FILE_COPY_FAILED, "read continuity file failed.");
+        }
+        if (spilledMsg != null) {
+            // 超大接续消息由Source端转文件发送，按接续消息解码
+            return receiveContinuityMsg(peerNodeId, spilledMsg);
+        }
+        if (chunkResult != null) {
+            if (chunkResult.mCode == ChunkedFileReceiver.RESULT_CHUNK_ACCEPTED) {
+                // 分块文件尚未全部接收，本分块已写入组装文件并通过分块确认应答，结果为null时不反馈接续结果
+                return null;
+            }
+            if (chunkResult.mCode != ChunkedFileReceiver.RESULT_COMPLETED) {
+                throw receiveFailed(HandoverReceiveException.ERR_CHUNK_FAILED, "receive chunk failed.");
+            }
+            // 分块文件传输完成，将组装后的文件移入内容存储
+            filePath = mHandoverManager.getContentStore().storeFile(new File(chunkResult.mFilePath));
+        }
+        if (TextUtils.isEmpty(filePath)) {
+            throw receiveFailed(HandoverReceiveException.ERR_FILE_COPY_FAILED, "store continuity file failed.");
+        }
+        long fileSize = new File(filePath).length();
+        HandoverEventLog.getInstance().message(Log.INFO, TAG, "receiveContinuityFile",
+            HandoverSdk.MsgType.CONTINUITY_FILE, peerNodeId, fileSize);
+        mHandoverManager.getMetrics().mark(peerNodeId, HandoverMetrics.Phase.FILE_COPIED, fileSize);
+        return fileResult(peerNodeId, filePath);
+    }
+
+    /**
+     * 接续文件是多文件接续包时按清单并行转存包中的所有文件，否则直接返回接续文件
+     */
+    private Result fileResult(String peerNodeId, String filePath) {
+        File bundleFile = new File(filePath);
+        List<File> files;
+        try (HandoverBundle bundle = HandoverBundle.open(bundleFile)) {
+            if (bundle == null) {
+                return new Result(peerNodeId, null, filePath);
+            }
+            File dir = prepareBundleDir(bundleFile.getName());
+            files = bundle.extractAll(dir, mExtractExecutor).join();
+        } catch (IOException | CompletionException e) {
+            Log.e(TAG, "fileResult: extract bundle failed.");
+            throw receiveFailed(HandoverReceiveException.ERR_FILE_COPY_FAILED, "extract bundle failed.");
+        }
+        List<String> filePaths = new ArrayList<>(files.size());
+        long totalSize = 0;
+        for (File file : files) {
+            filePaths.add(file.getPath());
+            totalSize += file.length();
+        }
+        HandoverEventLog.getInstance().message(Log.INFO, TAG, "receiveContinuityFile bundle",
+            HandoverSdk.MsgType.CONTINUITY_FILE, peerNodeId, totalSize);
+        return new Result(peerNodeId, null, filePaths.get(0), filePaths);
+    }
+
+    /**
+     * 准备接续包的转存目录，只保留本次接续包的目录，之前接续包转存的文件已展示过，直接删除
+     */
+    private File prepareBundleDir(String bundleName) throws IOException {
+        File root = new File(mContext.getFilesDir(), BUNDLE_DIR);
+        File[] stale = root.listFiles();
+        if (stale != null) {
+            for (File dir : stale) {
+                if (!dir.getName().equals(bundleName)) {
+                    deleteRecursively(dir);
+                }
+            }
+        }
+        File dir = new File(root, bundleName);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("create bundle dir failed.");
+        }
+        return dir;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "deleteRecursively: delete " + file.getName() + " failed.");
+        }
+    }
+
+    private CompletableFuture<Result> supplyAsync(Supplier<Result> action) {
+        try {
+            return CompletableFuture.supplyAsync(action, mExecutor);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "supplyAsync: receiver executor rejected.");
+            CompletableFuture<Result> future = new CompletableFuture<>();
+            future.completeExceptionally(new HandoverReceiveException(HandoverReceiveException.ERR_UNKNOWN,
+                "receiver executor rejected."));
+            return future;
+        }
+    }
+
+    /**
+     * 读取文件头标记，读取前标记流的位置，不是已知标记时调用方可回到文件开头
+     *
+     * @return 文件头标记，文件长度不足标记长度时返回0
+     */
+    private static int readMagic(DataInputStream inputStream) throws IOException {
+        inputStream.mark(Integer.BYTES);
+        try {
+            return inputStream.readInt();
+        } catch (EOFException e) {
+            return 0;
+        }
+    }
+
+    private String readSpilledMsg(DataInputStream inputStream) {
+        try {
+            return mHandoverManager.getContinuityMsgSpiller().read(inputStream);
+        } catch (IOException e) {
+            Log.e(TAG, "readSpilledMsg: read spilled continuity msg failed.");
+            throw receiveFailed(HandoverReceiveException.ERR_DECODE_FAILED, "read spilled continuity msg failed.");
+        }
+    }
+
+    private static CompletionException receiveFailed(int errorCode, String message) {
+        return new CompletionException(new HandoverReceiveException(errorCode, message));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import static com.example.handoverdemo.HandoverManager.DATA_CONTENT;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * onDataEvent上报的接续消息
+ * 分发时只扫描出msgType和nodeId，可选的字符串字段按需单独扫描，其余字段在首次访问时才解析完整的Json
+ *
+ * @since 2023-03-17
+ */
+public final class HandoverEvent {
+    private final String mRawData;
+
+    private final HandoverSdk.MsgType mMsgType;
+
+    private final String mNodeId;
+
+    private JSONObject mJsonObject;
+
+    HandoverEvent(String rawData, HandoverSdk.MsgType msgType, String nodeId) {
+        this.mRawData = rawData;
+        this.mMsgType = msgType;
+        this.mNodeId = nodeId;
+    }
+
+    /**
+     * 获取消息类型
+     *
+     * @return 消息类型
+     */
+    public HandoverSdk.MsgType getMsgType() {
+        return mMsgType;
+    }
+
+    /**
+     * 获取对端设备ID
+     *
+     * @return 对端设备ID，消息中不包含时为空字符串
+     */
+    public String getNodeId() {
+        return mNodeId;
+    }
+
+    /**
+     * 获取原始消息长度
+     *
+     * @return 原始消息长度
+     */
+    public int getRawLength() {
+        return mRawData.length();
+    }
+
+    /**
+     * 获取DATA_CONTENT字段
+     *
+     * @return DATA_CONTENT字段内容
+     * @throws JSONException 消息格式错误或不包含该字段
+     */
+    public String getDataContent() throws JSONException {
+        return getJson().getString(DATA_CONTENT);
+    }
+
+    /**
+     * 获取字符串字段
+     *
+     * @param key 字段名
+     * @return 字段内容
+     * @throws JSONException 消息格式错误或不包含该字段
+     */
+    public String getString(String key) throws JSONException {
+        return getJson().getString(key);
+    }
+
+    /**
+     * 获取可选的字符串字段，未解析过完整Json时只按字符扫描该字段
+     *
+     * @param key 字段名
+     * @return 字段内容，不包含该字段时为空字符串
+     * @throws JSONException 扫描失败后完整解析时消息格式错误
+     */
+    public String optString(String key) throws JSONException {
+        if (mJsonObject == null) {
+            String value = HandoverEventDispatcher.scanString(mRawData, key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return getJson().optString(key);
+    }
+
+    /**
+     * 获取整型字段
+     *
+     * @param key 字段名
+     * @return 字段内容
+     * @throws JSONException 消息格式错误或不包含该字段
+     */
+    public int getInt(String key) throws JSONException {
+        return getJson().getInt(key);
+    }
+
+    /**
+     * 获取完整的消息Json对象，首次调用时解析
+     *
+     * @return 消息Json对象
+     * @throws JSONException 消息格式错误
+     */
+    public JSONObject getJson() throws JSONException {
+        if (mJsonObject == null) {
+            mJsonObject = new JSONObject(mRawData);
+        }
+        return mJsonObject;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import static com.example.handoverdemo.HandoverManager.MSG_TYPE;
+import static com.example.handoverdemo.HandoverManager.NODE_ID;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * onDataEvent消息分发器
+ * 先按字符扫描出顶层的msgType和nodeId字段，再通过预先构建的消息类型表分发到对应的处理器，
+ * 其他字段由处理器按需从HandoverEvent中解析，避免每条消息都构建完整的JSONObject
+ *
+ * @since 2023-03-17
+ */
+public class HandoverEventDispatcher {
+    private static final String TAG = "HandoverDemo-EventDispatcher";
+
+    /**
+     * 消息类型字符串到枚举的映射，只在类加载时构建一次
+     */
+    private static final Map<String, HandoverSdk.MsgType> MSG_TYPES = new HashMap<>();
+
+    static {
+        for (HandoverSdk.MsgType msgType : HandoverSdk.MsgType.values()) {
+            MSG_TYPES.put(msgType.toString(), msgType);
+        }
+    }
+
+    private final EventHandler[] mHandlers = new EventHandler[HandoverSdk.MsgType.values().length];
+
+    /**
+     * 消息处理器
+     */
+    public interface EventHandler {
+        /**
+         * 处理消息
+         *
+         * @param event 接续消息
+         * @throws JSONException 解析消息字段失败
+         */
+        void onEvent(HandoverEvent event) throws JSONException;
+    }
+
+    /**
+     * 注册消息处理器，同一消息类型只保留最后注册的处理器
+     *
+     * @param msgType 消息类型
+     * @param handler 消息处理器
+     * @return 当前分发器
+     */
+    public HandoverEventDispatcher register(HandoverSdk.MsgType msgType, EventHandler handler) {
+        mHandlers[msgType.ordinal()] = handler;
+        return this;
+    }
+
+    /**
+     * 分发onDataEvent上报的消息
+     *
+     * @param data onDataEvent上报的消息
+     */
+    public void dispatch(String data) {
+        if (data == null) {
+            Log.e(TAG, "dispatch: data is null.");
+            return;
+        }
+        try {
+            HandoverEvent event = parseHeader(data);
+            // 只记录消息类型、来源和长度，不在每条消息上拼接日志字符串
+            HandoverEventLog.getInstance().message(Log.DEBUG, TAG, "onDataEvent", event.getMsgType(),
+                event.getNodeId(), event.getRawLength());
+            EventHandler handler = event.getMsgType() == null ? null : mHandlers[event.getMsgType().ordinal()];
+            if (handler == null) {
+                Log.w(TAG, "dispatch: no handler for " + event.getMsgType());
+                return;
+            }
+            handler.onEvent(event);
+        } catch (JSONException e) {
+            Log.e(TAG, "dispatch: catch JSONException, length " + data.length());
+        }
+    }
+
+    private static HandoverEvent parseHeader(String data) throws JSONException {
+        HeaderScanner scanner = new HeaderScanner(data);
+        if (!scanner.scan()) {
+            // 消息中的字段包含转义字符或格式不符合预期时，退化为完整解析
+            JSONObject jsonObject = new JSONObject(data);
+            HandoverEvent event = new HandoverEvent(data, MSG_TYPES.get(jsonObject.getString(MSG_TYPE)),
+                jsonObject.optString(NODE_ID));
+            return event;
+        }
+        if (scanner.mMsgType == null) {
+            throw new JSONException("missing " + MSG_TYPE);
+        }
+        return new HandoverEvent(data, MSG_TYPES.get(scanner.mMsgType),
+            scanner.mNodeId == null ? "" : scanner.mNodeId);
+    }
+
+    /**
+     * 按字符扫描消息中顶层的字符串字段，不构建JSONObject
+     *
+     * @param data onDataEvent上报的消息
+     * @param key 字段名
+     * @return 字段内容，不包含该字段时为空字符串；字段不是字符串、包含转义字符或消息格式不符合预期时返回null，
+     *     由调用方退化为完整解析
+     */
+    static String scanString(String data, String key) {
+        return new HeaderScanner(data).findString(key);
+    }
+
+    /**
+     * 顶层字段扫描器，提取msgType和nodeId或指定的字符串字段，其他字段直接跳过
+     */
+    private static final class HeaderScanner {
+        private final String mData;
+
+        private final int mLength;
+
+        private int mPos;
+
+        private String mMsgType;
+
+        private String mNodeId;
+
+        private HeaderScanner(String data) {
+            this.mData = data;
+            this.mLength = data.length();
+        }
+
+        /**
+         * 扫描顶层字段
+         *
+         * @return true:扫描成功 false:需要退化为完整解析
+         */
+        private boolean scan() {
+            skipWhitespace();
+            if (!consume('{')) {
+                return false;
+            }
+            while (mPos < mLength) {
+                skipWhitespace();
+                if (consume('}')) {
+                    return true;
+                }
+                if (!consume('"')) {
+                    return false;
+                }
+                int keyStart = mPos;
+                int keyEnd = skipString();
+                if (keyEnd < 0) {
+                    return false;
+                }
+                skipWhitespace();
+                if (!consume(':')) {
+                    return false;
+                }
+                skipWhitespace();
+                boolean isMsgType = matches(keyStart, keyEnd, MSG_TYPE);
+                boolean isNodeId = !isMsgType && matches(keyStart, keyEnd, NODE_ID);
+                if (isMsgType || isNodeId) {
+                    String value = readString();
+                    if (value == null) {
+                        return false;
+                    }
+                    if (isMsgType) {
+                        mMsgType = value;
+                    } else {
+                        mNodeId = value;
+                    }
+                    if (mMsgType != null && mNodeId != null) {
+                        return true;
+                    }
+                } else if (!skipValue()) {
+                    return false;
+                }
+                skipWhitespace();
+                consume(',');
+            }
+            return false;
+        }
+
+        /**
+         * 扫描指定的顶层字符串字段
+         *
+         * @return 字段内容，不包含该字段时为空字符串，需要退化为完整解析时返回null
+         */
+        private String findString(String key) {
+            skipWhitespace();
+            if (!consume('{')) {
+                return null;
+            }
+            while (mPos < mLength) {
+                skipWhitespace();
+                if (consume('}')) {
+                    return "";
+                }
+                if (!consume('"')) {
+                    return null;
+                }
+                int keyStart = mPos;
+                int keyEnd = skipString();
+                if (keyEnd < 0) {
+                    return null;
+                }
+                skipWhitespace();
+                if (!consume(':')) {
+                    return null;
+                }
+                skipWhitespace();
+                if (matches(keyStart, keyEnd, key)) {
+                    return readString();
+                }
+                if (!skipValue()) {
+                    return null;
+                }
+                skipWhitespace();
+                consume(',');
+            }
+            return null;
+        }
+
+        private boolean matches(int start, int end, String key) {
+            return end - start == key.length() && mData.regionMatches(start, key, 0, key.length());
+        }
+
+        private String readString() {
+            if (!consume('"')) {
+                return null;
+            }
+            int start = mPos;
+            int end = skipString();
+            if (end < 0) {
+                return null;
+            }
+            for (int i = start; i < end; i++) {
+                if (mData.charAt(i) == '\\') {
+                    return null;
+                }
+            }
+            return mData.substring(start, end);
+        }
+
+        /**
+         * 跳过字符串内容，调用前已消费起始引号
+         *
+         * @return 结束引号的位置，字符串未结束时返回-1
+         */
+        private int skipString() {
+            while (mPos < mLength) {
+                char ch = mData.charAt(mPos++);
+                if (ch == '\\') {
+                    mPos++;
+                } else if (ch == '"') {
+                    return mPos - 1;
+                }
+            }
+            return -1;
+        }
+
+        private boolean skipValue() {
+            int depth = 0;
+            while (mPos < mLength) {
+                char ch = mData.charAt(mPos);
+                if (ch == '"') {
+                    mPos++;
+                    if (skipString() < 0) {
+                        return false;
+                    }
+                    if (depth == 0) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if (ch == '}' || ch == ']') {
+                    if (depth == 0) {
+                        return true;
+                    }
+                    depth--;
+                    if (depth == 0) {
+                        mPos++;
+                        return true;
+                    }
+                } else if (ch == ',' && depth == 0) {
+                    return true;
+                }
+                mPos++;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (mPos < mLength && Character.isWhitespace(mData.charAt(mPos))) {
+                mPos++;
+            }
+        }
+
+        private boolean consume(char expected) {
+            if (mPos < mLength && mData.charAt(mPos) == expected) {
+                mPos++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 接续路径的结构化事件日志
+ * 事件只记录类型化字段(消息类型、对端设备ID、大小、阶段、耗时)，接续内容只记录长度和按首尾采样计算的指纹，
+ * 不保留内容本身；字符串只在输出到logcat或dump时才格式化。所有事件写入无锁环形缓冲区，可随时dump，
+ * 输出到logcat时先判断日志级别，并按tag限制每秒输出的条数，超出的条数在下一次输出时汇总
+ *
+ * @since 2023-04-10
+ */
+public final class HandoverEventLog {
+    /**
+     * 环形缓冲区容量，必须为2的幂
+     */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    /**
+     * 每个tag每秒最多输出到logcat的条数
+     */
+    public static final int DEFAULT_RATE_LIMIT = 20;
+
+    private static final long RATE_WINDOW_MS = 1000;
+
+    /**
+     * 计算内容指纹时采样的首尾字符数
+     */
+    private static final int FINGERPRINT_SAMPLE = 32;
+
+    /**
+     * 格式化时对端设备ID保留的字符数
+     */
+    private static final int NODE_ID_PREFIX = 8;
+
+    private static final float NANOS_PER_MILLI = 1000000f;
+
+    private static final float MICROS_PER_MILLI = 1000f;
+
+    private static final HandoverEventLog INSTANCE = new HandoverEventLog(DEFAULT_CAPACITY, DEFAULT_RATE_LIMIT);
+
+    private final AtomicReferenceArray<Record> mRecords;
+
+    private final int mMask;
+
+    private final AtomicLong mCursor = new AtomicLong();
+
+    private final int mRateLimit;
+
+    private final Map<String, RateWindow> mRateWindows = new ConcurrentHashMap<>();
+
+    /**
+     * 一条事件，创建后不再修改，通过AtomicReferenceArray安全发布
+     */
+    private static final class Record {
+        private final long mSeq;
+
+        private final long mTimeNanos;
+
+        private final int mLevel;
+
+        private final String mTag;
+
+        private final String mEvent;
+
+        private final String mThreadName;
+
+        private final Object mMsgType;
+
+        private final String mNodeId;
+
+        private final long mSize;
+
+        private final int mFingerprint;
+
+        private final HandoverMetrics.Phase mPhase;
+
+        private final long mLatencyUs;
+
+        Record(long seq, int level, String tag, String event, Object msgType, String nodeId, long size,
+            int fingerprint, HandoverMetrics.Phase phase, long latencyUs) {
+            this.mSeq = seq;
+            this.mTimeNanos = SystemClock.elapsedRealtimeNanos();
+            this.mLevel = level;
+            this.mTag = tag;
+            this.mEvent = event;
+            this.mThreadName = Thread.currentThread().getName();
+            this.mMsgType = msgType;
+            this.mNodeId = nodeId;
+            this.mSize = size;
+            this.mFingerprint = fingerprint;
+            this.mPhase = phase;
+            this.mLatencyUs = latencyUs;
+        }
+
+        private String format() {
+            StringBuilder builder = new StringBuilder(mEvent);
+            if (mMsgType != null) {
+                builder.append(" type=").append(mMsgType);
+            }
+            if (mNodeId != null) {
+                builder.append(" node=").append(mNodeId.length() > NODE_ID_PREFIX
+                    ? mNodeId.substring(0, NODE_ID_PREFIX) + "..." : mNodeId);
+            }
+            if (mSize >= 0) {
+                builder.append(" size=").append(mSize);
+            }
+            if (mFingerprint != 0) {
+                builder.append(" fp=").append(Integer.toHexString(mFingerprint));
+            }
+            if (mPhase != null) {
+                builder.append(" phase=").append(mPhase);
+            }
+            if (mLatencyUs >= 0) {
+                builder.append(String.format(Locale.ROOT, " latency=%.1fms", mLatencyUs / MICROS_PER_MILLI));
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 单个tag的限流窗口
+     */
+    private static final class RateWindow {
+        private final AtomicLong mWindowStart = new AtomicLong();
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        private final AtomicInteger mSuppressed = new AtomicInteger();
+    }
+
+    HandoverEventLog(int capacity, int rateLimit) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2.");
+        }
+        this.mRecords = new AtomicReferenceArray<>(capacity);
+        this.mMask = capacity - 1;
+        this.mRateLimit = rateLimit;
+    }
+
+    /**
+     * 获取进程内的事件日志
+     *
+     * @return 事件日志
+     */
+    public static HandoverEventLog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录一条信令或接续数据事件，内容只记录长度和指纹
+     *
+     * @param level 输出到logcat的日志级别，Log.DEBUG/Log.INFO等
+     * @param tag 日志tag
+     * @param event 事件名，使用常量字符串
+     * @param msgType 消息类型，可为null
+     * @param nodeId 对端设备ID，可为null
+     * @param payload 消息内容，可为null
+     */
+    public void message(int level, String tag, String event, Object msgType, String nodeId, String payload) {
+        record(level, tag, event, msgType, nodeId, payload == null ? -1 : payload.length(), fingerprint(payload),
+            null, -1);
+    }
+
+    /**
+     * 记录一条不带内容的信令事件，如接续文件只记录文件大小
+     *
+     * @param level 输出到logcat的日志级别
+     * @param tag 日志tag
+     * @param event 事件名，使用常量字符串
+     * @param msgType 消息类型，可为null
+     * @param nodeId 对端设备ID，可为null
+     * @param size 数据大小，未知时小于0
+     */
+    public void message(int level, String tag, String event, Object msgType, String nodeId, long size) {
+        record(level, tag, event, msgType, nodeId, size, 0, null, -1);
+    }
+
+    /**
+     * 记录对端设备到达某个接续阶段
+     *
+     * @param level 输出到logcat的日志级别
+     * @param tag 日志tag
+     * @param nodeId 对端设备ID
+     * @param phase 阶段
+     * @param latencyUs 以该阶段结束的区间耗时，单位微秒，未知时小于0
+     */
+    public void phase(int level, String tag, String nodeId, HandoverMetrics.Phase phase, long latencyUs) {
+        record(level, tag, "phase", null, nodeId, -1, 0, phase, latencyUs);
+    }
+
+    /**
+     * 按时间顺序输出缓冲区中的事件，用于dumpsys
+     *
+     * @param writer 输出
+     */
+    public void dump(PrintWriter writer) {
+        long end = mCursor.get();
+        long start = Math.max(0, end - mRecords.length());
+        writer.println("HandoverEventLog: " + (end - start) + "/" + end + " events");
+        for (long seq = start; seq < end; seq++) {
+            Record record = mRecords.get((int) (seq & mMask));
+            // 写入方已递增序号但尚未写入，或已被更新的事件覆盖
+            if (record == null || record.mSeq != seq) {
+                continue;
+            }
+            writer.println(String.format(Locale.ROOT, "  %.3f %s %s [%s] %s", record.mTimeNanos / NANOS_PER_MILLI,
+                levelChar(record.mLevel), record.mTag, record.mThreadName, record.format()));
+        }
+        writer.flush();
+    }
+
+    private void record(int level, String tag, String event, Object msgType, String nodeId, long size,
+        int fingerprint, HandoverMetrics.Phase phase, long latencyUs) {
+        long seq = mCursor.getAndIncrement();
+        Record record = new Record(seq, level, tag, event, msgType, nodeId, size, fingerprint, phase, latencyUs);
+        mRecords.set((int) (seq & mMask), record);
+        if (!Log.isLoggable(tag, level)) {
+            return;
+        }
+        int suppressed = tryAcquire(tag);
+        if (suppressed < 0) {
+            return;
+        }
+        String line = suppressed > 0 ? record.format() + " (suppressed " + suppressed + ")" : record.format();
+        if (level >= Log.ERROR) {
+            Log.e(tag, line);
+        } else if (level == Log.WARN) {
+            Log.w(tag, line);
+        } else if (level == Log.INFO) {
+            Log.i(tag, line);
+        } else {
+            Log.d(tag, line);
+        }
+    }
+
+    /**
+     * 按tag限流
+     *
+     * @return 允许输出时返回上一窗口被限流的条数，不允许输出时返回-1
+     */
+    private int tryAcquire(String tag) {
+        RateWindow window = mRateWindows.get(tag);
+        if (window == null) {
+            window = new RateWindow();
+            RateWindow existing = mRateWindows.putIfAbsent(tag, window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        long now = SystemClock.elapsedRealtime();
+        long windowStart = window.mWindowStart.get();
+        if (now - windowStart >= RATE_WINDOW_MS && window.mWindowStart.compareAndSet(windowStart, now)) {
+            window.mCount.set(0);
+        }
+        if (window.mCount.incrementAndGet() > mRateLimit) {
+            window.mSuppressed.incrementAndGet();
+            return -1;
+        }
+        return window.mSuppressed.getAndSet(0);
+    }
+
+    /**
+     * 按长度和首尾采样计算内容指纹，耗时与内容长度无关，用于区分不同内容而非校验完整性
+     */
+    static int fingerprint(String payload) {
+        if (payload == null) {
+            return 0;
+        }
+        int length = payload.length();
+        int hash = length;
+        int head = Math.min(length, FINGERPRINT_SAMPLE);
+        for (int i = 0; i < head; i++) {
+            hash = 31 * hash + payload.charAt(i);
+        }
+        for (int i = Math.max(head, length - FINGERPRINT_SAMPLE); i < length; i++) {
+            hash = 31 * hash + payload.charAt(i);
+        }
+        return hash;
+    }
+
+    private static char levelChar(int level) {
+        switch (level) {
+            case Log.VERBOSE:
+                return 'V';
+            case Log.DEBUG:
+                return 'D';
+            case Log.INFO:
+                return 'I';
+            case Log.WARN:
+                return 'W';
+            default:
+                return 'E';
+        }
+    }
+}
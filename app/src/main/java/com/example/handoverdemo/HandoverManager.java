@@ -11,16 +11,25 @@ import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
 
-import androidx.core.content.FileProvider;
-
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
 
 /**
  * 接续能力管理类
+ * 接续服务不可用时send*接口发送的信令进入OutboundQueue排队，接续服务恢复可用后按优先级依次发送
  *
  * @since 2022-07-24
  */
@@ -41,16 +50,155 @@ public class HandoverManager {
 
     public static final String ONLINE_DEV_NUM= "onlineDevNum";
 
+    /**
+     * 对端设备类型，接续请求中不包含时按unknown统计
+     */
+    public static final String DEVICE_TYPE = "deviceType";
+
+    /**
+     * 接续结果反馈所确认的状态版本号，见StateDeltaTracker，Sink端没有待确认的状态时不包含
+     */
+    public static final String STATE_VERSION = "stateVersion";
+
+    /**
+     * 通过NORMAL_MSG发送的控制消息类型字段
+     */
+    static final String CTRL = "ctrl";
+
+    static final String CTRL_CAPABILITIES = "caps";
+
+    static final String CAPABILITIES = "capabilities";
+
     private static final String TAG = "HandoverDemo-HandoverManager";
 
-    private static volatile HandoverManager sInstance;
+    /**
+     * 应用回调设置前最多缓存的onDataEvent消息数
+     */
+    private static final int MAX_PENDING_DATA_EVENTS = 32;
 
-    private static HandoverSdk sHandoverSdk;
+    private static volatile HandoverManager sInstance;
 
     private Context mContext;
 
-    private HandoverManager(Context context){
+    private final HandoverTransport mTransport;
+
+    /**
+     * 已注册的传输通道，注册前为null
+     */
+    private volatile HandoverTransport mRegisteredTransport;
+
+    private final EligibilityCache mEligibilityCache;
+
+    private final ChunkedFileSender mChunkedFileSender;
+
+    private final ChunkedFileReceiver mChunkedFileReceiver;
+
+    /**
+     * 发送线程，所有信令构造和接续框架调用都在此线程中按提交顺序执行，避免阻塞调用方(主线程)
+     */
+    private final ExecutorService mSendExecutor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "handover-sender"));
+
+    private volatile NormalMsgBatcher mNormalMsgBatcher;
+
+    private final HandoverSessionRegistry mSessionRegistry = new HandoverSessionRegistry();
+
+    private final FanOutSender mFanOutSender = new FanOutSender(this);
+
+    private volatile int mCompressThreshold = PayloadCodec.DEFAULT_COMPRESS_THRESHOLD;
+
+    private volatile int mSpillThreshold = ContinuityMsgSpiller.DEFAULT_SPILL_THRESHOLD;
+
+    private final ContentStore mContentStore;
+
+    private final ContentHandshake mContentHandshake;
+
+    private final StateDeltaTracker mStateDeltaTracker;
+
+    private final PayloadStager mPayloadStager;
+
+    private final ContinuityMsgSpiller mContinuityMsgSpiller;
+
+    private final HandoverMetrics mMetrics = new HandoverMetrics();
+
+    private final HandoverEventLog mEventLog = HandoverEventLog.getInstance();
+
+    private final ReconnectScheduler mReconnectScheduler;
+
+    private final OutboundQueue mOutboundQueue;
+
+    private final ResultFeedbackTracker mResultFeedbackTracker = new ResultFeedbackTracker(this);
+
+    private final HandoverDataReceiver mDataReceiver;
+
+    /**
+     * 注册接续框架时使用的回调，反注册后为null
+     */
+    private volatile IHandoverSdkCallback mSdkCallback;
+
+    /**
+     * 应用设置的回调，Sink端预热时先注册接续框架，应用回调在界面创建后才设置
+     */
+    private volatile IHandoverSdkCallback mAppCallback;
+
+    /**
+     * 应用回调设置前收到的onDataEvent消息，设置后按顺序补发
+     */
+    private final ArrayDeque<String> mPendingDataEvents = new ArrayDeque<>();
+
+    private final IHandoverSdkCallback mCallbackWrapper = new IHandoverSdkCallback() {
+        @Override
+        public void onStateChg(int state) {
+            mReconnectScheduler.onStateChanged(state);
+            // 接续服务状态变化时暂停/恢复分块文件传输
+            mChunkedFileSender.onServiceStateChanged(state);
+            IHandoverSdkCallback callback = mAppCallback;
+            if (callback != null) {
+                callback.onStateChg(state);
+            }
+        }
+
+        @Override
+        public void onDataEvent(String data) {
+            mReconnectScheduler.markActive();
+            IHandoverSdkCallback callback;
+            synchronized (mPendingDataEvents) {
+                callback = mAppCallback;
+                if (callback == null) {
+                    if (mPendingDataEvents.size() >= MAX_PENDING_DATA_EVENTS) {
+                        mPendingDataEvents.poll();
+                    }
+                    mPendingDataEvents.offer(data);
+                    return;
+                }
+            }
+            callback.onDataEvent(data);
+        }
+    };
+
+    private HandoverManager(Context context, HandoverTransport transport){
         this.mContext = context;
+        this.mTransport = transport;
+        this.mEligibilityCache = new EligibilityCache(context, EligibilityCache.DEFAULT_ELIGIBILITY_ASSET);
+        this.mChunkedFileSender = new ChunkedFileSender(context, this);
+        this.mChunkedFileReceiver = new ChunkedFileReceiver(context, this);
+        this.mContentStore = new ContentStore(context, ContentStore.DEFAULT_MAX_BYTES);
+        this.mContentHandshake = new ContentHandshake(this, mContentStore);
+        this.mStateDeltaTracker = new StateDeltaTracker(context);
+        this.mPayloadStager = new PayloadStager(context, mStateDeltaTracker, mContentHandshake);
+        this.mContinuityMsgSpiller = new ContinuityMsgSpiller(context);
+        this.mDataReceiver = new HandoverDataReceiver(context, this);
+        this.mReconnectScheduler = new ReconnectScheduler(this::registerAsync,
+            ReconnectScheduler.DEFAULT_INITIAL_BACKOFF_MS, ReconnectScheduler.DEFAULT_MAX_BACKOFF_MS);
+        // 队列日志在发送线程中加载和写入，先于之后提交的发送任务完成加载
+        this.mOutboundQueue = new OutboundQueue(context, this::sendQueued, mReconnectScheduler::isAvailable,
+            mSendExecutor, OutboundQueue.DEFAULT_MAX_ENTRIES, OutboundQueue.DEFAULT_LOG_CAPACITY);
+        // 接续服务恢复可用后在发送线程中发送排队的信令
+        mReconnectScheduler.addStateListener(isAvailable -> {
+            if (isAvailable) {
+                drainOutboundQueue();
+            }
+        });
     }
 
     /**
@@ -60,68 +208,271 @@ public class HandoverManager {
      */
     public static synchronized HandoverManager getInstance(Context context){
         if (sInstance == null) {
-            sInstance = new HandoverManager(context);
+            sInstance = new HandoverManager(context, new HandoverSdkTransport());
         }
         return sInstance;
     }
 
     /**
-     * 注册接续框架
+     * 创建使用指定传输通道的独立实例，用于在同一进程中模拟多个接续端点，不再使用时调用close释放线程
+     *
+     * @param context 上下文
+     * @param transport 传输通道，如benchmark模块LoopbackHandoverNetwork中的回环端点
+     * @return 新的HandoverManager实例
+     */
+    public static HandoverManager newInstance(Context context, HandoverTransport transport) {
+        return new HandoverManager(context, transport);
+    }
+
+    /**
+     * 注册接续框架，注册在发送线程中执行，保证之后提交的信令在注册之后发送；
+     * 接续服务不可用时由ReconnectScheduler按退避策略在后台重新注册，调用方无需重复调用
      *
      * @param callback 接续消息接收回调
      */
     public void init(IHandoverSdkCallback callback) {
         Log.i(TAG, "Handover SDK init");
-        sHandoverSdk = HandoverSdk.getInstance();
-        sHandoverSdk.registerHandover(mContext, callback);
+        synchronized (mPendingDataEvents) {
+            // 补发预热期间收到的消息时持有锁，保证之后的消息排在补发的消息之后
+            for (String data = mPendingDataEvents.poll(); data != null; data = mPendingDataEvents.poll()) {
+                callback.onDataEvent(data);
+            }
+            mAppCallback = callback;
+        }
+        startRegistration();
     }
 
     /**
-     * 反注册接续框架
+     * Sink端预热：用户点击接续触点后接续框架先通过ACTION_LAUNCH_APP拉起应用，在接续数据到达前
+     * 提前注册接续框架、建立与Source端的会话并通告本端能力、准备转存和解码所需的资源，
+     * 收到ACTION_APP_DATA_HANDOVER时不再冷启动。界面创建前收到的onDataEvent消息在init时补发
+     *
+     * @param peerNodeId Source端设备ID
+     * @return 预热结果，资源准备完成后完成
      */
-    public void deInit() {
-        sHandoverSdk.unregisterHandover(mContext);
+    public CompletableFuture<Void> prewarmSink(String peerNodeId) {
+        Log.i(TAG, "prewarmSink: peer " + peerNodeId);
+        mMetrics.mark(peerNodeId, HandoverMetrics.Phase.APP_LAUNCHED);
+        startRegistration();
+        if (!TextUtils.isEmpty(peerNodeId)) {
+            // 提前通告能力，Source端发送接续数据时即可使用压缩等能力
+            onPeerContact(peerNodeId);
+        }
+        try {
+            return CompletableFuture.runAsync(() -> {
+                FileCopyEngine.prewarm();
+                mContentStore.prewarm();
+                mStateDeltaTracker.preloadBase(peerNodeId);
+                PayloadCodec.prewarm();
+            }, mSendExecutor);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "prewarmSink: send executor rejected.");
+            return CompletableFuture.completedFuture(null);
+        }
     }
 
     /**
-     * 发送接续广播
+     * 反注册接续框架，已提交的信令发送完成后再进行反注册
      */
-    public void sendContinuityBroadcast() {
-        JSONObject jsonObject = new JSONObject();
+    public void deInit() {
+        synchronized (this) {
+            mReconnectScheduler.stop();
+            mSdkCallback = null;
+        }
+        synchronized (mPendingDataEvents) {
+            mAppCallback = null;
+            mPendingDataEvents.clear();
+        }
         try {
-            Optional<JSONObject> jsonOptional = getEligibilityJson();
-            if (!jsonOptional.isPresent()) {
-                Log.e(TAG, "sendContinuityBroadcast: get eligibility json failed.");
-                return;
+            mSendExecutor.execute(() -> {
+                HandoverTransport transport = mRegisteredTransport;
+                if (transport != null) {
+                    transport.unregister(mContext);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "deInit: send executor rejected.");
+        }
+    }
+
+    /**
+     * 去初始化并停止实例的所有后台线程，之后实例不能再使用
+     * 用于释放newInstance创建的实例，进程内单例在Activity重建后仍会使用，不要调用
+     */
+    public void close() {
+        deInit();
+        disableNormalMsgBatching();
+        mMetrics.stopPeriodicDump();
+        mReconnectScheduler.shutdown();
+        mResultFeedbackTracker.shutdown();
+        mChunkedFileSender.shutdown();
+        mContentHandshake.shutdown();
+        mPayloadStager.shutdown();
+        mDataReceiver.shutdown();
+        // 最后停止发送线程，已提交的发送任务和注销任务执行完后线程退出
+        mSendExecutor.shutdown();
+    }
+
+    /**
+     * 异步发送接续广播，信令由能力协商策略缓存预先构建，重复发送时不再读取和解析策略文件
+     *
+     * @return 发送结果，信令交给接续框架后完成，失败时抛出HandoverSendException
+     */
+    public CompletableFuture<Void> sendContinuityBroadcastAsync() {
+        return mOutboundQueue.sendOrEnqueue(HandoverSdk.MsgType.CONTINUITY_BROADCAST, null, null, false);
+    }
+
+    private CompletableFuture<Void> sendContinuityBroadcastNow() {
+        return submit("sendContinuityBroadcast", () -> {
+            Optional<JSONObject> envelope = mEligibilityCache.getBroadcastEnvelope();
+            if (!envelope.isPresent()) {
+                throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, "get eligibility json failed.");
             }
-            jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_BROADCAST);
-            jsonObject.put(ELIGIBILITY, jsonOptional.get());
-        } catch (JSONException e) {
-            e.printStackTrace();
+            mEventLog.message(Log.INFO, TAG, "sendContinuityBroadcast", HandoverSdk.MsgType.CONTINUITY_BROADCAST, null,
+                -1);
+            dispatch(envelope.get(), null);
+            mSessionRegistry.onBroadcastStarted();
+            mMetrics.onBroadcastSent();
+        });
+    }
+
+    /**
+     * 发送接续广播的同时预先准备接续消息，收到接续请求时直接发送准备好的内容
+     *
+     * @param msgStr 收到接续请求后要发送的接续消息内容
+     * @return 准备完成时完成
+     */
+    public CompletableFuture<Void> prestageContinuityMsg(String msgStr) {
+        if (TextUtils.isEmpty(msgStr)) {
+            return invalidParam("prestageContinuityMsg");
         }
-        Log.i(TAG, "sendContinuityBroadcast:" + jsonObject);
-        sHandoverSdk.handoverSend(mContext, jsonObject);
+        return mPayloadStager.stageMsg(msgStr, mCompressThreshold);
+    }
+
+    /**
+     * 发送接续广播的同时预先准备接续文件(解析Uri、计算内容摘要)，收到接续请求时直接发送
+     *
+     * @param filePath 收到接续请求后要发送的接续文件路径
+     * @return 准备完成时完成
+     */
+    public CompletableFuture<Void> prestageContinuityFile(String filePath) {
+        if (TextUtils.isEmpty(filePath)) {
+            return invalidParam("prestageContinuityFile");
+        }
+        return mPayloadStager.stageFile(filePath);
+    }
+
+    /**
+     * 发送接续广播
+     */
+    public void sendContinuityBroadcast() {
+        sendContinuityBroadcastAsync();
+    }
+
+    /**
+     * 等待接续服务可用，当前不可用时立即发起一次注册，用于替代轮询接续服务状态
+     *
+     * @param timeoutMs 等待时间，单位毫秒
+     * @return 接续服务可用时完成，超时时以HandoverSendException(ERR_NOT_AVAILABLE)异常完成
+     */
+    public CompletableFuture<Void> awaitAvailable(long timeoutMs) {
+        return mReconnectScheduler.awaitAvailable(timeoutMs);
+    }
+
+    /**
+     * 获取接续服务重连调度，可用于监听接续服务状态或调整空闲重新注册时间
+     *
+     * @return 接续服务重连调度
+     */
+    public ReconnectScheduler getReconnectScheduler() {
+        return mReconnectScheduler;
+    }
+
+    /**
+     * 获取接续会话注册表，每个对端设备对应一个会话
+     *
+     * @return 接续会话注册表
+     */
+    public HandoverSessionRegistry getSessionRegistry() {
+        return mSessionRegistry;
     }
 
     /**
-     * 从assets的预置资源中读取能力协商策略Json，该Json用于配置要通知哪些类型设备显示接续的触点，以及对应设备上什么应用能接续本应用的内容
+     * 获取能力协商策略缓存，该Json用于配置要通知哪些类型设备显示接续的触点，以及对应设备上什么应用能接续本应用的内容
      * 该JSON中相关字段参数的具体说明请到荣耀开发者网站接续服务接入说明的相关章节进行查询
      *
-     * @return 能力协商策略Json对象
+     * @return 能力协商策略缓存
      */
-    private Optional<JSONObject> getEligibilityJson() {
-        String eligibilityJsonStr = CommonUtils.getJsonStrFromAssets(mContext, "eligibility_demo.json");
-        if (TextUtils.isEmpty(eligibilityJsonStr)) {
-            Log.e(TAG, "getEligibilityJson: get json string from assets failed.");
-            return Optional.empty();
+    public EligibilityCache getEligibilityCache() {
+        return mEligibilityCache;
+    }
+
+    /**
+     * 异步发送接续消息, 对端收到此消息后会拉起三方App
+     * 对端支持增量传输且已确认过上一次的接续消息时，只发送相对上一次内容的差分
+     *
+     * @param peerNodeId 对端设备ID
+     * @param msgStr 要发送的接续消息内容
+     * @return 发送结果，信令交给接续框架后完成，失败时抛出HandoverSendException
+     */
+    public CompletableFuture<Void> sendContinuityMsgAsync(String peerNodeId, String msgStr) {
+        if (TextUtils.isEmpty(peerNodeId) || TextUtils.isEmpty(msgStr)) {
+            return invalidParam("sendContinuityMsg");
         }
+        return mOutboundQueue.sendOrEnqueue(HandoverSdk.MsgType.CONTINUITY_MSG, peerNodeId, msgStr, false);
+    }
+
+    private CompletableFuture<Void> sendContinuityMsgNow(String peerNodeId, String msgStr) {
+        return submit("sendContinuityMsg", () -> {
+            String content = encodeContinuityMsg(peerNodeId, msgStr);
+            String dataContent = compressFor(peerNodeId, content);
+            if (dataContent.length() > mSpillThreshold && hasPeerCapability(peerNodeId, PayloadCodec.CAP_SPILL)) {
+                spillContinuityMsg(peerNodeId, dataContent);
+                mMetrics.mark(peerNodeId, HandoverMetrics.Phase.PAYLOAD_SENT, msgStr.length());
+                return;
+            }
+            JSONObject jsonObject = new JSONObject();
+            try {
+                jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_MSG);
+                jsonObject.put(DATA_CONTENT, dataContent);
+                // 发送接续消息时需要指定Sink端NodeId, 此ID从onDataEvent回调中获取
+                jsonObject.put(NODE_ID, peerNodeId);
+            } catch (JSONException e) {
+                throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, e.getMessage(), e);
+            }
+            mEventLog.message(Log.DEBUG, TAG, "sendContinuityMsg", HandoverSdk.MsgType.CONTINUITY_MSG, peerNodeId,
+                dataContent);
+            dispatch(jsonObject, null);
+            mMetrics.mark(peerNodeId, HandoverMetrics.Phase.PAYLOAD_SENT, msgStr.length());
+        });
+    }
+
+    /**
+     * 编码后的接续消息超过阈值时写入临时文件，通过接续文件通道发送，避免超过binder传输限制
+     * 对端收到后按接续消息解码
+     */
+    private void spillContinuityMsg(String peerNodeId, String dataContent) throws HandoverSendException {
+        JSONObject jsonObject = new JSONObject();
         try {
-            JSONObject jsonObject = new JSONObject(eligibilityJsonStr);
-            return Optional.of(jsonObject);
+            jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_FILE);
+            jsonObject.put(NODE_ID, peerNodeId);
         } catch (JSONException e) {
-            Log.e(TAG, "getEligibilityJson: catch JSONException.");
+            throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, e.getMessage(), e);
+        }
+        File file;
+        try {
+            file = mContinuityMsgSpiller.spill(peerNodeId, dataContent);
+        } catch (IOException e) {
+            throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, "spill continuity msg failed.", e);
+        }
+        mEventLog.message(Log.INFO, TAG, "sendContinuityMsg spilled", HandoverSdk.MsgType.CONTINUITY_FILE,
+            peerNodeId, file.length());
+        try {
+            dispatch(jsonObject, mPayloadStager.uriFor(file));
+        } catch (HandoverSendException | RuntimeException e) {
+            mContinuityMsgSpiller.discard(peerNodeId, file);
+            throw e;
         }
-        return Optional.empty();
     }
 
     /**
@@ -131,21 +482,81 @@ public class HandoverManager {
      * @param msgStr 要发送的接续消息内容
      */
     public void sendContinuityMsg(String peerNodeId, String msgStr) {
-        if (TextUtils.isEmpty(peerNodeId) || TextUtils.isEmpty(msgStr)) {
-            Log.e(TAG, "sendContinuityMsg: param is null.");
-            return;
+        sendContinuityMsgAsync(peerNodeId, msgStr);
+    }
+
+    /**
+     * 异步发送接续文件,对端收到改文件后会拉起三方App
+     * 对端支持内容存储时先询问文件内容是否已存在，已存在时只发送内容引用，不再传输文件
+     *
+     * @param peerNodeId 对端设备ID
+     * @param filePath 接续文件的路径
+     * @return 发送结果，信令交给接续框架后完成，失败时抛出HandoverSendException
+     */
+    public CompletableFuture<Void> sendContinuityFileAsync(String peerNodeId, String filePath) {
+        if (TextUtils.isEmpty(peerNodeId) || TextUtils.isEmpty(filePath)) {
+            return invalidParam("sendContinuityFile");
         }
-        JSONObject jsonObject = new JSONObject();
-        try {
-            jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_MSG);
-            jsonObject.put(DATA_CONTENT, msgStr);
-            // 发送接续消息时需要指定Sink端NodeId, 此ID从onDataEvent回调中获取
-            jsonObject.put(NODE_ID, peerNodeId);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        return mOutboundQueue.sendOrEnqueue(HandoverSdk.MsgType.CONTINUITY_FILE, peerNodeId, filePath, false);
+    }
+
+    private CompletableFuture<Void> sendContinuityFileWithHandshake(String peerNodeId, String filePath) {
+        HandoverSession session = mSessionRegistry.get(peerNodeId);
+        if (session == null || !session.hasCapability(PayloadCodec.CAP_CONTENT_STORE)) {
+            return sendContinuityFileNow(peerNodeId, filePath);
         }
-        Log.d(TAG, "sendContinuityMsg: " + jsonObject.toString());
-        sHandoverSdk.handoverSend(mContext, jsonObject);
+        return mContentHandshake.offer(peerNodeId, new File(filePath)).thenCompose(sha256 -> {
+            if (sha256 == null) {
+                return sendContinuityFileNow(peerNodeId, filePath);
+            }
+            Log.i(TAG, "sendContinuityFile: peer already has " + sha256 + ", skip file transfer.");
+            return sendContinuityMsgNow(peerNodeId, ContentHandshake.toContentRef(sha256));
+        });
+    }
+
+    private CompletableFuture<Void> sendContinuityFileNow(String peerNodeId, String filePath) {
+        return submit("sendContinuityFile", () -> {
+            JSONObject jsonObject = new JSONObject();
+            try {
+                jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_FILE);
+                // 发送接续消息时需要指定Sink端NodeId, 此ID从onDataEvent回调中获取
+                jsonObject.put(NODE_ID, peerNodeId);
+            } catch (JSONException e) {
+                throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, e.getMessage(), e);
+            }
+            File file = new File(filePath);
+            if (!file.exists()) {
+                throw new HandoverSendException(HandoverSendException.ERR_FILE_NOT_EXIST, "file is not exist.");
+            }
+            Uri uri = mPayloadStager.uriFor(file);
+            mEventLog.message(Log.INFO, TAG, "sendContinuityFile", HandoverSdk.MsgType.CONTINUITY_FILE, peerNodeId,
+                file.length());
+            dispatch(jsonObject, uri);
+            mMetrics.mark(peerNodeId, HandoverMetrics.Phase.PAYLOAD_SENT, file.length());
+        });
+    }
+
+    /**
+     * 直接发送分块文件，由ChunkedFileSender调用
+     * 分块文件内容唯一，不进行内容摘要握手，也不经过OutboundQueue合并；接续服务不可用时由ChunkedFileSender暂停传输
+     *
+     * @param peerNodeId 对端设备ID
+     * @param chunkFile 分块文件
+     * @return 发送结果
+     */
+    CompletableFuture<Void> sendChunkFile(String peerNodeId, File chunkFile) {
+        return submit("sendChunkFile", () -> {
+            JSONObject jsonObject = new JSONObject();
+            try {
+                jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_FILE);
+                jsonObject.put(NODE_ID, peerNodeId);
+            } catch (JSONException e) {
+                throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, e.getMessage(), e);
+            }
+            mEventLog.message(Log.DEBUG, TAG, "sendChunkFile", HandoverSdk.MsgType.CONTINUITY_FILE, peerNodeId,
+                chunkFile.length());
+            dispatch(jsonObject, mPayloadStager.uriForTemp(chunkFile));
+        });
     }
 
     /**
@@ -155,25 +566,281 @@ public class HandoverManager {
      * @param filePath 接续文件的路径
      */
     public void sendContinuityFile(String peerNodeId, String filePath) {
-        if (TextUtils.isEmpty(peerNodeId) || TextUtils.isEmpty(filePath)) {
-            Log.e(TAG, "sendContinuityFile: param is null.");
-            return;
+        sendContinuityFileAsync(peerNodeId, filePath);
+    }
+
+    /**
+     * 异步发送多个接续文件
+     * 对端支持接续包时将所有文件不压缩地打包为一个接续文件发送，只需一次传输和反馈；对端不支持时逐个发送
+     *
+     * @param peerNodeId 对端设备ID
+     * @param filePaths 接续文件的路径，最多HandoverBundle.MAX_ENTRIES个
+     * @return 发送结果，信令交给接续框架后完成，失败时抛出HandoverSendException
+     */
+    public CompletableFuture<Void> sendContinuityFilesAsync(String peerNodeId, List<String> filePaths) {
+        if (TextUtils.isEmpty(peerNodeId) || filePaths == null || filePaths.isEmpty()
+            || filePaths.size() > HandoverBundle.MAX_ENTRIES) {
+            return invalidParam("sendContinuityFiles");
         }
-        JSONObject jsonObject = new JSONObject();
-        try {
-            jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_FILE);
-            // 发送接续消息时需要指定Sink端NodeId, 此ID从onDataEvent回调中获取
-            jsonObject.put(NODE_ID, peerNodeId);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        if (filePaths.size() == 1) {
+            return sendContinuityFileAsync(peerNodeId, filePaths.get(0));
+        }
+        if (!hasPeerCapability(peerNodeId, PayloadCodec.CAP_BUNDLE)) {
+            // OutboundQueue按文件路径合并接续文件，接续服务不可用时每个文件都会排队
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[filePaths.size()];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = sendContinuityFileAsync(peerNodeId, filePaths.get(i));
+            }
+            return CompletableFuture.allOf(futures);
+        }
+        CompletableFuture<File> bundleFuture = new CompletableFuture<>();
+        submit("sendContinuityFiles", () -> {
+            List<File> files = new ArrayList<>(filePaths.size());
+            for (String filePath : filePaths) {
+                files.add(new File(filePath));
+            }
+            try {
+                bundleFuture.complete(mContinuityMsgSpiller.bundle(peerNodeId, files));
+            } catch (FileNotFoundException e) {
+                throw new HandoverSendException(HandoverSendException.ERR_FILE_NOT_EXIST, e.getMessage(), e);
+            } catch (IOException e) {
+                throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, "write bundle failed.", e);
+            }
+        }).exceptionally(throwable -> {
+            bundleFuture.completeExceptionally(throwable);
+            return null;
+        });
+        return bundleFuture.thenCompose(bundle -> {
+            mEventLog.message(Log.INFO, TAG, "sendContinuityFiles bundled", HandoverSdk.MsgType.CONTINUITY_FILE,
+                peerNodeId, bundle.length());
+            return sendContinuityFileAsync(peerNodeId, bundle.getPath());
+        });
+    }
+
+    /**
+     * 向多个对端发送同一条接续消息，消息内容只准备一次
+     *
+     * @param peerNodeIds 对端设备ID列表，可通过getSessionRegistry().getNodeIds(REQUESTED)获取所有已发起请求的对端
+     * @param msgStr 要发送的接续消息内容
+     * @return 每个对端的发送结果和耗时
+     */
+    public CompletableFuture<FanOutSender.FanOutResult> fanOutContinuityMsg(List<String> peerNodeIds,
+        String msgStr) {
+        if (peerNodeIds == null || TextUtils.isEmpty(msgStr)) {
+            return invalidParam("fanOutContinuityMsg");
+        }
+        return mFanOutSender.sendContinuityMsg(peerNodeIds, msgStr);
+    }
+
+    /**
+     * 向多个对端发送同一个接续文件，文件Uri和内容摘要只准备一次
+     *
+     * @param peerNodeIds 对端设备ID列表
+     * @param filePath 接续文件的路径
+     * @return 每个对端的发送结果和耗时
+     */
+    public CompletableFuture<FanOutSender.FanOutResult> fanOutContinuityFile(List<String> peerNodeIds,
+        String filePath) {
+        if (peerNodeIds == null || TextUtils.isEmpty(filePath)) {
+            return invalidParam("fanOutContinuityFile");
+        }
+        return mFanOutSender.sendContinuityFile(peerNodeIds, filePath);
+    }
+
+    /**
+     * 分块发送接续文件，每个分块需要对端确认，链路断开恢复后从最后确认的偏移量继续发送，适用于大文件接续
+     *
+     * @param peerNodeId 对端设备ID
+     * @param filePath 接续文件的路径
+     * @param listener 传输进度监听，可为null
+     * @return 传输ID，参数错误时返回空字符串
+     */
+    public String sendContinuityFileChunked(String peerNodeId, String filePath,
+        ChunkedFileSender.TransferListener listener) {
+        return mChunkedFileSender.send(peerNodeId, filePath, ChunkedFileSender.DEFAULT_CHUNK_SIZE, listener);
+    }
+
+    /**
+     * 获取分块文件发送器(Source端)，用于处理分块确认消息
+     *
+     * @return 分块文件发送器
+     */
+    public ChunkedFileSender getChunkedFileSender() {
+        return mChunkedFileSender;
+    }
+
+    /**
+     * 获取接续数据接收器(Sink端)，接续数据不经过展示界面直接交给接收器处理
+     *
+     * @return 接续数据接收器
+     */
+    public HandoverDataReceiver getDataReceiver() {
+        return mDataReceiver;
+    }
+
+    /**
+     * 获取分块文件接收器(Sink端)，用于组装收到的分块文件
+     *
+     * @return 分块文件接收器
+     */
+    public ChunkedFileReceiver getChunkedFileReceiver() {
+        return mChunkedFileReceiver;
+    }
+
+    /**
+     * 获取接续耗时统计
+     *
+     * @return 接续耗时统计
+     */
+    public HandoverMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 获取接续文件内容存储(Sink端)，收到的接续文件按内容摘要保存
+     *
+     * @return 内容存储
+     */
+    public ContentStore getContentStore() {
+        return mContentStore;
+    }
+
+    /**
+     * 获取超大接续消息转文件发送器，Sink端用于识别转文件发送的接续消息
+     *
+     * @return 转文件发送器
+     */
+    ContinuityMsgSpiller getContinuityMsgSpiller() {
+        return mContinuityMsgSpiller;
+    }
+
+    /**
+     * 异步发送接续结果给Source端
+     *
+     * @param peerNodeId Source端设备ID
+     * @param isSuccess 接续是否成功
+     * @return 发送结果，信令交给接续框架后完成，失败时抛出HandoverSendException
+     */
+    public CompletableFuture<Void> continuityResultFeedbackAsync(String peerNodeId, boolean isSuccess) {
+        return continuityResultFeedbackAsync(peerNodeId, isSuccess, 0);
+    }
+
+    /**
+     * 异步发送接续结果给Source端，接续失败时携带错误码
+     *
+     * @param peerNodeId Source端设备ID
+     * @param isSuccess 接续是否成功
+     * @param errorCode 接续失败的错误码，HandoverReceiveException.ERR_XXX，成功时忽略
+     * @return 发送结果，信令交给接续框架后完成，失败时抛出HandoverSendException
+     */
+    public CompletableFuture<Void> continuityResultFeedbackAsync(String peerNodeId, boolean isSuccess,
+        int errorCode) {
+        if (TextUtils.isEmpty(peerNodeId)) {
+            return invalidParam("continuityResultFeedback");
+        }
+        // 排队时错误码记录在消息内容中
+        String payload = isSuccess ? null : String.valueOf(errorCode);
+        return mOutboundQueue.sendOrEnqueue(HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK, peerNodeId, payload,
+            isSuccess);
+    }
+
+    /**
+     * Sink端接续数据处理完成后立即反馈接续结果，截止时间(10秒)前未完成时反馈超时失败
+     *
+     * @param peerNodeId Source端设备ID
+     * @param processing 接续数据处理，以HandoverReceiveException异常完成时反馈其错误码
+     * @return 反馈发送结果
+     */
+    public CompletableFuture<Void> feedbackOnCompletion(String peerNodeId, CompletableFuture<?> processing) {
+        return feedbackOnCompletion(peerNodeId, processing, ResultFeedbackTracker.DEFAULT_DEADLINE_MS);
+    }
+
+    /**
+     * Sink端接续数据处理完成后立即反馈接续结果，截止时间前未完成时反馈超时失败
+     *
+     * @param peerNodeId Source端设备ID
+     * @param processing 接续数据处理，以HandoverReceiveException异常完成时反馈其错误码
+     * @param deadlineMs 截止时间，单位毫秒，大文件转存时可适当延长
+     * @return 反馈发送结果
+     */
+    public CompletableFuture<Void> feedbackOnCompletion(String peerNodeId, CompletableFuture<?> processing,
+        long deadlineMs) {
+        if (TextUtils.isEmpty(peerNodeId) || processing == null) {
+            return invalidParam("feedbackOnCompletion");
         }
-        File file = new File(filePath);
-        if(!file.exists()) {
-            Log.e(TAG, "sendContinuityFile: file is not exit.");
+        return mResultFeedbackTracker.feedbackOnCompletion(peerNodeId, processing, deadlineMs);
+    }
+
+    /**
+     * Sink端接续数据处理完成后反馈接续结果，处理结果为中间结果(如分块文件的中间分块)时不反馈
+     *
+     * @param peerNodeId Source端设备ID
+     * @param processing 接续数据处理
+     * @param isIntermediate 判断处理结果是否为中间结果
+     * @return 反馈发送结果
+     */
+    <T> CompletableFuture<Void> feedbackOnCompletion(String peerNodeId, CompletableFuture<T> processing,
+        Predicate<? super T> isIntermediate) {
+        return mResultFeedbackTracker.feedbackOnCompletion(peerNodeId, processing,
+            ResultFeedbackTracker.DEFAULT_DEADLINE_MS, isIntermediate);
+    }
+
+    private CompletableFuture<Void> continuityResultFeedbackNow(String peerNodeId, boolean isSuccess,
+        int errorCode) {
+        return submit("continuityResultFeedback", () -> {
+            long stateVersion = mStateDeltaTracker.getReceivedVersion(peerNodeId);
+            JSONObject jsonObject = new JSONObject();
+            try {
+                String result = isSuccess ? (HandoverSdk.ContinuityResult.SUCCESS.toString())
+                        : (HandoverSdk.ContinuityResult.FAILED.toString());
+                jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK);
+                jsonObject.put(DATA_CONTENT, result);
+                jsonObject.put(NODE_ID, peerNodeId);
+                if (!isSuccess && errorCode != 0) {
+                    jsonObject.put(ERROR_CODE, errorCode);
+                }
+                if (stateVersion != 0) {
+                    jsonObject.put(STATE_VERSION, stateVersion);
+                }
+            } catch (JSONException e) {
+                throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, e.getMessage(), e);
+            }
+            mEventLog.message(Log.INFO, TAG, isSuccess ? "continuityResultFeedback SUCCESS"
+                : "continuityResultFeedback FAILED", HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK, peerNodeId, -1);
+            dispatch(jsonObject, null);
+            mMetrics.mark(peerNodeId, HandoverMetrics.Phase.FEEDBACK_SENT);
+            mStateDeltaTracker.onFeedbackSent(peerNodeId, isSuccess, stateVersion);
+        });
+    }
+
+    /**
+     * Source端收到对端的接续结果反馈，以差分发送的接续消息对端应用失败时重新发送完整内容
+     *
+     * @param peerNodeId 对端设备ID
+     * @param isSuccess 接续是否成功
+     * @param stateVersion 反馈中的STATE_VERSION字段，不包含时为0
+     * @return true:已重新发送完整内容
+     */
+    public boolean onContinuityResultFeedback(String peerNodeId, boolean isSuccess, long stateVersion) {
+        mMetrics.mark(peerNodeId, HandoverMetrics.Phase.FEEDBACK_RECEIVED);
+        String fullState = mStateDeltaTracker.onFeedbackReceived(peerNodeId, isSuccess, stateVersion);
+        if (fullState == null) {
+            return false;
         }
-        Uri uri = FileProvider.getUriForFile(mContext,"com.example.handoverdemo.provider", file);
-        Log.i(TAG, "sendContinuityFile: Uri:" + uri);
-        sHandoverSdk.handoverSend(mContext, jsonObject, uri);
+        Log.w(TAG, "onContinuityResultFeedback: " + peerNodeId + " apply delta failed, resend full state.");
+        sendContinuityMsgAsync(peerNodeId, fullState);
+        return true;
+    }
+
+    /**
+     * Sink端解码收到的接续消息，还原压缩和增量传输的内容
+     *
+     * @param peerNodeId 对端设备ID
+     * @param dataContent 收到的DATA_CONTENT
+     * @return 接续消息内容，增量内容的基准缺失或无效时返回null
+     */
+    public String decodeContinuityMsg(String peerNodeId, String dataContent) {
+        return mStateDeltaTracker.decode(peerNodeId, PayloadCodec.decompress(dataContent));
     }
 
     /**
@@ -183,22 +850,86 @@ public class HandoverManager {
      * @param isSuccess 接续是否成功
      */
     public void continuityResultFeedback(String peerNodeId, boolean isSuccess) {
-        if (TextUtils.isEmpty(peerNodeId)) {
-            Log.e(TAG, "continuityResultFeedback: param is null.");
-            return;
+        continuityResultFeedbackAsync(peerNodeId, isSuccess);
+    }
+
+    /**
+     * 异步发送一般消息, 需要对端也注册接续框架后才能收到此消息, 此消息通过onDataEvent回调接收
+     * 开启批量发送后消息会与同一对端的其他消息合并发送
+     *
+     * @param peerNodeId 对端设备ID
+     * @param normalMsgStr 消息内容
+     * @return 发送结果，信令交给接续框架后完成，失败时抛出HandoverSendException
+     */
+    public CompletableFuture<Void> sendNormalMsgAsync(String peerNodeId, String normalMsgStr) {
+        if (TextUtils.isEmpty(peerNodeId) || TextUtils.isEmpty(normalMsgStr)) {
+            return invalidParam("sendNormalMsg");
         }
-        JSONObject jsonObject = new JSONObject();
-        try {
-            String result = isSuccess ? (HandoverSdk.ContinuityResult.SUCCESS.toString())
-                    : (HandoverSdk.ContinuityResult.FAILED.toString());
-            jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK);
-            jsonObject.put(DATA_CONTENT, result);
-            jsonObject.put(NODE_ID, peerNodeId);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        return mOutboundQueue.sendOrEnqueue(HandoverSdk.MsgType.NORMAL_MSG, peerNodeId, normalMsgStr, false);
+    }
+
+    private CompletableFuture<Void> sendNormalMsgBatched(String peerNodeId, String normalMsgStr) {
+        NormalMsgBatcher batcher = mNormalMsgBatcher;
+        // 对端不能还原批量消息时(包括能力协商完成前)单独发送
+        if (batcher != null && hasPeerCapability(peerNodeId, PayloadCodec.CAP_BATCH)) {
+            return batcher.enqueue(peerNodeId, normalMsgStr);
+        }
+        return sendNormalMsgNow(peerNodeId, normalMsgStr);
+    }
+
+    /**
+     * 立即发送一般消息，不经过批量发送器
+     *
+     * @param peerNodeId 对端设备ID
+     * @param normalMsgStr 消息内容
+     * @return 发送结果
+     */
+    CompletableFuture<Void> sendNormalMsgNow(String peerNodeId, String normalMsgStr) {
+        return submit("sendNormalMsg", () -> {
+            JSONObject jsonObject = new JSONObject();
+            try {
+                jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.NORMAL_MSG);
+                putDataContent(jsonObject, peerNodeId, normalMsgStr);
+                jsonObject.put(NODE_ID, peerNodeId);
+            } catch (JSONException e) {
+                throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, e.getMessage(), e);
+            }
+            mEventLog.message(Log.DEBUG, TAG, "sendNormalMsg", HandoverSdk.MsgType.NORMAL_MSG, peerNodeId,
+                jsonObject.optString(DATA_CONTENT));
+            dispatch(jsonObject, null);
+        });
+    }
+
+    /**
+     * 使用默认参数(5ms、32条、16K)开启NORMAL_MSG批量发送
+     */
+    public void enableNormalMsgBatching() {
+        enableNormalMsgBatching(NormalMsgBatcher.DEFAULT_WINDOW_MS, NormalMsgBatcher.DEFAULT_MAX_MESSAGES,
+            NormalMsgBatcher.DEFAULT_MAX_PAYLOAD_SIZE);
+    }
+
+    /**
+     * 开启NORMAL_MSG批量发送，时间窗口内发往同一对端的消息合并为一条发送，接收端需通过NormalMsgBatcher.unpack还原；
+     * 只对声明了CAP_BATCH能力的对端生效
+     *
+     * @param windowMs 时间窗口，单位毫秒
+     * @param maxMessages 单个批次最大消息数
+     * @param maxPayloadSize 单个批次最大消息大小，按UTF-8编码的字节数计算
+     */
+    public synchronized void enableNormalMsgBatching(long windowMs, int maxMessages, int maxPayloadSize) {
+        disableNormalMsgBatching();
+        mNormalMsgBatcher = new NormalMsgBatcher(this, windowMs, maxMessages, maxPayloadSize);
+    }
+
+    /**
+     * 关闭NORMAL_MSG批量发送，未发送的批次立即发送
+     */
+    public synchronized void disableNormalMsgBatching() {
+        NormalMsgBatcher batcher = mNormalMsgBatcher;
+        mNormalMsgBatcher = null;
+        if (batcher != null) {
+            batcher.shutdown();
         }
-        Log.i(TAG, "continuityResultFeedback: " + jsonObject.toString());
-        sHandoverSdk.handoverSend(mContext, jsonObject);
     }
 
     /**
@@ -208,33 +939,274 @@ public class HandoverManager {
      * @param normalMsgStr 消息内容
      */
     public void sendNormalMsg(String peerNodeId, String normalMsgStr) {
-        if (TextUtils.isEmpty(peerNodeId) || TextUtils.isEmpty(normalMsgStr)) {
-            Log.e(TAG, "sendNormalMsg: param is null.");
-            return;
+        sendNormalMsgAsync(peerNodeId, normalMsgStr);
+    }
+
+    /**
+     * 异步发送取消广播
+     *
+     * @return 发送结果，信令交给接续框架后完成，失败时抛出HandoverSendException
+     */
+    public CompletableFuture<Void> sendStopBroadcastAsync() {
+        return mOutboundQueue.sendOrEnqueue(HandoverSdk.MsgType.CONTINUITY_STOP_BROADCAST, null, null, false);
+    }
+
+    private CompletableFuture<Void> sendStopBroadcastNow() {
+        return submit("sendStopBroadcast", () -> {
+            JSONObject jsonObject = new JSONObject();
+            try {
+                jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_STOP_BROADCAST);
+            } catch (JSONException e) {
+                throw new HandoverSendException(HandoverSendException.ERR_BUILD_MSG, e.getMessage(), e);
+            }
+            mEventLog.message(Log.DEBUG, TAG, "sendStopReq", HandoverSdk.MsgType.CONTINUITY_STOP_BROADCAST, null, -1);
+            dispatch(jsonObject, null);
+            mSessionRegistry.onBroadcastStopped();
+            mPayloadStager.invalidate();
+        });
+    }
+
+    /**
+     * 发送取消广播
+     */
+    public void sendStopBroadcast() {
+        sendStopBroadcastAsync();
+    }
+
+    /**
+     * 设置消息内容压缩阈值，只对已通告支持压缩的对端生效
+     *
+     * @param threshold 压缩阈值，消息长度不小于该值时压缩，Integer.MAX_VALUE表示不压缩
+     */
+    public void setCompressThreshold(int threshold) {
+        mCompressThreshold = threshold;
+    }
+
+    /**
+     * 设置接续消息转文件发送的阈值，只对已通告支持转文件接收的对端生效
+     *
+     * @param threshold 转文件阈值，编码(压缩)后的消息长度超过该值时转文件发送，Integer.MAX_VALUE表示不转文件
+     */
+    public void setSpillThreshold(int threshold) {
+        mSpillThreshold = threshold;
+    }
+
+    /**
+     * 与对端设备首次交互时向对端通告本端能力(如支持压缩)，每个对端只通告一次
+     *
+     * @param peerNodeId 对端设备ID
+     */
+    public void onPeerContact(String peerNodeId) {
+        HandoverSession session = mSessionRegistry.getOrCreate(peerNodeId);
+        if (session != null && session.markCapabilitiesAnnounced()) {
+            sendCapabilities(peerNodeId);
+        }
+    }
+
+    /**
+     * 处理通过NORMAL_MSG发送的控制消息(分块确认、能力通告、内容摘要握手)
+     *
+     * @param peerNodeId 对端设备ID
+     * @param normalMsg NORMAL_MSG消息内容
+     * @return true:控制消息且已处理 false:业务消息
+     */
+    public boolean handleControlMsg(String peerNodeId, String normalMsg) {
+        if (mChunkedFileSender.onNormalMsg(peerNodeId, normalMsg)) {
+            return true;
+        }
+        if (TextUtils.isEmpty(normalMsg) || !normalMsg.contains(CTRL)) {
+            return false;
         }
-        JSONObject jsonObject = new JSONObject();
         try {
-            jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.NORMAL_MSG);
-            jsonObject.put(DATA_CONTENT, normalMsgStr);
-            jsonObject.put(NODE_ID, peerNodeId);
+            JSONObject ctrl = new JSONObject(normalMsg);
+            String ctrlType = ctrl.optString(CTRL);
+            if (mContentHandshake.onControlMsg(peerNodeId, ctrlType, ctrl)) {
+                return true;
+            }
+            if (!CTRL_CAPABILITIES.equals(ctrlType)) {
+                return false;
+            }
+            HandoverSession session = mSessionRegistry.getOrCreate(peerNodeId);
+            if (session != null) {
+                session.setCapabilities(ctrl.getInt(CAPABILITIES));
+                Log.i(TAG, "handleControlMsg: " + peerNodeId + " capabilities " + ctrl.getInt(CAPABILITIES));
+                if (session.markCapabilitiesAnnounced()) {
+                    sendCapabilities(peerNodeId);
+                }
+            }
+            return true;
+        } catch (JSONException e) {
+            Log.e(TAG, "handleControlMsg: catch JSONException.");
+        }
+        return false;
+    }
+
+    private void sendCapabilities(String peerNodeId) {
+        JSONObject ctrl = new JSONObject();
+        try {
+            ctrl.put(CTRL, CTRL_CAPABILITIES);
+            ctrl.put(CAPABILITIES, PayloadCodec.LOCAL_CAPABILITIES);
         } catch (JSONException e) {
             e.printStackTrace();
         }
-        Log.d(TAG, "sendNormalMsg: " + jsonObject.toString());
-        sHandoverSdk.handoverSend(mContext, jsonObject);
+        sendNormalMsgAsync(peerNodeId, ctrl.toString());
+    }
+
+    private String encodeContinuityMsg(String peerNodeId, String msgStr) {
+        HandoverSession session = mSessionRegistry.get(peerNodeId);
+        if (ContentHandshake.isContentRef(msgStr) || session == null
+                || !session.hasCapability(PayloadCodec.CAP_STATE_DELTA)) {
+            // 内容引用等非状态消息不参与增量传输
+            mStateDeltaTracker.discardSent(peerNodeId);
+            return msgStr;
+        }
+        return mStateDeltaTracker.encode(peerNodeId, msgStr, mPayloadStager.versionFor(msgStr));
     }
 
     /**
-     * 发送取消广播
+     * 写入DATA_CONTENT字段，对端支持压缩且内容超过阈值时压缩，压缩标记在内容前缀中
      */
-    public void sendStopBroadcast() {
-        JSONObject jsonObject = new JSONObject();
+    private void putDataContent(JSONObject jsonObject, String peerNodeId, String content) throws JSONException {
+        jsonObject.put(DATA_CONTENT, compressFor(peerNodeId, content));
+    }
+
+    /**
+     * 对端支持压缩且内容超过阈值时返回压缩后的内容，否则返回原内容
+     */
+    private String compressFor(String peerNodeId, String content) {
+        if (!hasPeerCapability(peerNodeId, PayloadCodec.CAP_DEFLATE)) {
+            return content;
+        }
+        return mPayloadStager.compress(content, mCompressThreshold);
+    }
+
+    private boolean hasPeerCapability(String peerNodeId, int capability) {
+        HandoverSession session = mSessionRegistry.get(peerNodeId);
+        return session != null && session.hasCapability(capability);
+    }
+
+    /**
+     * 将发送任务放入发送线程执行，发送任务按提交顺序串行执行
+     *
+     * @param name 发送接口名，用于日志
+     * @param task 发送任务
+     * @return 发送结果
+     */
+    private CompletableFuture<Void> submit(String name, SendTask task) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
         try {
-            jsonObject.put(MSG_TYPE, HandoverSdk.MsgType.CONTINUITY_STOP_BROADCAST);
-        } catch (JSONException e) {
-            e.printStackTrace();
+            mSendExecutor.execute(() -> {
+                try {
+                    task.run();
+                    future.complete(null);
+                } catch (HandoverSendException e) {
+                    Log.e(TAG, name + ": " + e.getMessage() + " errorCode: " + e.getErrorCode());
+                    future.completeExceptionally(e);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, name + ": catch RuntimeException.");
+                    future.completeExceptionally(
+                            new HandoverSendException(HandoverSendException.ERR_SEND_FAILED, e.getMessage(), e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, name + ": send executor rejected.");
+            future.completeExceptionally(
+                    new HandoverSendException(HandoverSendException.ERR_REJECTED, "send executor rejected.", e));
         }
-        Log.d(TAG, "sendStopReq: " + jsonObject.toString());
-        sHandoverSdk.handoverSend(mContext, jsonObject);
+        return future;
+    }
+
+    private <T> CompletableFuture<T> invalidParam(String name) {
+        Log.e(TAG, name + ": param is null.");
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(
+                new HandoverSendException(HandoverSendException.ERR_INVALID_PARAM, "param is null."));
+        return future;
+    }
+
+    /**
+     * 调用接续框架发送信令，在发送线程或并行分发线程中调用
+     *
+     * @param jsonObject 信令
+     * @param uri 接续文件Uri，非文件接续时为null
+     * @throws HandoverSendException 接续框架未注册
+     */
+    void dispatch(JSONObject jsonObject, Uri uri) throws HandoverSendException {
+        HandoverTransport transport = mRegisteredTransport;
+        if (transport == null) {
+            throw new HandoverSendException(HandoverSendException.ERR_NOT_INITIALIZED, "handover sdk not init.");
+        }
+        transport.send(mContext, jsonObject, uri);
+        mReconnectScheduler.markActive();
+    }
+
+    /**
+     * 发送排队的信令或不需要排队的信令，由OutboundQueue在队列锁内调用
+     *
+     * @param entry 信令
+     * @return 发送结果
+     */
+    private CompletableFuture<Void> sendQueued(OutboundQueue.Entry entry) {
+        switch (entry.mMsgType) {
+            case CONTINUITY_BROADCAST:
+                return sendContinuityBroadcastNow();
+            case CONTINUITY_STOP_BROADCAST:
+                return sendStopBroadcastNow();
+            case CONTINUITY_MSG:
+                return sendContinuityMsgNow(entry.mPeerNodeId, entry.mPayload);
+            case CONTINUITY_FILE:
+                return sendContinuityFileWithHandshake(entry.mPeerNodeId, entry.mPayload);
+            case CONTINUITY_RESULT_FEEDBACK:
+                return continuityResultFeedbackNow(entry.mPeerNodeId, entry.mIsSuccess,
+                    entry.mPayload == null ? 0 : Integer.parseInt(entry.mPayload));
+            case NORMAL_MSG:
+                return sendNormalMsgBatched(entry.mPeerNodeId, entry.mPayload);
+            default:
+                return invalidParam("sendQueued");
+        }
+    }
+
+    private void drainOutboundQueue() {
+        try {
+            mSendExecutor.execute(mOutboundQueue::drain);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "drainOutboundQueue: send executor rejected.");
+        }
+    }
+
+    /**
+     * 开始注册接续框架，Sink端预热或接收接续数据时已开始注册则不重复注册
+     */
+    synchronized void startRegistration() {
+        if (mSdkCallback != null) {
+            return;
+        }
+        mSdkCallback = mCallbackWrapper;
+        mReconnectScheduler.start();
+    }
+
+    /**
+     * 在发送线程中注册接续框架，由ReconnectScheduler调用
+     */
+    private void registerAsync() {
+        try {
+            mSendExecutor.execute(() -> {
+                IHandoverSdkCallback callback = mSdkCallback;
+                if (callback == null) {
+                    return;
+                }
+                mRegisteredTransport = mTransport;
+                mTransport.register(mContext, callback);
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "registerAsync: send executor rejected.");
+        }
+    }
+
+    /**
+     * 在发送线程中执行的发送任务
+     */
+    private interface SendTask {
+        void run() throws HandoverSendException;
     }
 }
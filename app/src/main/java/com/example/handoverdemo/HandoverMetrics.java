@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接续耗时统计
+ * 按对端设备记录接续各阶段的时间点，阶段完成时将相邻阶段间的耗时按(区间, 对端设备类型, 数据大小)
+ * 记录到直方图中，可获取各直方图的快照(p50/p99/max)或定期输出到日志
+ *
+ * @since 2023-03-30
+ */
+public class HandoverMetrics {
+    public static final String DEVICE_TYPE_UNKNOWN = "unknown";
+
+    private static final String TAG = "HandoverDemo-HandoverMetrics";
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /**
+     * 接续阶段
+     */
+    public enum Phase {
+        /**
+         * Source端：发送接续广播
+         */
+        BROADCAST_SENT,
+
+        /**
+         * Source端：onDataEvent收到CONTINUITY_REQUEST
+         */
+        REQUEST_RECEIVED,
+
+        /**
+         * Source端：接续消息或接续文件交给接续框架
+         */
+        PAYLOAD_SENT,
+
+        /**
+         * Source端：收到CONTINUITY_RESULT_FEEDBACK
+         */
+        FEEDBACK_RECEIVED,
+
+        /**
+         * Sink端：开始处理ACTION_APP_DATA_HANDOVER
+         */
+        DATA_RECEIVED,
+
+        /**
+         * Sink端：接续文件转存完成
+         */
+        FILE_COPIED,
+
+        /**
+         * Sink端：接续结果反馈交给接续框架
+         */
+        FEEDBACK_SENT,
+
+        /**
+         * Sink端：收到ACTION_LAUNCH_APP，接续数据到达前被拉起
+         */
+        APP_LAUNCHED
+    }
+
+    /**
+     * 统计的耗时区间
+     */
+    public enum Interval {
+        BROADCAST_TO_REQUEST(Phase.BROADCAST_SENT, Phase.REQUEST_RECEIVED),
+        REQUEST_TO_SENT(Phase.REQUEST_RECEIVED, Phase.PAYLOAD_SENT),
+        SENT_TO_FEEDBACK(Phase.PAYLOAD_SENT, Phase.FEEDBACK_RECEIVED),
+        SOURCE_END_TO_END(Phase.REQUEST_RECEIVED, Phase.FEEDBACK_RECEIVED),
+        RECEIVED_TO_COPIED(Phase.DATA_RECEIVED, Phase.FILE_COPIED),
+        RECEIVED_TO_FEEDBACK(Phase.DATA_RECEIVED, Phase.FEEDBACK_SENT),
+        LAUNCH_TO_RECEIVED(Phase.APP_LAUNCHED, Phase.DATA_RECEIVED),
+        LAUNCH_TO_FEEDBACK(Phase.APP_LAUNCHED, Phase.FEEDBACK_SENT);
+
+        private final Phase mFrom;
+
+        private final Phase mTo;
+
+        Interval(Phase from, Phase to) {
+            this.mFrom = from;
+            this.mTo = to;
+        }
+    }
+
+    /**
+     * 直方图快照，耗时单位均为微秒
+     */
+    public static final class Snapshot {
+        public final Interval mInterval;
+
+        public final String mDeviceType;
+
+        public final String mSizeClass;
+
+        public final long mCount;
+
+        public final long mP50;
+
+        public final long mP99;
+
+        public final long mMax;
+
+        Snapshot(Interval interval, String deviceType, String sizeClass, LatencyHistogram histogram) {
+            this.mInterval = interval;
+            this.mDeviceType = deviceType;
+            this.mSizeClass = sizeClass;
+            this.mCount = histogram.getCount();
+            this.mP50 = histogram.getPercentile(50);
+            this.mP99 = histogram.getPercentile(99);
+            this.mMax = histogram.getMax();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s[%s,%s] n=%d p50=%.1fms p99=%.1fms max=%.1fms", mInterval,
+                mDeviceType, mSizeClass, mCount, mP50 / 1000f, mP99 / 1000f, mMax / 1000f);
+        }
+    }
+
+    /**
+     * 单个对端设备的阶段时间点
+     */
+    private static final class Timeline {
+        private final long[] mPhaseTimes = new long[Phase.values().length];
+
+        private volatile String mDeviceType = DEVICE_TYPE_UNKNOWN;
+
+        private volatile long mPayloadSize;
+    }
+
+    private static final class HistogramKey {
+        private final Interval mInterval;
+
+        private final String mDeviceType;
+
+        private final String mSizeClass;
+
+        HistogramKey(Interval interval, String deviceType, String sizeClass) {
+            this.mInterval = interval;
+            this.mDeviceType = deviceType;
+            this.mSizeClass = sizeClass;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof HistogramKey)) {
+                return false;
+            }
+            HistogramKey other = (HistogramKey) obj;
+            return mInterval == other.mInterval && mDeviceType.equals(other.mDeviceType)
+                    && mSizeClass.equals(other.mSizeClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return (mInterval.hashCode() * 31 + mDeviceType.hashCode()) * 31 + mSizeClass.hashCode();
+        }
+    }
+
+    private final Map<String, Timeline> mTimelines = new ConcurrentHashMap<>();
+
+    private final Map<HistogramKey, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+
+    private volatile long mBroadcastTime;
+
+    private ScheduledExecutorService mDumpExecutor;
+
+    private ScheduledFuture<?> mDumpTask;
+
+    /**
+     * 记录发送接续广播的时间，之后收到的接续请求以此计算广播到请求的耗时
+     */
+    public void onBroadcastSent() {
+        mBroadcastTime = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * 记录对端设备类型，用于区分统计
+     *
+     * @param nodeId 对端设备ID
+     * @param deviceType 对端设备类型，为空时不修改
+     */
+    public void setDeviceType(String nodeId, String deviceType) {
+        if (!TextUtils.isEmpty(nodeId) && !TextUtils.isEmpty(deviceType)) {
+            getTimeline(nodeId).mDeviceType = deviceType;
+        }
+    }
+
+    /**
+     * 记录对端设备到达某个阶段，并记录以该阶段结束的区间耗时
+     *
+     * @param nodeId 对端设备ID
+     * @param phase 阶段
+     */
+    public void mark(String nodeId, Phase phase) {
+        mark(nodeId, phase, -1);
+    }
+
+    /**
+     * 记录对端设备到达某个阶段，并记录以该阶段结束的区间耗时
+     *
+     * @param nodeId 对端设备ID
+     * @param phase 阶段
+     * @param payloadSize 本次接续的数据大小，小于0时沿用之前记录的大小
+     */
+    public void mark(String nodeId, Phase phase, long payloadSize) {
+        if (TextUtils.isEmpty(nodeId)) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtimeNanos();
+        Timeline timeline = getTimeline(nodeId);
+        if (payloadSize >= 0) {
+            timeline.mPayloadSize = payloadSize;
+        }
+        long latencyUs = -1;
+        synchronized (timeline) {
+            if (phase == Phase.REQUEST_RECEIVED || phase == Phase.DATA_RECEIVED || phase == Phase.APP_LAUNCHED) {
+                // 新一轮接续，清除上一轮的时间点，Sink端保留本轮拉起应用的时间
+                long launchTime = phase == Phase.DATA_RECEIVED ? timeline.mPhaseTimes[Phase.APP_LAUNCHED.ordinal()] : 0;
+                for (int i = 0; i < timeline.mPhaseTimes.length; i++) {
+                    timeline.mPhaseTimes[i] = 0;
+                }
+                timeline.mPhaseTimes[Phase.BROADCAST_SENT.ordinal()] = mBroadcastTime;
+                timeline.mPhaseTimes[Phase.APP_LAUNCHED.ordinal()] = launchTime;
+            }
+            timeline.mPhaseTimes[phase.ordinal()] = now;
+            for (Interval interval : Interval.values()) {
+                long from = timeline.mPhaseTimes[interval.mFrom.ordinal()];
+                if (interval.mTo == phase && from > 0) {
+                    long valueUs = (now - from) / NANOS_PER_MICRO;
+                    record(interval, timeline, valueUs);
+                    if (latencyUs < 0) {
+                        // 事件日志中记录以该阶段结束的第一个区间(与上一阶段之间)的耗时
+                        latencyUs = valueUs;
+                    }
+                }
+            }
+            if (phase == Phase.FEEDBACK_SENT) {
+                // 拉起应用的时间只用于本轮接续
+                timeline.mPhaseTimes[Phase.APP_LAUNCHED.ordinal()] = 0;
+            }
+        }
+        HandoverEventLog.getInstance().phase(Log.DEBUG, TAG, nodeId, phase, latencyUs);
+    }
+
+    /**
+     * 获取所有直方图的快照
+     *
+     * @return 快照列表
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> snapshots = new ArrayList<>(mHistograms.size());
+        for (Map.Entry<HistogramKey, LatencyHistogram> entry : mHistograms.entrySet()) {
+            HistogramKey key = entry.getKey();
+            snapshots.add(new Snapshot(key.mInterval, key.mDeviceType, key.mSizeClass, entry.getValue()));
+        }
+        Collections.sort(snapshots, (left, right) -> left.mInterval != right.mInterval
+            ? left.mInterval.compareTo(right.mInterval) : left.toString().compareTo(right.toString()));
+        return snapshots;
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        mHistograms.clear();
+        mTimelines.clear();
+    }
+
+    /**
+     * 开始定期将统计快照输出到日志
+     *
+     * @param periodMs 输出周期，单位毫秒
+     */
+    public synchronized void startPeriodicDump(long periodMs) {
+        stopPeriodicDump();
+        if (mDumpExecutor == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                runnable -> new Thread(runnable, "handover-metrics"));
+            executor.setRemoveOnCancelPolicy(true);
+            mDumpExecutor = executor;
+        }
+        mDumpTask = mDumpExecutor.scheduleAtFixedRate(this::dump, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定期输出
+     */
+    public synchronized void stopPeriodicDump() {
+        if (mDumpTask != null) {
+            mDumpTask.cancel(false);
+            mDumpTask = null;
+        }
+    }
+
+    /**
+     * 将统计快照输出到日志
+     */
+    public void dump() {
+        for (Snapshot snapshot : snapshot()) {
+            Log.i(TAG, snapshot.toString());
+        }
+    }
+
+    /**
+     * 数据大小分级
+     */
+    static String sizeClassOf(long payloadSize) {
+        if (payloadSize < 0) {
+            return "na";
+        } else if (payloadSize < 4 * 1024) {
+            return "<4K";
+        } else if (payloadSize < 64 * 1024) {
+            return "<64K";
+        } else if (payloadSize < 1024 * 1024) {
+            return "<1M";
+        } else {
+            return ">=1M";
+        }
+    }
+
+    private void record(Interval interval, Timeline timeline, long valueUs) {
+        HistogramKey key = new HistogramKey(interval, timeline.mDeviceType,
+            sizeClassOf(interval == Interval.BROADCAST_TO_REQUEST ? -1 : timeline.mPayloadSize));
+        LatencyHistogram histogram = mHistograms.get(key);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = mHistograms.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(valueUs);
+    }
+
+    private Timeline getTimeline(String nodeId) {
+        Timeline timeline = mTimelines.get(nodeId);
+        if (timeline == null) {
+            Timeline created = new Timeline();
+            timeline = mTimelines.putIfAbsent(nodeId, created);
+            if (timeline == null) {
+                timeline = created;
+            }
+        }
+        return timeline;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+/**
+ * Sink端处理接续数据失败，错误码随接续结果反馈一起发送给Source端
+ *
+ * @since 2023-04-06
+ */
+public class HandoverReceiveException extends Exception {
+    /**
+     * 没有收到接续消息或接续文件
+     */
+    public static final int ERR_NO_DATA = -101;
+
+    /**
+     * 接续消息解码失败，如增量内容的基准缺失
+     */
+    public static final int ERR_DECODE_FAILED = -102;
+
+    /**
+     * 内容引用对应的文件在本端内容存储中不存在
+     */
+    public static final int ERR_CONTENT_MISSING = -103;
+
+    /**
+     * 接续文件转存失败
+     */
+    public static final int ERR_FILE_COPY_FAILED = -104;
+
+    /**
+     * 分块文件接收失败
+     */
+    public static final int ERR_CHUNK_FAILED = -105;
+
+    /**
+     * 接续数据处理超时
+     */
+    public static final int ERR_TIMEOUT = -106;
+
+    /**
+     * 其他异常
+     */
+    public static final int ERR_UNKNOWN = -199;
+
+    private static final long serialVersionUID = -3417385214722958104L;
+
+    private final int mErrorCode;
+
+    /**
+     * 构造函数
+     *
+     * @param errorCode 错误码
+     * @param message 错误信息
+     */
+    public HandoverReceiveException(int errorCode, String message) {
+        super(message);
+        this.mErrorCode = errorCode;
+    }
+
+    /**
+     * 获取错误码
+     *
+     * @return 错误码
+     */
+    public int getErrorCode() {
+        return mErrorCode;
+    }
+}
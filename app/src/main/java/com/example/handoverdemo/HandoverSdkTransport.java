@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+import com.hihonor.android.magicx.connect.handover.IHandoverSdkCallback;
+
+import org.json.JSONObject;
+
+/**
+ * 基于接续服务SDK的信令传输通道
+ *
+ * @since 2023-04-03
+ */
+public class HandoverSdkTransport implements HandoverTransport {
+    @Override
+    public void register(Context context, IHandoverSdkCallback callback) {
+        HandoverSdk.getInstance().registerHandover(context, callback);
+    }
+
+    @Override
+    public void unregister(Context context) {
+        HandoverSdk.getInstance().unregisterHandover(context);
+    }
+
+    @Override
+    public void send(Context context, JSONObject envelope, Uri uri) {
+        if (uri == null) {
+            HandoverSdk.getInstance().handoverSend(context, envelope);
+        } else {
+            HandoverSdk.getInstance().handoverSend(context, envelope, uri);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+/**
+ * 接续消息发送异常，通过异步发送接口返回的CompletableFuture抛出
+ *
+ * @since 2023-03-13
+ */
+public class HandoverSendException extends Exception {
+    /**
+     * 参数错误
+     */
+    public static final int ERR_INVALID_PARAM = -1;
+
+    /**
+     * 接续框架未注册
+     */
+    public static final int ERR_NOT_INITIALIZED = -2;
+
+    /**
+     * 接续文件不存在
+     */
+    public static final int ERR_FILE_NOT_EXIST = -3;
+
+    /**
+     * 构造接续信令失败
+     */
+    public static final int ERR_BUILD_MSG = -4;
+
+    /**
+     * 调用接续框架发送失败
+     */
+    public static final int ERR_SEND_FAILED = -5;
+
+    /**
+     * 发送线程已关闭，消息未能入队
+     */
+    public static final int ERR_REJECTED = -6;
+
+    /**
+     * 等待接续服务可用超时
+     */
+    public static final int ERR_NOT_AVAILABLE = -7;
+
+    /**
+     * 排队的信令未发送即被丢弃(过期、被同一对端的新信令替代或队列已满)
+     */
+    public static final int ERR_DROPPED = -8;
+
+    private static final long serialVersionUID = 5032175413390827514L;
+
+    private final int mErrorCode;
+
+    /**
+     * 构造函数
+     *
+     * @param errorCode 错误码
+     * @param message 错误信息
+     */
+    public HandoverSendException(int errorCode, String message) {
+        super(message);
+        this.mErrorCode = errorCode;
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param errorCode 错误码
+     * @param message 错误信息
+     * @param cause 原始异常
+     */
+    public HandoverSendException(int errorCode, String message, Throwable cause) {
+        super(message, cause);
+        this.mErrorCode = errorCode;
+    }
+
+    /**
+     * 获取错误码
+     *
+     * @return 错误码
+     */
+    public int getErrorCode() {
+        return mErrorCode;
+    }
+}
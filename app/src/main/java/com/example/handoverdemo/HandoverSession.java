@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 与单个对端设备的接续会话
+ * 状态流转：BROADCASTING -> REQUESTED -> SENDING -> AWAITING_FEEDBACK -> DONE/FAILED，
+ * 对端重新点击接续触点时可从任意状态回到REQUESTED开始新一轮接续
+ *
+ * @since 2023-03-20
+ */
+public final class HandoverSession {
+    private static final String TAG = "HandoverDemo-HandoverSession";
+
+    /**
+     * 会话状态
+     */
+    public enum State {
+        BROADCASTING,
+        REQUESTED,
+        SENDING,
+        AWAITING_FEEDBACK,
+        DONE,
+        FAILED
+    }
+
+    private final String mNodeId;
+
+    /**
+     * 进入各状态的时间(elapsedRealtime)，下标为State.ordinal()，未进入过的状态为0
+     */
+    private final long[] mStateTimes = new long[State.values().length];
+
+    private State mState;
+
+    private long mLastActiveTime;
+
+    private Object mPendingPayload;
+
+    private int mCapabilities;
+
+    private boolean mIsCapabilitiesAnnounced;
+
+    HandoverSession(String nodeId, State initState, long initTime) {
+        this.mNodeId = nodeId;
+        this.mState = initState;
+        this.mStateTimes[initState.ordinal()] = initTime;
+        this.mLastActiveTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 获取对端设备ID
+     *
+     * @return 对端设备ID
+     */
+    public String getNodeId() {
+        return mNodeId;
+    }
+
+    /**
+     * 获取当前状态
+     *
+     * @return 当前状态
+     */
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * 获取进入指定状态的时间
+     *
+     * @param state 状态
+     * @return 进入该状态的时间(elapsedRealtime)，未进入过时为0
+     */
+    public synchronized long getStateTime(State state) {
+        return mStateTimes[state.ordinal()];
+    }
+
+    /**
+     * 获取最近一次活动时间
+     *
+     * @return 最近一次活动时间(elapsedRealtime)
+     */
+    public synchronized long getLastActiveTime() {
+        return mLastActiveTime;
+    }
+
+    /**
+     * 获取待发送或已发送待确认的数据
+     *
+     * @return 数据内容，无数据时为null
+     */
+    public synchronized Object getPendingPayload() {
+        return mPendingPayload;
+    }
+
+    /**
+     * 设置待发送或已发送待确认的数据
+     *
+     * @param payload 数据内容
+     */
+    public synchronized void setPendingPayload(Object payload) {
+        this.mPendingPayload = payload;
+    }
+
+    /**
+     * 判断对端是否支持指定能力，对端未通告能力时均视为不支持
+     *
+     * @param capability 能力位，如PayloadCodec.CAP_DEFLATE
+     * @return true:对端支持
+     */
+    public synchronized boolean hasCapability(int capability) {
+        return (mCapabilities & capability) == capability;
+    }
+
+    /**
+     * 记录对端通告的能力
+     *
+     * @param capabilities 能力位集合
+     */
+    public synchronized void setCapabilities(int capabilities) {
+        this.mCapabilities = capabilities;
+    }
+
+    /**
+     * 标记已向对端通告本端能力
+     *
+     * @return true:首次标记，需要发送能力通告 false:之前已通告过
+     */
+    public synchronized boolean markCapabilitiesAnnounced() {
+        if (mIsCapabilitiesAnnounced) {
+            return false;
+        }
+        mIsCapabilitiesAnnounced = true;
+        return true;
+    }
+
+    /**
+     * 更新最近一次活动时间
+     */
+    public synchronized void touch() {
+        mLastActiveTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 状态流转
+     *
+     * @param target 目标状态
+     * @return true:流转成功 false:当前状态不允许流转到目标状态
+     */
+    public synchronized boolean moveTo(State target) {
+        if (!canMoveTo(target)) {
+            Log.w(TAG, "moveTo: " + mNodeId + " can not move from " + mState + " to " + target);
+            return false;
+        }
+        if (target == State.REQUESTED) {
+            // 新一轮接续，清除上一轮的时间记录
+            for (int i = State.REQUESTED.ordinal(); i < mStateTimes.length; i++) {
+                mStateTimes[i] = 0;
+            }
+        }
+        long now = SystemClock.elapsedRealtime();
+        mState = target;
+        mStateTimes[target.ordinal()] = now;
+        mLastActiveTime = now;
+        if (target == State.DONE || target == State.FAILED) {
+            mPendingPayload = null;
+        }
+        return true;
+    }
+
+    /**
+     * 会话是否已结束
+     *
+     * @return true:已结束
+     */
+    public synchronized boolean isFinished() {
+        return mState == State.DONE || mState == State.FAILED;
+    }
+
+    private boolean canMoveTo(State target) {
+        switch (target) {
+            case REQUESTED:
+                return true;
+            case SENDING:
+                return mState == State.REQUESTED;
+            case AWAITING_FEEDBACK:
+                return mState == State.SENDING;
+            case DONE:
+                return mState == State.AWAITING_FEEDBACK || mState == State.SENDING;
+            case FAILED:
+                return mState != State.DONE && mState != State.FAILED;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "HandoverSession{" + mNodeId + ", " + mState + "}";
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 接续会话注册表，以对端设备NodeId为key，多个对端的接续请求互不影响，可并行处理
+ *
+ * @since 2023-03-20
+ */
+public class HandoverSessionRegistry {
+    /**
+     * 已结束会话的保留时间，超过后在新建会话时移除
+     */
+    public static final long FINISHED_SESSION_TTL = 5 * 60 * 1000;
+
+    private static final String TAG = "HandoverDemo-SessionRegistry";
+
+    private final Map<String, HandoverSession> mSessions = new ConcurrentHashMap<>();
+
+    private volatile long mBroadcastTime;
+
+    private volatile String mLastActiveNodeId;
+
+    /**
+     * 记录开始发送接续广播，之后新建的会话从BROADCASTING状态开始
+     */
+    public void onBroadcastStarted() {
+        mBroadcastTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 记录停止发送接续广播
+     */
+    public void onBroadcastStopped() {
+        mBroadcastTime = 0;
+    }
+
+    /**
+     * 获取或创建对端设备的会话
+     *
+     * @param nodeId 对端设备ID
+     * @return 会话，nodeId为空时返回null
+     */
+    public HandoverSession getOrCreate(String nodeId) {
+        if (TextUtils.isEmpty(nodeId)) {
+            Log.e(TAG, "getOrCreate: nodeId is null.");
+            return null;
+        }
+        mLastActiveNodeId = nodeId;
+        HandoverSession session = mSessions.get(nodeId);
+        if (session != null) {
+            session.touch();
+            return session;
+        }
+        // 新对端接入时顺带清理已结束的会话，会话数与附近设备数相当，遍历开销可以忽略
+        prune();
+        long broadcastTime = mBroadcastTime;
+        HandoverSession created = broadcastTime > 0
+                ? new HandoverSession(nodeId, HandoverSession.State.BROADCASTING, broadcastTime)
+                : new HandoverSession(nodeId, HandoverSession.State.REQUESTED, SystemClock.elapsedRealtime());
+        session = mSessions.putIfAbsent(nodeId, created);
+        return session == null ? created : session;
+    }
+
+    /**
+     * 收到对端的接续请求，会话进入REQUESTED状态
+     *
+     * @param nodeId 对端设备ID
+     * @return 会话，nodeId为空时返回null
+     */
+    public HandoverSession onRequest(String nodeId) {
+        HandoverSession session = getOrCreate(nodeId);
+        if (session != null) {
+            session.moveTo(HandoverSession.State.REQUESTED);
+        }
+        return session;
+    }
+
+    /**
+     * 获取对端设备的会话
+     *
+     * @param nodeId 对端设备ID
+     * @return 会话，不存在时返回null
+     */
+    public HandoverSession get(String nodeId) {
+        return TextUtils.isEmpty(nodeId) ? null : mSessions.get(nodeId);
+    }
+
+    /**
+     * 获取最近一次有交互的对端设备ID
+     *
+     * @return 对端设备ID，没有交互过时为null
+     */
+    public String getLastActiveNodeId() {
+        return mLastActiveNodeId;
+    }
+
+    /**
+     * 获取处于指定状态的会话
+     *
+     * @param state 会话状态
+     * @return 会话列表
+     */
+    public List<HandoverSession> getSessions(HandoverSession.State state) {
+        List<HandoverSession> sessions = new ArrayList<>();
+        for (HandoverSession session : mSessions.values()) {
+            if (session.getState() == state) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * 获取处于指定状态的会话对应的对端设备ID
+     *
+     * @param state 会话状态
+     * @return 对端设备ID列表
+     */
+    public List<String> getNodeIds(HandoverSession.State state) {
+        List<String> nodeIds = new ArrayList<>();
+        for (HandoverSession session : getSessions(state)) {
+            nodeIds.add(session.getNodeId());
+        }
+        return nodeIds;
+    }
+
+    /**
+     * 清理结束超过FINISHED_SESSION_TTL的会话
+     */
+    private void prune() {
+        long now = SystemClock.elapsedRealtime();
+        Collection<HandoverSession> sessions = mSessions.values();
+        for (Iterator<HandoverSession> iterator = sessions.iterator(); iterator.hasNext(); ) {
+            HandoverSession session = iterator.next();
+            if (session.isFinished() && now - session.getLastActiveTime() > FINISHED_SESSION_TTL) {
+                Log.i(TAG, "prune: remove finished session " + session.getNodeId());
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.hihonor.android.magicx.connect.handover.IHandoverSdkCallback;
+
+import org.json.JSONObject;
+
+/**
+ * 接续信令传输通道，HandoverManager通过此接口注册接续框架和发送信令
+ * 默认实现为HandoverSdkTransport，测试时可替换为benchmark模块LoopbackHandoverNetwork中的回环端点
+ *
+ * @since 2023-04-03
+ */
+public interface HandoverTransport {
+    /**
+     * 注册接续框架
+     *
+     * @param context 上下文
+     * @param callback 接续服务状态和消息回调
+     */
+    void register(Context context, IHandoverSdkCallback callback);
+
+    /**
+     * 反注册接续框架
+     *
+     * @param context 上下文
+     */
+    void unregister(Context context);
+
+    /**
+     * 发送信令
+     *
+     * @param context 上下文
+     * @param envelope 信令
+     * @param uri 接续文件Uri，非文件接续时为null
+     */
+    void send(Context context, JSONObject envelope, Uri uri);
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁耗时直方图
+ * 按2的幂划分区间，每个区间再等分为SUB_BUCKET_COUNT个子区间，相对误差不超过1/SUB_BUCKET_COUNT；
+ * 记录只需一次原子自增，可在接续框架回调线程和发送线程中直接调用
+ *
+ * @since 2023-03-30
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * 最大记录2^40微秒(约12天)，超出的值记录到最后一个区间
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mTotalCount = new AtomicLong();
+
+    private final AtomicLong mTotalValue = new AtomicLong();
+
+    private final AtomicLong mMaxValue = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param valueUs 耗时，单位微秒，小于0时按0记录
+     */
+    public void record(long valueUs) {
+        long value = Math.max(0, valueUs);
+        mCounts.incrementAndGet(indexOf(value));
+        mTotalCount.incrementAndGet();
+        mTotalValue.addAndGet(value);
+        long max = mMaxValue.get();
+        while (value > max && !mMaxValue.compareAndSet(max, value)) {
+            max = mMaxValue.get();
+        }
+    }
+
+    /**
+     * 获取记录次数
+     *
+     * @return 记录次数
+     */
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * 获取最大值
+     *
+     * @return 最大耗时，单位微秒
+     */
+    public long getMax() {
+        return mMaxValue.get();
+    }
+
+    /**
+     * 获取平均值
+     *
+     * @return 平均耗时，单位微秒，没有记录时为0
+     */
+    public long getMean() {
+        long count = mTotalCount.get();
+        return count == 0 ? 0 : mTotalValue.get() / count;
+    }
+
+    /**
+     * 获取分位值，返回所在子区间的上界，不超过最大值
+     *
+     * @param percentile 百分位，取值0~100
+     * @return 分位耗时，单位微秒，没有记录时为0
+     */
+    public long getPercentile(double percentile) {
+        long count = mTotalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), mMaxValue.get());
+            }
+        }
+        return mMaxValue.get();
+    }
+
+    /**
+     * 清空记录
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotalValue.set(0);
+        mMaxValue.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        long lower = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
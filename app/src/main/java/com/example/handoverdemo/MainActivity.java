@@ -3,18 +3,13 @@
  */
 package com.example.handoverdemo;
 
-import static com.example.handoverdemo.HandoverManager.DATA_CONTENT;
+import static com.example.handoverdemo.HandoverManager.DEVICE_TYPE;
 import static com.example.handoverdemo.HandoverManager.ERROR_CODE;
-import static com.example.handoverdemo.HandoverManager.HANDOVER_STATE_AVAILABLE;
-import static com.example.handoverdemo.HandoverManager.HANDOVER_STATE_UNAVAILABLE;
-import static com.example.handoverdemo.HandoverManager.MSG_TYPE;
-import static com.example.handoverdemo.HandoverManager.NODE_ID;
 import static com.example.handoverdemo.HandoverManager.ONLINE_DEV_NUM;
+import static com.example.handoverdemo.HandoverManager.STATE_VERSION;
 
+import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Bundle;
 
 import androidx.annotation.NonNull;
@@ -23,6 +18,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
@@ -34,8 +31,10 @@ import android.widget.TextView;
 import com.hihonor.android.magicx.connect.handover.HandoverSdk;
 import com.hihonor.android.magicx.connect.handover.IHandoverSdkCallback;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * 应用接续演示Demo主界面Activity
@@ -45,19 +44,11 @@ import org.json.JSONObject;
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "HandoverDemo-MainActivity";
 
-    private static final String ACTION_HANDOVER_DATA_TRANS = "com.hihonor.handover.ACTION_APP_DATA_HANDOVER";
-
     public static final String DEFAULT_CONTINUITY_MSG_STRING = "接续测试消息";
 
     private static final int HAND_CHANGE_TEXT_VIEW_EVENT = 1;
 
-    private static final int HAND_SEND_CONTINUITY_FEEDBACK_EVENT = 2;
-
-    private static final long FEEDBACK_DELAY_TIME = 1000;
-
-    private static final int REC_CONTINUITY_DATA_SUCCESS = 1;
-
-    private static final int REC_CONTINUITY_DATA_FAILED = 0;
+    private static final long METRICS_DUMP_PERIOD = 60 * 1000;
 
     public TextView textView;
 
@@ -69,83 +60,79 @@ public class MainActivity extends AppCompatActivity {
 
     private HandlerThread mHandlerThread;
 
-    private HandoverManager mHandoverManager;
+    /**
+     * 接续服务初始化完成后赋值，接续框架回调只会在初始化之后到达
+     */
+    private volatile HandoverManager mHandoverManager;
+
+    private CompletableFuture<HandoverManager> mHandoverManagerFuture;
+
+    /**
+     * 界面加载完成后完成，展示接续数据前需等待
+     */
+    private final CompletableFuture<Void> mViewReady = new CompletableFuture<>();
 
-    private int mHandoverServiceState = HANDOVER_STATE_UNAVAILABLE;
+    private volatile boolean mIsSendBroadcastForTransFile = false;
 
-    private boolean mIsSendBroadcastForTransFile = false;
+    private StartupPipeline mStartup;
 
-    private String mPeerNodeId;
+    /**
+     * 预置测试图片，首次发送接续文件时才从assets中提取
+     */
+    private StartupPipeline.Deferred<String> mPresetPicture;
 
-    private String mPresetPicturePath;
+    private final HandoverEventDispatcher mEventDispatcher = new HandoverEventDispatcher();
 
-    private int mInitHandoverCount;
+    private final HandoverDataReceiver.Listener mDataListener = this::onContinuityData;
 
     private IHandoverSdkCallback mHandoverSdkCallback = new IHandoverSdkCallback() {
         @Override
         public void onStateChg(int state) {
             // TODO 此回调上报的是接续框架是否可用的状态值，当state为0代表接续服务可以使用，
-            //  当state为-1代表接续服务不可用（接续框架初始化失败/长时间无数据收发导致接续服务退出等）
-            mHandoverServiceState = state;
-            if (mHandoverServiceState == HANDOVER_STATE_AVAILABLE) {
-                mInitHandoverCount = 0;
-            } else {
-                initHandoverService();
-            }
+            //  当state为-1代表接续服务不可用（接续框架初始化失败/长时间无数据收发导致接续服务退出等），
+            //  此时HandoverManager会按退避策略在后台重新注册
+            Log.i(TAG, "onStateChg: " + state);
         }
 
         @Override
         public void onDataEvent(String data) {
-            try {
-                Log.i(TAG, "onDataEvent: " + data);
-                JSONObject jsonObject = new JSONObject(data);
-                String msgType = jsonObject.getString(MSG_TYPE);
-                String nodeId = jsonObject.has(NODE_ID) ? jsonObject.getString(NODE_ID) : "";
-                if (msgType.equals(HandoverSdk.MsgType.CONTINUITY_REQUEST.toString())) {
-                    // 收到对端设备点击接续触点（接续提示图标）后发送的接续请求信令
-                    mPeerNodeId = nodeId;
-                    onRecContinuityRequest(mPeerNodeId);
-                } else if (msgType.equals(HandoverSdk.MsgType.NORMAL_MSG.toString())) {
-                    // 收到对端发送来的NORMAL_MSG消息
-                    mPeerNodeId = nodeId;
-                    String normalMsg = jsonObject.getString(DATA_CONTENT);
-                    String showStr = "Receive NORMAL_MSG: " + normalMsg;
-                    mHandler.sendMessage(mHandler.obtainMessage(HAND_CHANGE_TEXT_VIEW_EVENT, showStr));
-                } else if (msgType.equals(HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK.toString())) {
-                    // 收到对端发送来的接续结果反馈，需要对端应用主动发送CONTINUITY_RESULT_FEEDBACK消息
-                    String continuityResult = jsonObject.getString(DATA_CONTENT);
-                    String showStr = "Receive continuity result: " + continuityResult + " from peer device.";
-                    mHandler.sendMessage(mHandler.obtainMessage(HAND_CHANGE_TEXT_VIEW_EVENT, showStr));
-                } else if (msgType.equals(HandoverSdk.MsgType.CONTINUITY_FAILED.toString())) {
-                    // 收到异常通知消息，具体错误码定义请参考上架文档相关章节描述
-                    String errorInfo = jsonObject.getString(DATA_CONTENT);
-                    int errorCode = jsonObject.getInt(ERROR_CODE);
-                    String showStr = "ErrorInfo: " + errorInfo + " ErrorCode: " + errorCode;
-                    mHandler.sendMessage(mHandler.obtainMessage(HAND_CHANGE_TEXT_VIEW_EVENT, showStr));
-                } else if (msgType.equals(HandoverSdk.MsgType.CONTINUITY_DEVICE_EVENT.toString())) {
-                    // 收到设备上下线数量变化通知消息
-                    String deviceEvent = jsonObject.getString(DATA_CONTENT);
-                    int onlineDevNum = jsonObject.getInt(ONLINE_DEV_NUM);
-                    String showStr = deviceEvent + ", current online device number: " + onlineDevNum;
-                    Log.i(TAG, "onDataEvent: " + showStr);
-                }
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
+            mEventDispatcher.dispatch(data);
         }
     };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
-        mPresetPicturePath = CommonUtils.extractPresetPictureToLocalPath(this);
-        initView();
-        initHandler();
-        // 接续服务初始化
-        initHandoverService();
-        Log.i(TAG, "onCreate");
-        processIntent(getIntent());
+        mStartup = new StartupPipeline("MainActivity.onCreate");
+        Context appContext = getApplicationContext();
+        mPresetPicture = mStartup.defer("extractPresetPicture",
+            () -> CommonUtils.extractPresetPictureToLocalPath(appContext));
+        mStartup.trace("initHandler", this::initHandler);
+        mStartup.trace("initEventDispatcher", this::initEventDispatcher);
+        // 1.接续服务注册与界面加载并行执行，接续数据已由RecDataActivity直接交给接收器处理，
+        //   注册完成后获取处理结果，展示时再等待界面加载完成
+        mHandoverManagerFuture = mStartup.supply("initHandoverService", () -> initHandoverService(appContext));
+        CompletableFuture<Void> attached = mHandoverManagerFuture.thenAccept(manager -> mStartup.trace(
+            "attachDataReceiver", () -> manager.getDataReceiver().attach(mDataListener)));
+        // 消息处理器会访问界面控件，界面加载完成后才设置接续框架回调并补发已缓存的消息
+        mHandoverManagerFuture.thenAcceptBoth(mViewReady, (manager, ignored) -> mStartup.trace(
+            "setHandoverCallback", () -> manager.init(mHandoverSdkCallback)));
+        mStartup.trace("setContentView", () -> setContentView(R.layout.activity_main));
+        mStartup.trace("initView", this::initView);
+        mViewReady.complete(null);
+        // 2.以下步骤不影响首次展示，在获取接续数据处理结果后再执行
+        // 预加载能力协商策略，避免首次发送接续广播时在点击路径上读取assets
+        CompletableFuture<Void> preloaded = attached.exceptionally(throwable -> null).thenCompose(
+            ignored -> mStartup.run("preloadEligibility", () -> mHandoverManager.getEligibilityCache().preload()));
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            // 调试时定期输出接续耗时统计
+            mHandoverManagerFuture.thenAccept(manager -> manager.getMetrics().startPeriodicDump(METRICS_DUMP_PERIOD));
+        }
+        preloaded.whenComplete((result, throwable) -> {
+            mStartup.finish();
+            Log.i(TAG, "onCreate: startup done " + (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime())
+                    + "ms since process start.");
+        });
     }
 
     @Override
@@ -153,7 +140,6 @@ public class MainActivity extends AppCompatActivity {
         super.onNewIntent(intent);
         setIntent(intent);
         Log.i(TAG, "onNewIntent");
-        processIntent(intent);
     }
 
     /**
@@ -169,14 +155,9 @@ public class MainActivity extends AppCompatActivity {
                     case HAND_CHANGE_TEXT_VIEW_EVENT:
                         String showStr = (String) msg.obj;
                         if (!TextUtils.isEmpty(showStr)) {
-                            textView.setText(showStr);
+                            mViewReady.thenRun(() -> textView.setText(showStr));
                         }
                         break;
-                    case HAND_SEND_CONTINUITY_FEEDBACK_EVENT:
-                        // 发送接续结果反馈信令
-                        mHandoverManager.continuityResultFeedback((String) msg.obj,
-                                msg.arg1 == REC_CONTINUITY_DATA_SUCCESS);
-                        break;
                     default:
                         Log.w(TAG, "unknown msg.what = " + msg.what);
                         break;
@@ -185,6 +166,56 @@ public class MainActivity extends AppCompatActivity {
         };
     }
 
+    /**
+     * 注册onDataEvent消息处理器，各处理器只解析自己需要的字段
+     */
+    private void initEventDispatcher() {
+        mEventDispatcher.register(HandoverSdk.MsgType.CONTINUITY_REQUEST, event -> {
+            // 收到对端设备点击接续触点（接续提示图标）后发送的接续请求信令，每个对端设备独立维护会话
+            HandoverMetrics metrics = mHandoverManager.getMetrics();
+            metrics.setDeviceType(event.getNodeId(), event.optString(DEVICE_TYPE));
+            metrics.mark(event.getNodeId(), HandoverMetrics.Phase.REQUEST_RECEIVED);
+            onRecContinuityRequest(mHandoverManager.getSessionRegistry().onRequest(event.getNodeId()));
+            mHandoverManager.onPeerContact(event.getNodeId());
+        }).register(HandoverSdk.MsgType.NORMAL_MSG, event -> {
+            // 收到对端发送来的NORMAL_MSG消息，对端开启批量发送时一条消息中包含多条NORMAL_MSG
+            mHandoverManager.getSessionRegistry().getOrCreate(event.getNodeId());
+            String dataContent = PayloadCodec.decompress(event.getDataContent());
+            for (String normalMsg : NormalMsgBatcher.unpack(dataContent)) {
+                onRecNormalMsg(event.getNodeId(), normalMsg);
+            }
+        }).register(HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK, event -> {
+            // 收到对端发送来的接续结果反馈，需要对端应用主动发送CONTINUITY_RESULT_FEEDBACK消息
+            String continuityResult = event.getDataContent();
+            boolean isSuccess = HandoverSdk.ContinuityResult.SUCCESS.toString().equals(continuityResult);
+            long stateVersion = event.getJson().optLong(STATE_VERSION);
+            if (mHandoverManager.onContinuityResultFeedback(event.getNodeId(), isSuccess, stateVersion)) {
+                // 对端增量内容的基准已失效，已重新发送完整内容
+                return;
+            }
+            HandoverSession session = mHandoverManager.getSessionRegistry().get(event.getNodeId());
+            if (session != null) {
+                session.moveTo(isSuccess ? HandoverSession.State.DONE : HandoverSession.State.FAILED);
+            }
+            String showStr = "Receive continuity result: " + continuityResult + " from peer device.";
+            if (!isSuccess && event.getJson().has(ERROR_CODE)) {
+                // 对端处理接续数据失败的原因，HandoverReceiveException.ERR_XXX
+                showStr += " ErrorCode: " + event.getJson().optInt(ERROR_CODE);
+            }
+            mHandler.sendMessage(mHandler.obtainMessage(HAND_CHANGE_TEXT_VIEW_EVENT, showStr));
+        }).register(HandoverSdk.MsgType.CONTINUITY_FAILED, event -> {
+            // 收到异常通知消息，具体错误码定义请参考上架文档相关章节描述
+            String showStr = "ErrorInfo: " + event.getDataContent() + " ErrorCode: " + event.getInt(ERROR_CODE);
+            mHandler.sendMessage(mHandler.obtainMessage(HAND_CHANGE_TEXT_VIEW_EVENT, showStr));
+        }).register(HandoverSdk.MsgType.CONTINUITY_DEVICE_EVENT, event -> {
+            // 收到设备上下线数量变化通知消息
+            if (Log.isLoggable(TAG, Log.INFO)) {
+                Log.i(TAG, "onDataEvent: " + event.getDataContent() + ", current online device number: "
+                        + event.getInt(ONLINE_DEV_NUM));
+            }
+        });
+    }
+
     /**
      * view初始化
      */
@@ -195,91 +226,130 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * 初始化接续服务，注意若是因为当前设备不支持等原因导致接续服务一直初始化失败的话不要频繁初始化
+     * 初始化接续服务，初始化失败或接续服务退出后由HandoverManager按退避策略重新注册，避免频繁初始化
+     * 此时只开始注册，注册期间收到的消息由HandoverManager缓存，界面加载完成后设置回调时补发
+     *
+     * @param appContext 应用上下文，HandoverManager为进程内单例，不能持有Activity
+     */
+    private HandoverManager initHandoverService(Context appContext) {
+        HandoverManager manager = HandoverManager.getInstance(appContext);
+        mHandoverManager = manager;
+        manager.startRegistration();
+        return manager;
+    }
+
+    /**
+     * 通过HandoverManager的异步接口发送信令，接续服务不可用时信令在OutboundQueue中排队，恢复可用后发送；
+     * 排队过期或被丢弃时提示用户
+     *
+     * @param name 发送操作名，用于日志和提示
+     * @param send 发送操作，在HandoverManager初始化完成后调用
      */
-    private void initHandoverService() {
-        if (mInitHandoverCount < 3) {
-            if (mHandoverManager == null) {
-                mHandoverManager = HandoverManager.getInstance(this);
+    private void sendAsync(String name, Function<HandoverManager, CompletableFuture<Void>> send) {
+        mHandoverManagerFuture.thenCompose(send).whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                return;
             }
-            mHandoverManager.init(mHandoverSdkCallback);
-            mInitHandoverCount ++;
-        }
+            Log.w(TAG, name + ": send failed.");
+            String showStr = name + " failed, please try again later.";
+            mHandler.sendMessage(mHandler.obtainMessage(HAND_CHANGE_TEXT_VIEW_EVENT, showStr));
+        });
     }
 
     /**
-     * 判断当前接续服务是否可用
+     * 展示接续数据接收器处理完成的接续数据，接续数据的处理和结果反馈不等待界面启动
      *
-     * @return true:接续服务可用 false:接续服务当前不可用
+     * @param result 处理结果，在接收线程中回调
      */
-    private boolean isHandoverServiceStateAvailable() {
-        if (mHandoverServiceState == HANDOVER_STATE_AVAILABLE) {
-            return true;
+    private void onContinuityData(HandoverDataReceiver.Result result) {
+        if (result.mContinuityMsg != null) {
+            mViewReady.thenRunAsync(() -> textView.setText(result.mContinuityMsg), getMainExecutor());
+        } else if (!TextUtils.isEmpty(result.mFilePath)) {
+            if (result.mFilePaths.size() > 1) {
+                Log.i(TAG, "onContinuityData: receive bundle of " + result.mFilePaths.size() + " files.");
+            }
+            showContinuityImage(result.mFilePath);
         }
-        // 若是当前接续服务的状态不可用的话则重新进行初始化
-        initHandoverService();
-        Log.w(TAG, "isHandoverServiceStateAvailable: handover service is not available.");
-        return false;
     }
 
     /**
-     * 接续消息处理
+     * 在后台线程按ImageView大小采样解码接续图片，解码完成后在主线程展示
      *
-     * @param intent intent
+     * @param imgPath 图片路径
      */
-    private void processIntent(Intent intent) {
-        if (intent.getAction() != null && intent.getAction().equals(ACTION_HANDOVER_DATA_TRANS)) {
-            int recContinuityDataFlag = REC_CONTINUITY_DATA_FAILED;
-            mPeerNodeId = intent.getStringExtra(NODE_ID);
-            if (intent.hasExtra(DATA_CONTENT)) {
-                // 收到接续消息，应用可根据实际情况进行相应处理
-                String continuityMsg = getIntent().getStringExtra(DATA_CONTENT);
-                Log.i(TAG, "processIntent: CONTINUITY_MSG:" + continuityMsg);
-                textView.setText(continuityMsg);
-                recContinuityDataFlag = REC_CONTINUITY_DATA_SUCCESS;
-            } else if (intent.getData() != null) {
-                // 收到接续文件，应用可根据实际情况进行相应处理
-                Uri uri = getIntent().getData();
-                String imgSavePath = getExternalFilesDir(null).getPath() + "/ContinuityFile.jpg";
-                CommonUtils.copyUriFile(this, uri, imgSavePath);
-                Log.i(TAG, "processIntent: CONTINUITY_FILE:" + imgSavePath);
-                Bitmap bm = BitmapFactory.decodeFile(imgSavePath);
-                imageView.setImageBitmap(bm);
-                recContinuityDataFlag = REC_CONTINUITY_DATA_SUCCESS;
-            } else {
-                Log.w(TAG, "processIntent: don't receive any continuity data.");
+    private void showContinuityImage(String imgPath) {
+        // 冷启动时接续文件可能先于界面加载完成转存，界面加载完成后再按ImageView大小解码
+        mViewReady.thenRun(() -> {
+            int reqWidth = imageView.getWidth();
+            int reqHeight = imageView.getHeight();
+            if (reqWidth <= 0 || reqHeight <= 0) {
+                // 界面尚未完成布局时按屏幕尺寸解码
+                reqWidth = imageView.getResources().getDisplayMetrics().widthPixels;
+                reqHeight = imageView.getResources().getDisplayMetrics().heightPixels;
             }
-            // 1.接续成功后需要及时通知框架接续成功，收到接续反馈后框架会将结果返回给Source端
-            // 2.注册接续框架后等待onStateChg回调结果为0后再进行通知
-            // 3.如果是文件接续，框架收到此反馈后会进行删除接续缓存文件等操作，请完成文件转存操作再进行反馈
-            Message msg = new Message();
-            msg.what = HAND_SEND_CONTINUITY_FEEDBACK_EVENT;
-            msg.arg1 = recContinuityDataFlag;
-            msg.obj = mPeerNodeId;
-            mHandler.sendMessageDelayed(msg, FEEDBACK_DELAY_TIME);
-        }
+            BitmapDecodePipeline.getInstance().decode(imgPath, reqWidth, reqHeight, bitmap -> {
+                if (bitmap != null && !isDestroyed()) {
+                    imageView.setImageBitmap(bitmap);
+                }
+            });
+        });
     }
 
     /**
      * 收到对端设备点击接续触点（接续提示图标）后发送的接续请求信令，可根据业务需求发送接续消息或接续文件
      *
-     * @param peerNodeId view
+     * @param session 发起请求的对端设备会话
      */
-    private void onRecContinuityRequest(String peerNodeId) {
-        if (TextUtils.isEmpty(peerNodeId)) {
+    private void onRecContinuityRequest(HandoverSession session) {
+        if (session == null) {
             Log.e(TAG, "onRecContinuityRequest: peerNodeId is null.");
             return;
         }
+        String peerNodeId = session.getNodeId();
         Log.i(TAG, "onRecContinuityRequest: Receive ContinuityRequest from device: " + peerNodeId);
+        if (!session.moveTo(HandoverSession.State.SENDING)) {
+            return;
+        }
+        CompletableFuture<Void> future;
         if (!mIsSendBroadcastForTransFile) {
-            // 发送接续消息
-            String inputStr = TextUtils.isEmpty(inputView.getText().toString()) ?
-                    DEFAULT_CONTINUITY_MSG_STRING : inputView.getText().toString();
-            mHandoverManager.sendContinuityMsg(mPeerNodeId, inputStr);
+            // 发送接续消息，内容与广播时预先准备的一致时直接使用准备好的结果
+            String inputStr = getContinuityMsg();
+            session.setPendingPayload(inputStr);
+            future = mHandoverManager.sendContinuityMsgAsync(peerNodeId, inputStr);
         } else {
-            // 发送接续文件
-            mHandoverManager.sendContinuityFile(mPeerNodeId, mPresetPicturePath);
+            // 发送接续文件，预置图片在首次使用时提取
+            future = mPresetPicture.get().thenCompose(presetPicturePath -> {
+                session.setPendingPayload(presetPicturePath);
+                return mHandoverManager.sendContinuityFileAsync(peerNodeId, presetPicturePath);
+            });
         }
+        future.whenComplete((result, throwable) -> session.moveTo(throwable == null
+                ? HandoverSession.State.AWAITING_FEEDBACK : HandoverSession.State.FAILED));
+    }
+
+    /**
+     * 获取要发送的接续消息，输入框为空时使用默认消息
+     *
+     * @return 接续消息内容
+     */
+    private String getContinuityMsg() {
+        String inputStr = inputView.getText().toString();
+        return TextUtils.isEmpty(inputStr) ? DEFAULT_CONTINUITY_MSG_STRING : inputStr;
+    }
+
+    /**
+     * 处理对端发送来的NORMAL_MSG消息
+     *
+     * @param peerNodeId 对端设备ID
+     * @param normalMsg 消息内容
+     */
+    private void onRecNormalMsg(String peerNodeId, String normalMsg) {
+        if (mHandoverManager.handleControlMsg(peerNodeId, normalMsg)) {
+            // 分块文件确认、能力通告等控制消息，由HandoverManager处理
+            return;
+        }
+        String showStr = "Receive NORMAL_MSG: " + normalMsg;
+        mHandler.sendMessage(mHandler.obtainMessage(HAND_CHANGE_TEXT_VIEW_EVENT, showStr));
     }
 
     /**
@@ -288,11 +358,11 @@ public class MainActivity extends AppCompatActivity {
      * @param view view
      */
     public void onSendMsgBroadcastButtonClicked(View view) {
-        if (!isHandoverServiceStateAvailable()) {
-            return;
-        }
+        // 广播的同时预先准备接续消息，收到接续请求时直接发送
+        String continuityMsg = getContinuityMsg();
+        mHandoverManagerFuture.thenAccept(manager -> manager.prestageContinuityMsg(continuityMsg));
         mIsSendBroadcastForTransFile = false;
-        mHandoverManager.sendContinuityBroadcast();
+        sendAsync("Send continuity broadcast", HandoverManager::sendContinuityBroadcastAsync);
     }
 
     /**
@@ -301,11 +371,11 @@ public class MainActivity extends AppCompatActivity {
      * @param view view
      */
     public void onSendFileBroadcastButtonClicked(View view) {
-        if (!isHandoverServiceStateAvailable()) {
-            return;
-        }
+        // 广播的同时提取预置图片并预先准备接续文件，收到接续请求时直接发送
+        mPresetPicture.get().thenAcceptBoth(mHandoverManagerFuture,
+            (presetPicturePath, manager) -> manager.prestageContinuityFile(presetPicturePath));
         mIsSendBroadcastForTransFile = true;
-        mHandoverManager.sendContinuityBroadcast();
+        sendAsync("Send continuity broadcast", HandoverManager::sendContinuityBroadcastAsync);
     }
 
     /**
@@ -314,10 +384,7 @@ public class MainActivity extends AppCompatActivity {
      * @param view view
      */
     public void onSendStopBroadcastButtonClicked(View view) {
-        if (!isHandoverServiceStateAvailable()) {
-            return;
-        }
-        mHandoverManager.sendStopBroadcast();
+        sendAsync("Stop continuity broadcast", HandoverManager::sendStopBroadcastAsync);
     }
 
     /**
@@ -326,16 +393,35 @@ public class MainActivity extends AppCompatActivity {
      * @param view view
      */
     public void onSendNormalMsgButtonClicked(View view) {
-        if (!isHandoverServiceStateAvailable()) {
-            return;
+        String normalMsg = inputView.getText().toString();
+        // 发送给最近一次有交互的对端设备
+        sendAsync("Send NORMAL_MSG", manager -> manager.sendNormalMsgAsync(
+                manager.getSessionRegistry().getLastActiveNodeId(), normalMsg));
+    }
+
+    /**
+     * adb shell dumpsys activity com.example.handoverdemo/.MainActivity 时输出接续事件日志和耗时统计
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        HandoverEventLog.getInstance().dump(writer);
+        HandoverManager manager = mHandoverManager;
+        if (manager != null) {
+            for (HandoverMetrics.Snapshot snapshot : manager.getMetrics().snapshot()) {
+                writer.println(prefix + snapshot);
+            }
         }
-        mHandoverManager.sendNormalMsg(mPeerNodeId, inputView.getText().toString());
     }
 
     @Override
     protected void onDestroy() {
         // 进行反注册操作
-        mHandoverManager.deInit();
+        mHandoverManagerFuture.thenAccept(manager -> {
+            manager.getDataReceiver().detach(mDataListener);
+            manager.getMetrics().stopPeriodicDump();
+            manager.deInit();
+        });
         super.onDestroy();
     }
 }
\ No newline at end of file
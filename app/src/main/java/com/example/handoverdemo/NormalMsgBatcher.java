@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NORMAL_MSG批量发送器
+ * 在时间窗口内将发往同一对端的多条NORMAL_MSG合并为一条带分帧的DATA_CONTENT发送，
+ * 达到最大消息数或最大字节数(UTF-8编码)时立即发送；接收端通过unpack还原为原始消息列表，
+ * 只有声明了PayloadCodec.CAP_BATCH能力的对端才会收到批量消息
+ *
+ * @since 2023-03-15
+ */
+public class NormalMsgBatcher {
+    public static final long DEFAULT_WINDOW_MS = 5;
+
+    public static final int DEFAULT_MAX_MESSAGES = 32;
+
+    public static final int DEFAULT_MAX_PAYLOAD_SIZE = 16 * 1024;
+
+    /**
+     * 批量消息前缀，正常业务消息不会以控制字符开头
+     */
+    private static final String BATCH_PREFIX = "\u0001HOB1:";
+
+    private static final char LENGTH_SEPARATOR = ':';
+
+    private static final String TAG = "HandoverDemo-NormalMsgBatcher";
+
+    private final HandoverManager mHandoverManager;
+
+    private final long mWindowMs;
+
+    private final int mMaxMessages;
+
+    private final int mMaxPayloadSize;
+
+    private final ScheduledExecutorService mScheduler;
+
+    private final Map<String, Batch> mBatches = new HashMap<>();
+
+    NormalMsgBatcher(HandoverManager handoverManager, long windowMs, int maxMessages, int maxPayloadSize) {
+        this.mHandoverManager = handoverManager;
+        this.mWindowMs = windowMs;
+        this.mMaxMessages = maxMessages;
+        this.mMaxPayloadSize = maxPayloadSize;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+            runnable -> new Thread(runnable, "normal-msg-batcher"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.mScheduler = scheduler;
+    }
+
+    /**
+     * 将消息加入对端的批次，批次满或时间窗口结束时发送
+     *
+     * @param peerNodeId 对端设备ID
+     * @param normalMsgStr 消息内容
+     * @return 发送结果，所在批次交给接续框架后完成
+     */
+    public CompletableFuture<Void> enqueue(String peerNodeId, String normalMsgStr) {
+        Batch full = null;
+        CompletableFuture<Void> future;
+        synchronized (mBatches) {
+            Batch batch = mBatches.get(peerNodeId);
+            if (batch == null) {
+                Batch created = new Batch();
+                try {
+                    created.mFlushTask = mScheduler.schedule(() -> flush(peerNodeId, created), mWindowMs,
+                        TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // 批量发送已关闭，调用方在关闭前获取了批量发送器，直接单独发送
+                    Log.w(TAG, "enqueue: batcher is shut down, send directly.");
+                    return mHandoverManager.sendNormalMsgNow(peerNodeId, normalMsgStr);
+                }
+                mBatches.put(peerNodeId, created);
+                batch = created;
+            }
+            batch.mMessages.add(normalMsgStr);
+            batch.mPayloadSize += utf8Length(normalMsgStr);
+            future = batch.mFuture;
+            if (batch.mMessages.size() >= mMaxMessages || batch.mPayloadSize >= mMaxPayloadSize) {
+                mBatches.remove(peerNodeId);
+                batch.mFlushTask.cancel(false);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            send(peerNodeId, full);
+        }
+        return future;
+    }
+
+    /**
+     * 立即发送所有对端的未发送批次，关闭批量发送前调用
+     */
+    public void flushAll() {
+        List<String> peerNodeIds;
+        synchronized (mBatches) {
+            peerNodeIds = new ArrayList<>(mBatches.keySet());
+        }
+        for (String peerNodeId : peerNodeIds) {
+            Batch batch;
+            synchronized (mBatches) {
+                batch = mBatches.get(peerNodeId);
+            }
+            if (batch != null) {
+                flush(peerNodeId, batch);
+            }
+        }
+    }
+
+    /**
+     * 发送所有未发送批次后停止定时线程
+     */
+    void shutdown() {
+        flushAll();
+        mScheduler.shutdown();
+    }
+
+    private void flush(String peerNodeId, Batch batch) {
+        synchronized (mBatches) {
+            // 批次可能已因消息数或字节数达到上限被发送，此时不再重复发送
+            if (!mBatches.remove(peerNodeId, batch)) {
+                return;
+            }
+        }
+        batch.mFlushTask.cancel(false);
+        send(peerNodeId, batch);
+    }
+
+    private void send(String peerNodeId, Batch batch) {
+        // 只有一条消息时不加分帧，与未开启批量发送时的格式一致
+        String content = batch.mMessages.size() == 1 ? batch.mMessages.get(0) : pack(batch.mMessages);
+        Log.d(TAG, "send: " + batch.mMessages.size() + " msgs to " + peerNodeId);
+        mHandoverManager.sendNormalMsgNow(peerNodeId, content).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                batch.mFuture.completeExceptionally(throwable);
+            } else {
+                batch.mFuture.complete(null);
+            }
+        });
+    }
+
+    /**
+     * 计算字符串按UTF-8编码后的字节数，不实际编码
+     */
+    static int utf8Length(String str) {
+        int length = str.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char ch = str.charAt(i);
+            if (ch < 0x80) {
+                continue;
+            }
+            if (ch < 0x800) {
+                bytes++;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < length
+                    && Character.isLowSurrogate(str.charAt(i + 1))) {
+                // 代理对共4字节，两个char各计1字节后再补2字节
+                bytes += 2;
+                i++;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 批量消息格式：前缀 + 多个(消息长度 + ':' + 消息内容)
+     *
+     * @param messages 消息列表
+     * @return 批量消息
+     */
+    static String pack(List<String> messages) {
+        int capacity = BATCH_PREFIX.length();
+        for (String message : messages) {
+            capacity += message.length() + 8;
+        }
+        StringBuilder builder = new StringBuilder(capacity);
+        builder.append(BATCH_PREFIX);
+        for (String message : messages) {
+            builder.append(message.length()).append(LENGTH_SEPARATOR).append(message);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 还原批量消息，非批量消息原样返回
+     *
+     * @param content NORMAL_MSG消息内容
+     * @return 原始消息列表
+     */
+    public static List<String> unpack(String content) {
+        if (content == null || !content.startsWith(BATCH_PREFIX)) {
+            return Collections.singletonList(content);
+        }
+        List<String> messages = new ArrayList<>();
+        int index = BATCH_PREFIX.length();
+        while (index < content.length()) {
+            int separator = content.indexOf(LENGTH_SEPARATOR, index);
+            if (separator < 0) {
+                Log.e(TAG, "unpack: missing length separator at " + index);
+                break;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(content.substring(index, separator));
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "unpack: invalid length at " + index);
+                break;
+            }
+            int end = separator + 1 + length;
+            if (length < 0 || end > content.length()) {
+                Log.e(TAG, "unpack: truncated batch at " + index);
+                break;
+            }
+            messages.add(content.substring(separator + 1, end));
+            index = end;
+        }
+        return messages;
+    }
+
+    private static final class Batch {
+        private final List<String> mMessages = new ArrayList<>();
+
+        private final CompletableFuture<Void> mFuture = new CompletableFuture<>();
+
+        private int mPayloadSize;
+
+        private ScheduledFuture<?> mFlushTask;
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * 待发送信令队列
+ * 接续服务不可用时发送的信令按优先级(接续结果反馈 > 接续广播、接续消息和接续文件 > 一般消息)和提交顺序排队，
+ * 接续服务恢复可用后依次发送；每条信令有过期时间，同一对端较新的同类信令(接续结果反馈、接续消息、同一路径的接续文件)
+ * 会替代尚未发送的旧信令，队列满时优先丢弃低优先级的旧信令。
+ * 队列以追加写的方式记录到应用私有目录中的内存映射文件，进程被杀后重新启动时恢复未发送的信令，
+ * 恢复时文件已不存在的接续文件信令直接以ERR_FILE_NOT_EXIST失败。
+ * 日志的加载、追加和压缩都在日志线程中执行，不持有队列锁；加载完成前提交的信令先暂存，加载完成后按提交顺序处理
+ *
+ * @since 2023-04-05
+ */
+public class OutboundQueue {
+    /**
+     * 队列最大信令数
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 128;
+
+    /**
+     * 日志文件大小，超过后压缩为只包含未发送信令的新文件，单条超过该大小的信令只保存在内存中
+     */
+    public static final int DEFAULT_LOG_CAPACITY = 1024 * 1024;
+
+    private static final String TAG = "HandoverDemo-OutboundQueue";
+
+    private static final String LOG_DIR = "outbound_queue";
+
+    private static final String LOG_FILE = "queue.log";
+
+    private static final byte OP_ADD = 1;
+
+    private static final byte OP_REMOVE = 2;
+
+    private static final int PRIORITY_FEEDBACK = 0;
+
+    private static final int PRIORITY_CONTINUITY = 1;
+
+    private static final int PRIORITY_NORMAL = 2;
+
+    private static final long TTL_BROADCAST_MS = 10 * 1000;
+
+    private static final long TTL_CONTINUITY_MS = 60 * 1000;
+
+    private static final long TTL_NORMAL_MS = 5 * 60 * 1000;
+
+    /**
+     * 发送出队的信令
+     */
+    interface Sender {
+        /**
+         * 发送信令，在队列锁内调用，只能提交到发送线程，不能阻塞
+         *
+         * @param entry 信令
+         * @return 发送结果
+         */
+        CompletableFuture<Void> send(Entry entry);
+    }
+
+    /**
+     * 待发送信令
+     */
+    static final class Entry {
+        final long mSeq;
+
+        final HandoverSdk.MsgType mMsgType;
+
+        final String mPeerNodeId;
+
+        final String mPayload;
+
+        final boolean mIsSuccess;
+
+        final long mExpireTime;
+
+        final CompletableFuture<Void> mFuture = new CompletableFuture<>();
+
+        private boolean mIsLogged;
+
+        Entry(long seq, HandoverSdk.MsgType msgType, String peerNodeId, String payload, boolean isSuccess,
+            long expireTime) {
+            this.mSeq = seq;
+            this.mMsgType = msgType;
+            this.mPeerNodeId = peerNodeId;
+            this.mPayload = payload;
+            this.mIsSuccess = isSuccess;
+            this.mExpireTime = expireTime;
+        }
+
+        int getPriority() {
+            return priorityOf(mMsgType);
+        }
+
+        /**
+         * 同一合并键的新信令替代旧信令，按信令类型和对端合并，接续消息不会替代接续文件，一般消息不合并；
+         * 接续文件按文件路径合并，逐个发送的多个接续文件都会保留
+         */
+        String getCoalesceKey() {
+            switch (mMsgType) {
+                case CONTINUITY_RESULT_FEEDBACK:
+                    return "F:" + mPeerNodeId;
+                case CONTINUITY_MSG:
+                    return "M:" + mPeerNodeId;
+                case CONTINUITY_FILE:
+                    return "P:" + mPeerNodeId + "/" + mPayload;
+                case CONTINUITY_BROADCAST:
+                case CONTINUITY_STOP_BROADCAST:
+                    return "B";
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final File mLogFile;
+
+    private final Sender mSender;
+
+    private final BooleanSupplier mIsServiceAvailable;
+
+    private final int mMaxEntries;
+
+    private final int mLogCapacity;
+
+    private final TreeSet<Entry> mEntries = new TreeSet<>(Comparator.comparingInt(Entry::getPriority)
+        .thenComparingLong(entry -> entry.mSeq));
+
+    private final Map<String, Entry> mCoalesced = new HashMap<>();
+
+    /**
+     * 日志加载完成前提交的信令
+     */
+    private final List<PendingSend> mPendingSends = new ArrayList<>();
+
+    /**
+     * 执行日志读写的线程，必须是单线程，保证日志记录按提交顺序写入
+     */
+    private final Executor mLogExecutor;
+
+    /**
+     * 日志文件映射，只在日志线程中访问
+     */
+    private MappedByteBuffer mLog;
+
+    private boolean mIsLoaded;
+
+    private long mNextSeq;
+
+    /**
+     * 日志加载完成前提交的信令
+     */
+    private static final class PendingSend {
+        private final HandoverSdk.MsgType mMsgType;
+
+        private final String mPeerNodeId;
+
+        private final String mPayload;
+
+        private final boolean mIsSuccess;
+
+        private final CompletableFuture<Void> mFuture = new CompletableFuture<>();
+
+        PendingSend(HandoverSdk.MsgType msgType, String peerNodeId, String payload, boolean isSuccess) {
+            this.mMsgType = msgType;
+            this.mPeerNodeId = peerNodeId;
+            this.mPayload = payload;
+            this.mIsSuccess = isSuccess;
+        }
+    }
+
+    /**
+     * 构造函数，在日志线程中开始加载日志
+     *
+     * @param context 上下文
+     * @param sender 发送出队的信令
+     * @param isServiceAvailable 接续服务当前是否可用
+     * @param logExecutor 执行日志读写的单线程Executor
+     * @param maxEntries 队列最大信令数
+     * @param logCapacity 日志文件大小
+     */
+    OutboundQueue(Context context, Sender sender, BooleanSupplier isServiceAvailable, Executor logExecutor,
+        int maxEntries, int logCapacity) {
+        this.mLogFile = new File(new File(context.getFilesDir(), LOG_DIR), LOG_FILE);
+        this.mSender = sender;
+        this.mIsServiceAvailable = isServiceAvailable;
+        this.mLogExecutor = logExecutor;
+        this.mMaxEntries = maxEntries;
+        this.mLogCapacity = logCapacity;
+        logExecutor.execute(this::load);
+    }
+
+    /**
+     * 接续服务可用且没有排队的信令时直接发送，否则加入队列
+     *
+     * @param msgType 信令类型
+     * @param peerNodeId 对端设备ID，接续广播和取消广播时为null
+     * @param payload 接续消息或一般消息内容、接续文件路径
+     * @param isSuccess 接续结果反馈是否成功
+     * @return 发送结果，排队的信令过期、被替代或被挤出队列时抛出HandoverSendException(ERR_DROPPED)
+     */
+    public synchronized CompletableFuture<Void> sendOrEnqueue(HandoverSdk.MsgType msgType, String peerNodeId,
+        String payload, boolean isSuccess) {
+        if (!mIsLoaded) {
+            PendingSend pending = new PendingSend(msgType, peerNodeId, payload, isSuccess);
+            mPendingSends.add(pending);
+            return pending.mFuture;
+        }
+        Entry entry = new Entry(mNextSeq++, msgType, peerNodeId, payload, isSuccess,
+            System.currentTimeMillis() + ttlOf(msgType));
+        if (mEntries.isEmpty() && mIsServiceAvailable.getAsBoolean()) {
+            return mSender.send(entry);
+        }
+        enqueue(entry);
+        return entry.mFuture;
+    }
+
+    /**
+     * 按优先级和提交顺序发送所有未过期的信令，接续服务变为可用时调用
+     */
+    public synchronized void drain() {
+        if (!mIsLoaded) {
+            // 加载完成后会发送排队的信令
+            return;
+        }
+        long now = System.currentTimeMillis();
+        while (!mEntries.isEmpty() && mIsServiceAvailable.getAsBoolean()) {
+            Entry entry = mEntries.pollFirst();
+            remove(entry);
+            if (entry.mExpireTime <= now) {
+                drop(entry, "expired");
+                continue;
+            }
+            Log.i(TAG, "drain: send queued " + entry.mMsgType + " seq " + entry.mSeq);
+            mSender.send(entry).whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    entry.mFuture.complete(null);
+                } else {
+                    entry.mFuture.completeExceptionally(throwable);
+                }
+            });
+        }
+    }
+
+    /**
+     * 获取排队的信令数
+     *
+     * @return 排队的信令数
+     */
+    public synchronized int size() {
+        return mEntries.size() + mPendingSends.size();
+    }
+
+    static int priorityOf(HandoverSdk.MsgType msgType) {
+        if (msgType == HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK) {
+            return PRIORITY_FEEDBACK;
+        }
+        return msgType == HandoverSdk.MsgType.NORMAL_MSG ? PRIORITY_NORMAL : PRIORITY_CONTINUITY;
+    }
+
+    private static long ttlOf(HandoverSdk.MsgType msgType) {
+        switch (msgType) {
+            case CONTINUITY_BROADCAST:
+            case CONTINUITY_STOP_BROADCAST:
+                return TTL_BROADCAST_MS;
+            case NORMAL_MSG:
+                return TTL_NORMAL_MS;
+            default:
+                return TTL_CONTINUITY_MS;
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        purgeExpired();
+        String key = entry.getCoalesceKey();
+        Entry superseded = key == null ? null : mCoalesced.get(key);
+        if (superseded != null) {
+            mEntries.remove(superseded);
+            remove(superseded);
+            drop(superseded, "superseded by seq " + entry.mSeq);
+        }
+        if (mEntries.size() >= mMaxEntries) {
+            // 丢弃优先级最低的最早一条信令，新信令优先级最低时丢弃新信令
+            Entry victim = lowestPriorityOldest();
+            if (victim == null || victim.getPriority() < entry.getPriority()) {
+                drop(entry, "queue full");
+                return;
+            }
+            mEntries.remove(victim);
+            remove(victim);
+            drop(victim, "queue full");
+        }
+        mEntries.add(entry);
+        if (key != null) {
+            mCoalesced.put(key, entry);
+        }
+        entry.mIsLogged = log(encodeAdd(entry));
+        Log.i(TAG, "enqueue: " + entry.mMsgType + " seq " + entry.mSeq + ", queued " + mEntries.size());
+    }
+
+    private Entry lowestPriorityOldest() {
+        Entry last = mEntries.isEmpty() ? null : mEntries.last();
+        if (last == null) {
+            return null;
+        }
+        for (Entry entry : mEntries) {
+            if (entry.getPriority() == last.getPriority()) {
+                return entry;
+            }
+        }
+        return last;
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> iterator = mEntries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.mExpireTime <= now) {
+                iterator.remove();
+                remove(entry);
+                drop(entry, "expired");
+            }
+        }
+    }
+
+    /**
+     * 从合并索引和日志中移除已出队的信令
+     */
+    private void remove(Entry entry) {
+        String key = entry.getCoalesceKey();
+        if (key != null && mCoalesced.get(key) == entry) {
+            mCoalesced.remove(key);
+        }
+        if (entry.mIsLogged) {
+            entry.mIsLogged = false;
+            ByteBuffer record = ByteBuffer.allocate(9);
+            record.put(OP_REMOVE).putLong(entry.mSeq);
+            log(record.array());
+        }
+    }
+
+    private static void drop(Entry entry, String reason) {
+        Log.w(TAG, "drop: " + entry.mMsgType + " seq " + entry.mSeq + " " + reason);
+        entry.mFuture.completeExceptionally(new HandoverSendException(HandoverSendException.ERR_DROPPED,
+            entry.mMsgType + " dropped: " + reason));
+    }
+
+    /**
+     * 在日志线程中恢复上次进程未发送的信令并重新生成日志，之后处理加载期间提交的信令
+     */
+    private void load() {
+        Map<Long, Entry> restored = new HashMap<>();
+        if (mLogFile.exists()) {
+            try (RandomAccessFile file = new RandomAccessFile(mLogFile, "r")) {
+                ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                replay(buffer, restored);
+            } catch (IOException e) {
+                Log.e(TAG, "load: catch IOException.");
+            }
+        }
+        long now = System.currentTimeMillis();
+        List<Entry> live = new ArrayList<>();
+        long nextSeq = 0;
+        for (Entry entry : restored.values()) {
+            nextSeq = Math.max(nextSeq, entry.mSeq + 1);
+            if (entry.mExpireTime <= now) {
+                continue;
+            }
+            if (entry.mMsgType == HandoverSdk.MsgType.CONTINUITY_FILE
+                && (entry.mPayload == null || !new File(entry.mPayload).exists())) {
+                // 排队的可能是接续包、分块等临时文件，进程重启前已被清理
+                Log.w(TAG, "load: drop " + entry.mMsgType + " seq " + entry.mSeq + ", file not exist.");
+                entry.mFuture.completeExceptionally(new HandoverSendException(
+                    HandoverSendException.ERR_FILE_NOT_EXIST, "queued file is not exist."));
+                continue;
+            }
+            live.add(entry);
+        }
+        live.sort(Comparator.comparingLong(entry -> entry.mSeq));
+        List<Entry> snapshot;
+        synchronized (this) {
+            mNextSeq = nextSeq;
+            for (Entry entry : live) {
+                mEntries.add(entry);
+                String key = entry.getCoalesceKey();
+                if (key != null) {
+                    Entry superseded = mCoalesced.put(key, entry);
+                    if (superseded != null) {
+                        mEntries.remove(superseded);
+                    }
+                }
+            }
+            if (!mEntries.isEmpty()) {
+                Log.i(TAG, "load: restored " + mEntries.size() + " queued entries.");
+            }
+            snapshot = new ArrayList<>(mEntries);
+        }
+        compact(snapshot);
+        synchronized (this) {
+            mIsLoaded = true;
+            for (PendingSend pending : mPendingSends) {
+                sendOrEnqueue(pending.mMsgType, pending.mPeerNodeId, pending.mPayload, pending.mIsSuccess)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable == null) {
+                            pending.mFuture.complete(null);
+                        } else {
+                            pending.mFuture.completeExceptionally(throwable);
+                        }
+                    });
+            }
+            mPendingSends.clear();
+            drain();
+        }
+    }
+
+    private void replay(ByteBuffer buffer, Map<Long, Entry> restored) {
+        CRC32 crc32 = new CRC32();
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining() - 4) {
+                // 文件末尾的空白区域或未写完的记录
+                return;
+            }
+            byte[] body = new byte[length];
+            buffer.get(body);
+            crc32.reset();
+            crc32.update(body);
+            if ((int) crc32.getValue() != buffer.getInt()) {
+                Log.w(TAG, "replay: bad record at " + start);
+                return;
+            }
+            try {
+                ByteBuffer record = ByteBuffer.wrap(body);
+                byte op = record.get();
+                long seq = record.getLong();
+                if (op == OP_REMOVE) {
+                    restored.remove(seq);
+                } else if (op == OP_ADD) {
+                    Entry entry = new Entry(seq, HandoverSdk.MsgType.valueOf(readString(record)),
+                        readString(record), readString(record), record.get() != 0, record.getLong());
+                    entry.mIsLogged = true;
+                    restored.put(seq, entry);
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                Log.w(TAG, "replay: invalid record at " + start);
+            }
+        }
+    }
+
+    /**
+     * 在日志线程中重新生成只包含未发送信令的日志文件
+     *
+     * @param live 未发送的信令快照，之后提交的记录在新日志中追加，重复的记录恢复时会覆盖
+     */
+    private void compact(List<Entry> live) {
+        File dir = mLogFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "compact: create dir failed.");
+            return;
+        }
+        File tempFile = new File(dir, LOG_FILE + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw")) {
+            file.setLength(mLogCapacity);
+            MappedByteBuffer log = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mLogCapacity);
+            for (Entry entry : live) {
+                byte[] record = encodeAdd(entry);
+                if (fits(log, record)) {
+                    write(log, record);
+                }
+            }
+            mLog = log;
+        } catch (IOException e) {
+            Log.e(TAG, "compact: catch IOException.");
+            mLog = null;
+            return;
+        }
+        if (!tempFile.renameTo(mLogFile)) {
+            Log.e(TAG, "compact: rename failed.");
+            mLog = null;
+        }
+    }
+
+    /**
+     * 在日志线程中追加一条记录，在队列锁内调用，不执行磁盘读写
+     *
+     * @return true:已提交到日志线程
+     */
+    private boolean log(byte[] body) {
+        if (body.length + 8 > mLogCapacity) {
+            Log.w(TAG, "log: record too large, keep in memory only.");
+            return false;
+        }
+        try {
+            mLogExecutor.execute(() -> append(body));
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "log: log executor rejected.");
+            return false;
+        }
+    }
+
+    /**
+     * 追加一条记录，空间不足时先压缩日志，只在日志线程中调用
+     */
+    private void append(byte[] body) {
+        if (mLog == null) {
+            return;
+        }
+        if (!fits(mLog, body)) {
+            List<Entry> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(mEntries);
+            }
+            compact(snapshot);
+            if (mLog == null || !fits(mLog, body)) {
+                Log.w(TAG, "append: log full, keep in memory only.");
+                return;
+            }
+        }
+        write(mLog, body);
+    }
+
+    private static boolean fits(ByteBuffer log, byte[] body) {
+        return log.remaining() >= body.length + 8;
+    }
+
+    private static void write(ByteBuffer log, byte[] body) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(body);
+        // 先写内容和校验值，最后写长度，进程在写入过程中被杀时恢复阶段会丢弃未写完的记录
+        int start = log.position();
+        log.position(start + 4);
+        log.put(body);
+        log.putInt((int) crc32.getValue());
+        log.putInt(start, body.length);
+    }
+
+    private static byte[] encodeAdd(Entry entry) {
+        byte[] msgType = entry.mMsgType.name().getBytes(StandardCharsets.UTF_8);
+        byte[] peer = bytesOf(entry.mPeerNodeId);
+        byte[] payload = bytesOf(entry.mPayload);
+        ByteBuffer record = ByteBuffer.allocate(1 + 8 + 12 + msgType.length + lengthOf(peer) + lengthOf(payload)
+            + 1 + 8);
+        record.put(OP_ADD).putLong(entry.mSeq);
+        writeBytes(record, msgType);
+        writeBytes(record, peer);
+        writeBytes(record, payload);
+        record.put((byte) (entry.mIsSuccess ? 1 : 0)).putLong(entry.mExpireTime);
+        return record.array();
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int lengthOf(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void writeBytes(ByteBuffer record, byte[] value) {
+        if (value == null) {
+            record.putInt(-1);
+            return;
+        }
+        record.putInt(value.length).put(value);
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        record.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 接续消息内容压缩编解码
+ * 超过阈值的DATA_CONTENT使用Deflate压缩后Base64编码，并加上压缩标记前缀；
+ * 接续框架只透传DATA_CONTENT字段，因此标记放在内容中，接收端据此判断是否需要解压
+ *
+ * @since 2023-03-27
+ */
+public final class PayloadCodec {
+    /**
+     * 支持Deflate压缩的能力位
+     */
+    public static final int CAP_DEFLATE = 1;
+
+    /**
+     * 支持接续文件内容寻址存储和摘要握手的能力位，见ContentHandshake
+     */
+    public static final int CAP_CONTENT_STORE = 1 << 1;
+
+    /**
+     * 支持接续消息增量传输的能力位，见StateDeltaTracker
+     */
+    public static final int CAP_STATE_DELTA = 1 << 2;
+
+    /**
+     * 支持超大接续消息转文件接收的能力位，见ContinuityMsgSpiller
+     */
+    public static final int CAP_SPILL = 1 << 3;
+
+    /**
+     * 支持多文件接续包的能力位，见HandoverBundle
+     */
+    public static final int CAP_BUNDLE = 1 << 4;
+
+    /**
+     * 支持NORMAL_MSG批量消息还原的能力位，见NormalMsgBatcher
+     */
+    public static final int CAP_BATCH = 1 << 5;
+
+    /**
+     * 本端支持的所有能力
+     */
+    public static final int LOCAL_CAPABILITIES = CAP_DEFLATE | CAP_CONTENT_STORE | CAP_STATE_DELTA | CAP_SPILL
+        | CAP_BUNDLE | CAP_BATCH;
+
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 4 * 1024;
+
+    private static final String TAG = "HandoverDemo-PayloadCodec";
+
+    private static final String DEFLATE_PREFIX = "\u0002DFL1:";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * 预先加载压缩和解压相关的类和本地库，避免首次解压接续消息时加载
+     */
+    public static void prewarm() {
+        char[] sample = new char[DEFAULT_COMPRESS_THRESHOLD];
+        Arrays.fill(sample, 'a');
+        decompress(compress(new String(sample), DEFAULT_COMPRESS_THRESHOLD));
+    }
+
+    /**
+     * 判断内容是否为压缩内容
+     *
+     * @param content 消息内容
+     * @return true:压缩内容
+     */
+    public static boolean isCompressed(String content) {
+        return content != null && content.startsWith(DEFLATE_PREFIX);
+    }
+
+    /**
+     * 内容长度超过阈值且压缩后更小时进行压缩
+     *
+     * @param content 消息内容
+     * @param threshold 压缩阈值
+     * @return 压缩后带标记的内容，不满足压缩条件时返回原内容
+     */
+    public static String compress(String content, int threshold) {
+        if (content == null || content.length() < threshold || isCompressed(content)) {
+            return content;
+        }
+        byte[] input = content.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(input.length / 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                outputStream.write(buffer, 0, count);
+            }
+            String encoded = DEFLATE_PREFIX + Base64.getEncoder().encodeToString(outputStream.toByteArray());
+            if (encoded.length() >= content.length()) {
+                // 压缩收益不足时发送原内容
+                return content;
+            }
+            return encoded;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解压带压缩标记的内容，非压缩内容原样返回
+     *
+     * @param content 消息内容
+     * @return 解压后的内容，解压失败时返回原内容
+     */
+    public static String decompress(String content) {
+        if (!isCompressed(content)) {
+            return content;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            byte[] input = Base64.getDecoder().decode(content.substring(DEFLATE_PREFIX.length()));
+            inflater.setInput(input);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(input.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    Log.e(TAG, "decompress: payload truncated.");
+                    return content;
+                }
+                outputStream.write(buffer, 0, count);
+            }
+            return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException | DataFormatException e) {
+            Log.e(TAG, "decompress: invalid payload.");
+            return content;
+        } finally {
+            inflater.end();
+        }
+    }
+}
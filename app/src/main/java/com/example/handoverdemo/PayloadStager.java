@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.core.content.FileProvider;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 接续内容预先准备
+ * 发送接续广播时在后台线程提前完成与对端无关的准备工作：接续消息分配状态版本号并压缩完整编码和原始内容，
+ * 接续文件解析FileProvider Uri并计算内容摘要；收到接续请求时直接使用准备好的结果发送。
+ * 准备好的内容在取消广播、接续内容变化(新的内容、压缩阈值变化、文件长度或修改时间变化)时失效
+ *
+ * @since 2023-04-07
+ */
+class PayloadStager {
+    static final String FILE_PROVIDER_AUTHORITY = "com.example.handoverdemo.provider";
+
+    private static final String TAG = "HandoverDemo-PayloadStager";
+
+    /**
+     * 压缩结果缓存条数，原始内容和完整编码各一条，保留上一次准备的结果
+     */
+    private static final int MAX_COMPRESSED_ENTRIES = 4;
+
+    private final Context mContext;
+
+    private final StateDeltaTracker mStateDeltaTracker;
+
+    private final ContentHandshake mContentHandshake;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "handover-prestage"));
+
+    /**
+     * 原始内容到压缩结果的缓存，按访问顺序淘汰
+     */
+    private final Map<String, String> mCompressed = new LinkedHashMap<String, String>(8, 0.75f, true) {
+        private static final long serialVersionUID = 4016285478513520327L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_COMPRESSED_ENTRIES;
+        }
+    };
+
+    private int mCompressedThreshold;
+
+    private volatile StagedMsg mStagedMsg;
+
+    private volatile StagedFile mStagedFile;
+
+    private static final class StagedMsg {
+        private final String mMsg;
+
+        private final long mVersion;
+
+        StagedMsg(String msg, long version) {
+            this.mMsg = msg;
+            this.mVersion = version;
+        }
+    }
+
+    private static final class StagedFile {
+        private final String mPath;
+
+        private final long mLength;
+
+        private final long mLastModified;
+
+        private final Uri mUri;
+
+        StagedFile(String path, long length, long lastModified, Uri uri) {
+            this.mPath = path;
+            this.mLength = length;
+            this.mLastModified = lastModified;
+            this.mUri = uri;
+        }
+
+        boolean isValid(File file) {
+            return mPath.equals(file.getPath()) && mLength == file.length() && mLastModified == file.lastModified();
+        }
+    }
+
+    PayloadStager(Context context, StateDeltaTracker stateDeltaTracker, ContentHandshake contentHandshake) {
+        this.mContext = context;
+        this.mStateDeltaTracker = stateDeltaTracker;
+        this.mContentHandshake = contentHandshake;
+    }
+
+    /**
+     * 在后台线程准备接续消息
+     *
+     * @param msg 接续消息内容
+     * @param threshold 压缩阈值
+     * @return 准备完成时完成
+     */
+    CompletableFuture<Void> stageMsg(String msg, int threshold) {
+        return runAsync(() -> {
+            StagedMsg staged = mStagedMsg;
+            if (staged == null || !staged.mMsg.equals(msg)) {
+                staged = new StagedMsg(msg, mStateDeltaTracker.nextVersion());
+                mStagedMsg = staged;
+            }
+            compress(msg, threshold);
+            compress(StateDeltaTracker.encodeFull(msg, staged.mVersion), threshold);
+        });
+    }
+
+    /**
+     * 在后台线程准备接续文件
+     *
+     * @param filePath 接续文件路径
+     * @return 准备完成时完成
+     */
+    CompletableFuture<Void> stageFile(String filePath) {
+        return runAsync(() -> {
+            File file = new File(filePath);
+            if (!file.exists()) {
+                Log.w(TAG, "stageFile: file is not exist.");
+                return;
+            }
+            uriFor(file);
+            mContentHandshake.getFileHash(file);
+        });
+    }
+
+    /**
+     * 获取准备好的状态版本号
+     *
+     * @param msg 接续消息内容
+     * @return 版本号，该内容未准备时分配新的版本号
+     */
+    long versionFor(String msg) {
+        StagedMsg staged = mStagedMsg;
+        if (staged != null && staged.mMsg.equals(msg)) {
+            return staged.mVersion;
+        }
+        return mStateDeltaTracker.nextVersion();
+    }
+
+    /**
+     * 压缩消息内容，已准备过的内容直接返回缓存结果
+     *
+     * @param content 消息内容
+     * @param threshold 压缩阈值
+     * @return 压缩后带标记的内容，不满足压缩条件时返回原内容
+     */
+    String compress(String content, int threshold) {
+        if (content == null || content.length() < threshold) {
+            return content;
+        }
+        synchronized (mCompressed) {
+            if (mCompressedThreshold != threshold) {
+                mCompressed.clear();
+                mCompressedThreshold = threshold;
+            }
+            String compressed = mCompressed.get(content);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        String compressed = PayloadCodec.compress(content, threshold);
+        synchronized (mCompressed) {
+            if (mCompressedThreshold == threshold) {
+                mCompressed.put(content, compressed);
+            }
+        }
+        return compressed;
+    }
+
+    /**
+     * 获取接续文件的FileProvider Uri，文件未变化时使用准备好的结果
+     *
+     * @param file 接续文件
+     * @return 文件Uri
+     */
+    Uri uriFor(File file) {
+        StagedFile staged = mStagedFile;
+        if (staged != null && staged.isValid(file)) {
+            return staged.mUri;
+        }
+        Uri uri = uriForTemp(file);
+        mStagedFile = new StagedFile(file.getPath(), file.length(), file.lastModified(), uri);
+        return uri;
+    }
+
+    /**
+     * 获取临时文件(如分块文件)的FileProvider Uri，不替换准备好的接续文件
+     *
+     * @param file 临时文件
+     * @return 文件Uri
+     */
+    Uri uriForTemp(File file) {
+        return FileProvider.getUriForFile(mContext, FILE_PROVIDER_AUTHORITY, file);
+    }
+
+    /**
+     * 清除准备好的内容，取消广播时调用
+     */
+    void invalidate() {
+        mStagedMsg = null;
+        mStagedFile = null;
+        synchronized (mCompressed) {
+            mCompressed.clear();
+        }
+    }
+
+    /**
+     * 清除准备好的内容并停止准备线程
+     */
+    void shutdown() {
+        invalidate();
+        mExecutor.shutdownNow();
+    }
+
+    private CompletableFuture<Void> runAsync(Runnable task) {
+        try {
+            return CompletableFuture.runAsync(task, mExecutor);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "runAsync: prestage executor rejected.");
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+}
@@ -3,6 +3,7 @@
  */
 package com.example.handoverdemo;
 
+import static com.example.handoverdemo.HandoverManager.DATA_CONTENT;
 import static com.example.handoverdemo.HandoverManager.NODE_ID;
 
 import android.app.Activity;
@@ -15,6 +16,8 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 接续数据中转Activity
  *
@@ -27,6 +30,11 @@ public class RecDataActivity extends Activity {
 
     private static final String HANDOVER_ACTION = "com.hihonor.handover.ACTION_APP_DATA_HANDOVER";
 
+    /**
+     * 尚未处理完成的接续数据，全部完成后结束本Activity
+     */
+    private CompletableFuture<Void> mProcessing = CompletableFuture.completedFuture(null);
+
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -45,21 +53,33 @@ public class RecDataActivity extends Activity {
             return;
         }
         if (LAUNCH_ACTION.equals(intent.getAction())) {
-            // TODO 当用户点击Sink端的接续触点时接续框架会先通过此Action拉起应用Activity，
-            //  若是应用是进行的文件接续或者有其他耗时处理，可以在此处进行展示加载动画等相关操作;
-            //  若是应用本身需要进行同账号校验等操作，则可以在此处通过获取到的对端设备ID，发送NormalMsg到Source端进行校验，
-            //  Source检验成功后再发送ContinuityMsg或者ContinuityFile
+            // 用户点击Sink端的接续触点时接续框架会先通过此Action拉起应用，在接续数据到达前预热：
+            // 注册接续框架、建立会话、准备转存缓冲区和解码线程，使用Application上下文，单例不持有即将结束的Activity。
+            // 需要同账号校验等操作的应用可在此处通过对端设备ID发送NormalMsg到Source端校验，校验成功后Source端再发送接续数据
             String peerNodeId = intent.getStringExtra(NODE_ID);
-            Log.i(TAG, "processIntent: Show loading dialog for wait continuity file or " +
-                    "continuity msg, peer device nodeId:" + peerNodeId);
+            Log.i(TAG, "processIntent: prewarm sink for peer device nodeId:" + peerNodeId);
+            HandoverManager.getInstance(getApplicationContext()).prewarmSink(peerNodeId);
+            BitmapDecodePipeline.getInstance().warmUp();
         } else if (HANDOVER_ACTION.equals(intent.getAction())) {
             /*
-             * 收到接续数据，跳转实际展示Activity解析接续数据
+             * 收到接续数据，直接交给进程内的接收器开始解码/转存并反馈接续结果，展示Activity启动后再获取处理结果；
+             * 接续文件Uri的读取权限随本Activity授予，处理完成后再结束本Activity
              */
-            Intent mainIntent = new Intent(intent);
-            mainIntent.setClass(this, MainActivity.class);
-            startActivity(mainIntent);
+            HandoverDataReceiver receiver = HandoverManager.getInstance(getApplicationContext()).getDataReceiver();
+            CompletableFuture<HandoverDataReceiver.Result> processing = receiver.receive(
+                    intent.getStringExtra(NODE_ID), intent.getStringExtra(DATA_CONTENT), intent.getData());
+            startActivity(new Intent(this, MainActivity.class));
+            CompletableFuture<Void> allProcessing = CompletableFuture.allOf(mProcessing, processing);
+            mProcessing = allProcessing;
+            allProcessing.whenCompleteAsync((result, throwable) -> finishIfIdle(), getMainExecutor());
+            return;
+        }
+        finishIfIdle();
+    }
+
+    private void finishIfIdle() {
+        if (mProcessing.isDone()) {
+            finish();
         }
-        finish();
     }
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import static com.example.handoverdemo.HandoverManager.HANDOVER_STATE_AVAILABLE;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接续服务重连调度
+ * 接续服务不可用(初始化失败或长时间无数据收发后退出)时按指数退避加随机抖动在后台持续重新注册，
+ * 退避时间有上限；注册后一段时间内没有收到可用回调也按失败处理。接续服务可用且长时间无数据收发时
+ * 提前重新注册，避免用户操作时接续服务已经退出。调用方可通过awaitAvailable等待接续服务可用，
+ * 等待期间会立即发起一次注册而不必等到下一次退避
+ *
+ * @since 2023-04-04
+ */
+public class ReconnectScheduler {
+    /**
+     * 首次重试的退避时间
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 1000;
+
+    /**
+     * 退避时间上限
+     */
+    public static final long DEFAULT_MAX_BACKOFF_MS = 60 * 1000;
+
+    /**
+     * 无数据收发多久后提前重新注册
+     */
+    public static final long DEFAULT_IDLE_REREGISTER_MS = 3 * 60 * 1000;
+
+    private static final String TAG = "HandoverDemo-ReconnectScheduler";
+
+    /**
+     * 注册后等待可用回调的时间，超时按注册失败处理
+     */
+    private static final long REGISTER_TIMEOUT_MS = 5000;
+
+    /**
+     * awaitAvailable立即发起注册的最小间隔，避免连续点击时频繁注册
+     */
+    private static final long MIN_KICK_INTERVAL_MS = 1000;
+
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    /**
+     * 接续服务状态监听
+     */
+    public interface StateListener {
+        /**
+         * 接续服务可用状态变化
+         *
+         * @param isAvailable true:接续服务可用
+         */
+        void onAvailabilityChanged(boolean isAvailable);
+    }
+
+    private final Runnable mRegisterAction;
+
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    private final List<StateListener> mListeners = new CopyOnWriteArrayList<>();
+
+    private final long mInitialBackoffMs;
+
+    private final long mMaxBackoffMs;
+
+    private volatile long mIdleReregisterMs = DEFAULT_IDLE_REREGISTER_MS;
+
+    private volatile long mLastActiveTime = SystemClock.elapsedRealtime();
+
+    private boolean mIsStarted;
+
+    private volatile boolean mIsAvailable;
+
+    private int mAttempt;
+
+    /**
+     * 已发起注册，等待接续服务状态回调
+     */
+    private boolean mIsRegistering;
+
+    private long mLastAttemptTime;
+
+    private ScheduledFuture<?> mRetryTask;
+
+    private ScheduledFuture<?> mIdleTask;
+
+    private CompletableFuture<Void> mReadyFuture = new CompletableFuture<>();
+
+    /**
+     * 构造函数
+     *
+     * @param registerAction 注册接续服务，在调度线程中调用，实现方需自行切换到发送线程
+     * @param initialBackoffMs 首次重试的退避时间
+     * @param maxBackoffMs 退避时间上限
+     */
+    ReconnectScheduler(Runnable registerAction, long initialBackoffMs, long maxBackoffMs) {
+        this.mRegisterAction = registerAction;
+        this.mInitialBackoffMs = initialBackoffMs;
+        this.mMaxBackoffMs = maxBackoffMs;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            runnable -> new Thread(runnable, "handover-reconnect"));
+        executor.setRemoveOnCancelPolicy(true);
+        this.mExecutor = executor;
+    }
+
+    /**
+     * 开始注册，注册失败时按退避策略持续重试
+     */
+    public synchronized void start() {
+        mIsStarted = true;
+        mAttempt = 0;
+        if (mReadyFuture.isDone() && !mIsAvailable) {
+            mReadyFuture = new CompletableFuture<>();
+        }
+        attemptLocked();
+        scheduleIdleCheckLocked();
+    }
+
+    /**
+     * 停止重试和提前重新注册，等待中的调用方收到不可用异常
+     */
+    public synchronized void stop() {
+        mIsStarted = false;
+        mIsRegistering = false;
+        cancelRetryLocked();
+        if (mIdleTask != null) {
+            mIdleTask.cancel(false);
+            mIdleTask = null;
+        }
+        setAvailableLocked(false);
+        mReadyFuture.completeExceptionally(
+            new HandoverSendException(HandoverSendException.ERR_NOT_INITIALIZED, "handover sdk deinit."));
+    }
+
+    /**
+     * 停止重试并停止调度线程，之后不能再调用start
+     */
+    synchronized void shutdown() {
+        stop();
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * 接续服务状态变化，在接续框架回调线程中调用
+     *
+     * @param state 接续服务状态
+     */
+    public synchronized void onStateChanged(int state) {
+        if (!mIsStarted) {
+            return;
+        }
+        boolean isRegistering = mIsRegistering;
+        mIsRegistering = false;
+        if (state == HANDOVER_STATE_AVAILABLE) {
+            mAttempt = 0;
+            cancelRetryLocked();
+            markActive();
+            setAvailableLocked(true);
+            return;
+        }
+        if (mIsAvailable) {
+            // 服务刚退出，允许awaitAvailable立即重新注册
+            mLastAttemptTime = 0;
+        }
+        setAvailableLocked(false);
+        // 注册失败或服务退出时按退避重试，已在等待重试时不重复调度
+        if (isRegistering || mRetryTask == null) {
+            cancelRetryLocked();
+            scheduleRetryLocked();
+        }
+    }
+
+    /**
+     * 记录一次数据收发，用于判断是否长时间空闲
+     */
+    public void markActive() {
+        mLastActiveTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 设置无数据收发多久后提前重新注册
+     *
+     * @param idleReregisterMs 空闲时间，小于等于0时不提前重新注册
+     */
+    public synchronized void setIdleReregisterTimeout(long idleReregisterMs) {
+        mIdleReregisterMs = idleReregisterMs;
+        if (mIsStarted) {
+            scheduleIdleCheckLocked();
+        }
+    }
+
+    /**
+     * 判断接续服务当前是否可用
+     *
+     * @return true:接续服务可用
+     */
+    public boolean isAvailable() {
+        return mIsAvailable;
+    }
+
+    /**
+     * 等待接续服务可用，当前不可用时立即发起一次注册
+     *
+     * @param timeoutMs 等待时间
+     * @return 接续服务可用时完成，超时或已停止时以HandoverSendException异常完成
+     */
+    public CompletableFuture<Void> awaitAvailable(long timeoutMs) {
+        CompletableFuture<Void> ready;
+        synchronized (this) {
+            ready = mReadyFuture;
+            if (ready.isDone()) {
+                return ready;
+            }
+            if (mIsStarted && SystemClock.elapsedRealtime() - mLastAttemptTime >= MIN_KICK_INTERVAL_MS) {
+                attemptLocked();
+            }
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        ready.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                result.complete(null);
+            } else {
+                result.completeExceptionally(throwable);
+            }
+        });
+        ScheduledFuture<?> timeout = mExecutor.schedule(() -> result.completeExceptionally(
+            new HandoverSendException(HandoverSendException.ERR_NOT_AVAILABLE, "handover service not available.")),
+            timeoutMs, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, throwable) -> timeout.cancel(false));
+        return result;
+    }
+
+    /**
+     * 添加接续服务状态监听
+     *
+     * @param listener 监听
+     */
+    public void addStateListener(StateListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * 移除接续服务状态监听
+     *
+     * @param listener 监听
+     */
+    public void removeStateListener(StateListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 计算第attempt次重试的退避时间：min(上限, 初始值 * 2^attempt)，在其一半到全部之间随机取值
+     */
+    static long backoffOf(int attempt, long initialBackoffMs, long maxBackoffMs) {
+        long backoff = initialBackoffMs << Math.min(attempt, MAX_BACKOFF_SHIFT);
+        if (backoff <= 0 || backoff > maxBackoffMs) {
+            backoff = maxBackoffMs;
+        }
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+
+    private void attemptLocked() {
+        cancelRetryLocked();
+        mLastAttemptTime = SystemClock.elapsedRealtime();
+        mIsRegistering = true;
+        Log.i(TAG, "attempt: register handover service, attempt " + mAttempt);
+        mRegisterAction.run();
+        // 超时未收到可用回调时按失败处理，收到可用回调后取消
+        mRetryTask = mExecutor.schedule(this::onRegisterTimeout, REGISTER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onRegisterTimeout() {
+        mRetryTask = null;
+        mIsRegistering = false;
+        if (mIsStarted && !mIsAvailable) {
+            Log.w(TAG, "onRegisterTimeout: no state callback.");
+            scheduleRetryLocked();
+        }
+    }
+
+    private void scheduleRetryLocked() {
+        long delay = backoffOf(mAttempt, mInitialBackoffMs, mMaxBackoffMs);
+        mAttempt++;
+        Log.i(TAG, "scheduleRetry: retry in " + delay + "ms");
+        mRetryTask = mExecutor.schedule(this::onRetry, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onRetry() {
+        mRetryTask = null;
+        if (mIsStarted && !mIsAvailable) {
+            attemptLocked();
+        }
+    }
+
+    private void cancelRetryLocked() {
+        if (mRetryTask != null) {
+            mRetryTask.cancel(false);
+            mRetryTask = null;
+        }
+    }
+
+    private void scheduleIdleCheckLocked() {
+        if (mIdleTask != null) {
+            mIdleTask.cancel(false);
+            mIdleTask = null;
+        }
+        long period = mIdleReregisterMs;
+        if (period > 0) {
+            // 按空闲时间的一半检查，空闲超时后最多再等半个周期
+            mIdleTask = mExecutor.scheduleWithFixedDelay(this::onIdleCheck, period / 2, period / 2,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void onIdleCheck() {
+        if (!mIsStarted || !mIsAvailable || mRetryTask != null) {
+            return;
+        }
+        long idleTime = SystemClock.elapsedRealtime() - mLastActiveTime;
+        if (idleTime >= mIdleReregisterMs) {
+            Log.i(TAG, "onIdleCheck: idle " + idleTime + "ms, warm re-register.");
+            markActive();
+            mLastAttemptTime = SystemClock.elapsedRealtime();
+            mRegisterAction.run();
+        }
+    }
+
+    private void setAvailableLocked(boolean isAvailable) {
+        if (isAvailable) {
+            mReadyFuture.complete(null);
+        } else if (mReadyFuture.isDone()) {
+            mReadyFuture = new CompletableFuture<>();
+        }
+        if (mIsAvailable == isAvailable) {
+            return;
+        }
+        mIsAvailable = isAvailable;
+        for (StateListener listener : mListeners) {
+            listener.onAvailabilityChanged(isAvailable);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.util.Log;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 接续结果反馈
+ * Sink端接续数据处理(解码、文件转存)完成时立即反馈结果，处理失败时反馈对应的错误码；
+ * 截止时间前未完成时反馈超时失败，之后再完成的结果不再反馈。接续服务不可用时反馈在OutboundQueue中排队。
+ * 分块文件的中间分块由分块确认应答，处理成功时不反馈接续结果，避免Source端提前结束会话
+ *
+ * @since 2023-04-06
+ */
+class ResultFeedbackTracker {
+    /**
+     * 接续数据处理的默认截止时间
+     */
+    static final long DEFAULT_DEADLINE_MS = 10 * 1000;
+
+    private static final String TAG = "HandoverDemo-ResultFeedbackTracker";
+
+    private static final int RESULT_SUCCESS = 0;
+
+    /**
+     * 处理成功但不需要反馈，错误码均为负数，不会与之冲突
+     */
+    private static final int RESULT_NO_FEEDBACK = 1;
+
+    private final HandoverManager mHandoverManager;
+
+    private final ScheduledThreadPoolExecutor mTimer;
+
+    ResultFeedbackTracker(HandoverManager handoverManager) {
+        this.mHandoverManager = handoverManager;
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+            runnable -> new Thread(runnable, "handover-feedback"));
+        timer.setRemoveOnCancelPolicy(true);
+        this.mTimer = timer;
+    }
+
+    /**
+     * 停止超时定时线程，未完成的处理不再超时反馈
+     */
+    void shutdown() {
+        mTimer.shutdownNow();
+    }
+
+    /**
+     * 接续数据处理完成或超时后反馈接续结果
+     *
+     * @param peerNodeId Source端设备ID
+     * @param processing 接续数据处理，以HandoverReceiveException异常完成时反馈其错误码
+     * @param deadlineMs 截止时间，单位毫秒
+     * @return 反馈发送结果
+     */
+    CompletableFuture<Void> feedbackOnCompletion(String peerNodeId, CompletableFuture<?> processing,
+        long deadlineMs) {
+        return feedbackOnCompletion(peerNodeId, processing, deadlineMs, value -> false);
+    }
+
+    /**
+     * 接续数据处理完成或超时后反馈接续结果，处理结果为中间结果时不反馈
+     *
+     * @param peerNodeId Source端设备ID
+     * @param processing 接续数据处理，以HandoverReceiveException异常完成时反馈其错误码
+     * @param deadlineMs 截止时间，单位毫秒
+     * @param isIntermediate 判断处理结果是否为中间结果，如分块文件尚未全部接收
+     * @return 反馈发送结果，中间结果不反馈时直接完成
+     */
+    <T> CompletableFuture<Void> feedbackOnCompletion(String peerNodeId, CompletableFuture<T> processing,
+        long deadlineMs, Predicate<? super T> isIntermediate) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = mTimer.schedule(() -> {
+            if (result.complete(HandoverReceiveException.ERR_TIMEOUT)) {
+                Log.w(TAG, "feedbackOnCompletion: " + peerNodeId + " not done in " + deadlineMs + "ms.");
+            }
+        }, deadlineMs, TimeUnit.MILLISECONDS);
+        processing.whenComplete((value, throwable) -> {
+            timeout.cancel(false);
+            if (throwable != null) {
+                result.complete(errorCodeOf(throwable));
+            } else {
+                result.complete(isIntermediate.test(value) ? RESULT_NO_FEEDBACK : RESULT_SUCCESS);
+            }
+        });
+        return result.thenCompose(errorCode -> errorCode == RESULT_NO_FEEDBACK
+            ? CompletableFuture.completedFuture(null)
+            : mHandoverManager.continuityResultFeedbackAsync(peerNodeId, errorCode == RESULT_SUCCESS, errorCode));
+    }
+
+    private static int errorCodeOf(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause() : throwable;
+        if (cause instanceof HandoverReceiveException) {
+            return ((HandoverReceiveException) cause).getErrorCode();
+        }
+        Log.e(TAG, "errorCodeOf: unexpected " + cause.getClass().getSimpleName());
+        return HandoverReceiveException.ERR_UNKNOWN;
+    }
+}
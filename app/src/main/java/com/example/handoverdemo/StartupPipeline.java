@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 启动流水线
+ * 相互独立的启动步骤在后台线程中并行执行，暂不需要的步骤推迟到首次使用时执行；
+ * 每个步骤都包在Trace section中并记录开始时间和耗时，启动完成后统一输出，便于分析冷启动耗时分布
+ *
+ * @since 2023-04-08
+ */
+public class StartupPipeline {
+    private static final String TAG = "HandoverDemo-StartupPipeline";
+
+    private static final int DEFAULT_THREADS = 2;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final float NANOS_PER_MILLI = 1000000f;
+
+    private static final AtomicInteger COOKIE_GENERATOR = new AtomicInteger();
+
+    private final String mName;
+
+    private final int mCookie = COOKIE_GENERATOR.incrementAndGet();
+
+    private final long mStartTime = SystemClock.elapsedRealtimeNanos();
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final List<String> mRecords = new ArrayList<>();
+
+    private boolean mIsFinished;
+
+    /**
+     * 推迟到首次使用时执行的步骤，多次获取时只执行一次
+     *
+     * @param <T> 步骤结果类型
+     */
+    public final class Deferred<T> {
+        private final String mStep;
+
+        private final Supplier<T> mAction;
+
+        private CompletableFuture<T> mFuture;
+
+        private Deferred(String step, Supplier<T> action) {
+            this.mStep = step;
+            this.mAction = action;
+        }
+
+        /**
+         * 获取步骤结果，首次调用时在后台线程中开始执行
+         *
+         * @return 步骤结果
+         */
+        public synchronized CompletableFuture<T> get() {
+            if (mFuture == null) {
+                mFuture = supply(mStep, mAction);
+            }
+            return mFuture;
+        }
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param name 流水线名称，作为Trace section和日志的前缀
+     */
+    public StartupPipeline(String name) {
+        this.mName = name;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "handover-startup"));
+        // 启动完成后空闲线程自动退出，推迟执行的步骤需要时再创建线程
+        executor.allowCoreThreadTimeOut(true);
+        this.mExecutor = executor;
+        Trace.beginAsyncSection(mName, mCookie);
+    }
+
+    /**
+     * 在当前线程中执行步骤
+     *
+     * @param step 步骤名称
+     * @param action 步骤
+     */
+    public void trace(String step, Runnable action) {
+        traced(step, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 在后台线程中执行步骤
+     *
+     * @param step 步骤名称
+     * @param action 步骤
+     * @return 步骤完成时完成
+     */
+    public CompletableFuture<Void> run(String step, Runnable action) {
+        return CompletableFuture.runAsync(() -> trace(step, action), mExecutor);
+    }
+
+    /**
+     * 在后台线程中执行有结果的步骤
+     *
+     * @param step 步骤名称
+     * @param action 步骤
+     * @param <T> 步骤结果类型
+     * @return 步骤结果
+     */
+    public <T> CompletableFuture<T> supply(String step, Supplier<T> action) {
+        return supply(step, action, mExecutor);
+    }
+
+    /**
+     * 在指定线程中执行有结果的步骤
+     *
+     * @param step 步骤名称
+     * @param action 步骤
+     * @param executor 执行步骤的线程
+     * @param <T> 步骤结果类型
+     * @return 步骤结果
+     */
+    public <T> CompletableFuture<T> supply(String step, Supplier<T> action, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> traced(step, action), executor);
+    }
+
+    /**
+     * 创建推迟到首次使用时执行的步骤
+     *
+     * @param step 步骤名称
+     * @param action 步骤
+     * @param <T> 步骤结果类型
+     * @return 推迟执行的步骤
+     */
+    public <T> Deferred<T> defer(String step, Supplier<T> action) {
+        return new Deferred<>(step, action);
+    }
+
+    /**
+     * 启动完成，输出各步骤的耗时，之后执行的步骤(如推迟执行的步骤)单独输出
+     */
+    public void finish() {
+        String summary;
+        synchronized (mRecords) {
+            if (mIsFinished) {
+                return;
+            }
+            mIsFinished = true;
+            StringBuilder builder = new StringBuilder(mName).append(" finished in ")
+                .append(formatMs(SystemClock.elapsedRealtimeNanos() - mStartTime)).append("ms");
+            for (String record : mRecords) {
+                builder.append("\n  ").append(record);
+            }
+            mRecords.clear();
+            summary = builder.toString();
+        }
+        Trace.endAsyncSection(mName, mCookie);
+        Log.i(TAG, summary);
+    }
+
+    private <T> T traced(String step, Supplier<T> action) {
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        Trace.beginSection(mName + ":" + step);
+        try {
+            return action.get();
+        } finally {
+            Trace.endSection();
+            long endTime = SystemClock.elapsedRealtimeNanos();
+            record(String.format(Locale.ROOT, "%s: +%sms took %sms on %s", step, formatMs(startTime - mStartTime),
+                formatMs(endTime - startTime), Thread.currentThread().getName()));
+        }
+    }
+
+    private void record(String record) {
+        synchronized (mRecords) {
+            if (!mIsFinished) {
+                mRecords.add(record);
+                return;
+            }
+        }
+        Log.i(TAG, mName + " " + record);
+    }
+
+    private static String formatMs(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / NANOS_PER_MILLI);
+    }
+}
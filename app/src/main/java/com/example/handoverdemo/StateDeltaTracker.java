@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 接续消息增量传输
+ * 两端按对端NodeId各自保存最近一次经CONTINUITY_RESULT_FEEDBACK确认的状态快照作为基准，
+ * 反馈中携带所确认状态的版本号，与其他接续数据(如接续文件)的反馈不会误确认状态：
+ * Source端有已确认的基准时只发送相对基准的二进制差分和基准版本号，否则发送带版本号的完整内容；
+ * Sink端基准缺失或版本不一致时反馈失败，Source端清除基准后重新发送完整内容。
+ * Sink端基准保存在应用私有目录中，应用被接续拉起时也能直接应用差分
+ *
+ * @since 2023-03-29
+ */
+public class StateDeltaTracker {
+    private static final String TAG = "HandoverDemo-StateDeltaTracker";
+
+    /**
+     * 状态消息前缀，格式：前缀 + F:版本号:完整内容 或 前缀 + D:基准版本号:版本号:Base64差分
+     */
+    private static final String STATE_PREFIX = "\u0004STA1:";
+
+    private static final char TYPE_FULL = 'F';
+
+    private static final char TYPE_DELTA = 'D';
+
+    private static final char SEPARATOR = ':';
+
+    private static final String BASE_DIR = "state_base";
+
+    private final Context mContext;
+
+    private final AtomicLong mVersionGenerator = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Source端：对端已确认的基准
+     */
+    private final Map<String, Snapshot> mAckedSnapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Source端：已发送等待对端确认的状态
+     */
+    private final Map<String, Snapshot> mSentSnapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Sink端：已确认接收的基准
+     */
+    private final Map<String, Snapshot> mBaseSnapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Sink端：已接收尚未反馈的状态
+     */
+    private final Map<String, Snapshot> mReceivedSnapshots = new ConcurrentHashMap<>();
+
+    private static final class Snapshot {
+        private final long mVersion;
+
+        private final String mContent;
+
+        private final boolean mIsDelta;
+
+        Snapshot(long version, String content, boolean isDelta) {
+            this.mVersion = version;
+            this.mContent = content;
+            this.mIsDelta = isDelta;
+        }
+    }
+
+    StateDeltaTracker(Context context) {
+        this.mContext = context;
+    }
+
+    /**
+     * 判断接续消息是否为状态消息
+     *
+     * @param content 接续消息内容
+     * @return true:状态消息
+     */
+    public static boolean isStateMsg(String content) {
+        return content != null && content.startsWith(STATE_PREFIX);
+    }
+
+    /**
+     * Source端：编码要发送给对端的状态，差分更小时发送差分
+     *
+     * @param peerNodeId 对端设备ID
+     * @param state 完整状态
+     * @return 状态消息
+     */
+    public String encode(String peerNodeId, String state) {
+        return encode(peerNodeId, state, nextVersion());
+    }
+
+    /**
+     * Source端：以指定版本号编码要发送给对端的状态，用于预先准备的状态在多个对端间共用同一完整编码
+     *
+     * @param peerNodeId 对端设备ID
+     * @param state 完整状态
+     * @param version 版本号，由nextVersion分配
+     * @return 状态消息
+     */
+    String encode(String peerNodeId, String state, long version) {
+        Snapshot acked = mAckedSnapshots.get(peerNodeId);
+        String encoded = encodeFull(state, version);
+        boolean isDelta = false;
+        if (acked != null) {
+            byte[] delta = DeltaCodec.diff(acked.mContent.getBytes(StandardCharsets.UTF_8),
+                state.getBytes(StandardCharsets.UTF_8));
+            String deltaEncoded = STATE_PREFIX + TYPE_DELTA + SEPARATOR + acked.mVersion + SEPARATOR + version
+                    + SEPARATOR + Base64.getEncoder().encodeToString(delta);
+            if (deltaEncoded.length() < encoded.length()) {
+                Log.i(TAG, "encode: delta " + deltaEncoded.length() + " of full " + encoded.length());
+                encoded = deltaEncoded;
+                isDelta = true;
+            }
+        }
+        mSentSnapshots.put(peerNodeId, new Snapshot(version, state, isDelta));
+        return encoded;
+    }
+
+    /**
+     * 分配新的状态版本号
+     *
+     * @return 版本号
+     */
+    long nextVersion() {
+        return mVersionGenerator.incrementAndGet();
+    }
+
+    /**
+     * 完整状态的编码，与对端无关
+     *
+     * @param state 完整状态
+     * @param version 版本号
+     * @return 状态消息
+     */
+    static String encodeFull(String state, long version) {
+        return STATE_PREFIX + TYPE_FULL + SEPARATOR + version + SEPARATOR + state;
+    }
+
+    /**
+     * Source端：发送了非状态消息，之后收到的反馈与已发送的状态无关
+     *
+     * @param peerNodeId 对端设备ID
+     */
+    public void discardSent(String peerNodeId) {
+        mSentSnapshots.remove(peerNodeId);
+    }
+
+    /**
+     * Source端：收到对端的接续结果反馈
+     *
+     * @param peerNodeId 对端设备ID
+     * @param isSuccess 接续是否成功
+     * @param version 反馈所确认的状态版本号，不包含时为0
+     * @return 以差分发送但对端应用失败时返回需要重新完整发送的状态，其他情况返回null
+     */
+    public String onFeedbackReceived(String peerNodeId, boolean isSuccess, long version) {
+        Snapshot sent = mSentSnapshots.get(peerNodeId);
+        if (sent == null) {
+            return null;
+        }
+        if (isSuccess) {
+            // 只有确认的正是已发送的状态时才作为基准，其他接续数据的成功反馈不影响基准
+            if (version == sent.mVersion && mSentSnapshots.remove(peerNodeId, sent)) {
+                mAckedSnapshots.put(peerNodeId, sent);
+            }
+            return null;
+        }
+        // 失败反馈确认了其他状态时与已发送的状态无关；差分应用失败时Sink端没有收到状态，反馈中不包含版本号
+        if ((version != 0 && version != sent.mVersion) || !mSentSnapshots.remove(peerNodeId, sent)) {
+            return null;
+        }
+        // 对端基准缺失或已过期，之后发送完整内容
+        mAckedSnapshots.remove(peerNodeId);
+        return sent.mIsDelta ? sent.mContent : null;
+    }
+
+    /**
+     * Sink端：解码收到的接续消息
+     *
+     * @param peerNodeId 对端设备ID
+     * @param content 接续消息内容
+     * @return 完整状态，非状态消息原样返回，基准缺失或差分无效时返回null
+     */
+    public String decode(String peerNodeId, String content) {
+        if (!isStateMsg(content)) {
+            return content;
+        }
+        try {
+            int typeIndex = STATE_PREFIX.length();
+            char type = content.charAt(typeIndex);
+            int versionStart = typeIndex + 2;
+            int versionEnd = content.indexOf(SEPARATOR, versionStart);
+            long firstVersion = Long.parseLong(content.substring(versionStart, versionEnd));
+            if (type == TYPE_FULL) {
+                String state = content.substring(versionEnd + 1);
+                rememberReceived(peerNodeId, new Snapshot(firstVersion, state, false));
+                return state;
+            }
+            if (type != TYPE_DELTA) {
+                Log.e(TAG, "decode: unknown type " + type);
+                return null;
+            }
+            int deltaStart = content.indexOf(SEPARATOR, versionEnd + 1);
+            long version = Long.parseLong(content.substring(versionEnd + 1, deltaStart));
+            Snapshot base = getBase(peerNodeId);
+            if (base == null || base.mVersion != firstVersion) {
+                Log.w(TAG, "decode: base " + firstVersion + " missing, need full state.");
+                return null;
+            }
+            byte[] state = DeltaCodec.patch(base.mContent.getBytes(StandardCharsets.UTF_8),
+                Base64.getDecoder().decode(content.substring(deltaStart + 1)));
+            if (state == null) {
+                return null;
+            }
+            String result = new String(state, StandardCharsets.UTF_8);
+            rememberReceived(peerNodeId, new Snapshot(version, result, false));
+            return result;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            Log.e(TAG, "decode: invalid state msg.");
+            return null;
+        }
+    }
+
+    /**
+     * Sink端：获取已接收尚未反馈的状态版本号，发送接续结果反馈时携带
+     *
+     * @param peerNodeId 对端设备ID
+     * @return 版本号，没有待反馈的状态时返回0
+     */
+    public long getReceivedVersion(String peerNodeId) {
+        Snapshot received = mReceivedSnapshots.get(peerNodeId);
+        return received == null ? 0 : received.mVersion;
+    }
+
+    /**
+     * Sink端：已向对端发送携带版本号的接续结果反馈，成功时将该版本的状态作为之后差分的基准
+     *
+     * @param peerNodeId 对端设备ID
+     * @param isSuccess 接续是否成功
+     * @param version 反馈中携带的状态版本号，不包含时为0
+     */
+    public void onFeedbackSent(String peerNodeId, boolean isSuccess, long version) {
+        Snapshot received = mReceivedSnapshots.get(peerNodeId);
+        // 发送反馈期间收到了新的状态时保留新状态，等待其反馈
+        if (received == null || received.mVersion != version || !mReceivedSnapshots.remove(peerNodeId, received)
+            || !isSuccess) {
+            return;
+        }
+        mBaseSnapshots.put(peerNodeId, received);
+        saveBase(peerNodeId, received);
+    }
+
+    /**
+     * Sink端：预先从磁盘加载对端的差分基准，避免收到增量内容时在接收路径上读取文件
+     *
+     * @param peerNodeId 对端设备ID
+     */
+    void preloadBase(String peerNodeId) {
+        getBase(peerNodeId);
+    }
+
+    private void rememberReceived(String peerNodeId, Snapshot snapshot) {
+        if (!TextUtils.isEmpty(peerNodeId)) {
+            mReceivedSnapshots.put(peerNodeId, snapshot);
+        }
+    }
+
+    private Snapshot getBase(String peerNodeId) {
+        if (TextUtils.isEmpty(peerNodeId)) {
+            return null;
+        }
+        Snapshot base = mBaseSnapshots.get(peerNodeId);
+        if (base == null) {
+            base = loadBase(peerNodeId);
+            if (base != null) {
+                mBaseSnapshots.putIfAbsent(peerNodeId, base);
+            }
+        }
+        return base;
+    }
+
+    private File getBaseFile(String peerNodeId) {
+        File dir = new File(mContext.getFilesDir(), BASE_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "getBaseFile: create dir failed.");
+        }
+        return new File(dir, Integer.toHexString(peerNodeId.hashCode()));
+    }
+
+    private void saveBase(String peerNodeId, Snapshot snapshot) {
+        File file = getBaseFile(peerNodeId);
+        File tempFile = new File(file.getPath() + ".tmp");
+        byte[] content = snapshot.mContent.getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(tempFile))) {
+            outputStream.writeUTF(peerNodeId);
+            outputStream.writeLong(snapshot.mVersion);
+            outputStream.writeInt(content.length);
+            outputStream.write(content);
+        } catch (IOException e) {
+            Log.e(TAG, "saveBase: catch IOException.");
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "saveBase: rename failed.");
+        }
+    }
+
+    private Snapshot loadBase(String peerNodeId) {
+        File file = getBaseFile(peerNodeId);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+            if (!TextUtils.equals(peerNodeId, inputStream.readUTF())) {
+                return null;
+            }
+            long version = inputStream.readLong();
+            int length = inputStream.readInt();
+            if (length < 0 || length > file.length()) {
+                Log.e(TAG, "loadBase: invalid base file.");
+                return null;
+            }
+            byte[] content = new byte[length];
+            inputStream.readFully(content);
+            return new Snapshot(version, new String(content, StandardCharsets.UTF_8), false);
+        } catch (IOException e) {
+            Log.e(TAG, "loadBase: catch IOException.");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试运行环境，在临时目录中创建Context替身，assets目录直接使用app模块中的资源
+ *
+ * @since 2023-03-31
+ */
+final class BenchmarkContexts {
+    /**
+     * 由build.gradle通过-D参数传入app模块的assets目录
+     */
+    private static final String ASSETS_DIR_PROPERTY = "handover.assetsDir";
+
+    private BenchmarkContexts() {
+    }
+
+    static Context create() throws IOException {
+        File rootDir = Files.createTempDirectory("handover-bench").toFile();
+        File assetsDir = new File(System.getProperty(ASSETS_DIR_PROPERTY, "../app/src/main/assets"));
+        return new Context(rootDir, assetsDir);
+    }
+
+    static void delete(Context context) throws IOException {
+        File rootDir = context.getFilesDir().getParentFile();
+        try (Stream<File> files = Files.walk(rootDir.toPath()).map(path -> path.toFile())) {
+            files.sorted(Comparator.reverseOrder()).forEach(File::delete);
+        }
+    }
+}
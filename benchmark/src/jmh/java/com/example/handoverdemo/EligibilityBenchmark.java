@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 能力协商策略的加载、解析和缓存命中的开销
+ *
+ * @since 2023-03-31
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EligibilityBenchmark {
+    private Context mContext;
+
+    private EligibilityCache mEligibilityCache;
+
+    private String mPolicyStr;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mContext = BenchmarkContexts.create();
+        mEligibilityCache = new EligibilityCache(mContext, EligibilityCache.DEFAULT_ELIGIBILITY_ASSET);
+        mPolicyStr = CommonUtils.getJsonStrFromAssets(mContext, EligibilityCache.DEFAULT_ELIGIBILITY_ASSET);
+        if (!mEligibilityCache.preload()) {
+            throw new IllegalStateException("eligibility asset not found, check -Dhandover.assetsDir");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkContexts.delete(mContext);
+    }
+
+    /**
+     * 缓存失效后重新从assets读取、解析和校验
+     */
+    @Benchmark
+    public Optional<JSONObject> coldLoad() {
+        mEligibilityCache.invalidate();
+        return mEligibilityCache.getBroadcastEnvelope();
+    }
+
+    /**
+     * 只读取assets
+     */
+    @Benchmark
+    public String readAsset() {
+        return CommonUtils.getJsonStrFromAssets(mContext, EligibilityCache.DEFAULT_ELIGIBILITY_ASSET);
+    }
+
+    /**
+     * 只解析和校验，不读取assets
+     */
+    @Benchmark
+    public boolean parseAndValidate() {
+        return mEligibilityCache.reload(mPolicyStr);
+    }
+
+    /**
+     * 缓存命中
+     */
+    @Benchmark
+    public Optional<JSONObject> cachedEnvelope() {
+        return mEligibilityCache.getBroadcastEnvelope();
+    }
+}
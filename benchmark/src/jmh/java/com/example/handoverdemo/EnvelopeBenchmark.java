@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+
+import com.hihonor.android.magicx.connect.handover.IHandoverSdkCallback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HandoverManager.send*信令构造和发送线程切换的开销，接续框架替身只计数不投递
+ *
+ * @since 2023-03-31
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EnvelopeBenchmark {
+    private static final String PEER_NODE_ID = "bench-peer";
+
+    /**
+     * 接续消息长度
+     */
+    @Param({"64", "4096", "65536"})
+    public int mMsgSize;
+
+    /**
+     * 对端能力，0表示不压缩，7表示支持压缩、内容存储和增量传输
+     */
+    @Param({"0", "7"})
+    public int mPeerCapabilities;
+
+    private Context mContext;
+
+    private HandoverManager mHandoverManager;
+
+    private String mMsg;
+
+    private List<String> mFanOutPeers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mContext = BenchmarkContexts.create();
+        mHandoverManager = HandoverManager.getInstance(mContext);
+        mHandoverManager.init(new IHandoverSdkCallback() {
+            @Override
+            public void onStateChg(int state) {
+            }
+
+            @Override
+            public void onDataEvent(String data) {
+            }
+        });
+        HandoverSession session = mHandoverManager.getSessionRegistry().getOrCreate(PEER_NODE_ID);
+        session.setCapabilities(mPeerCapabilities);
+        session.markCapabilitiesAnnounced();
+        StringBuilder builder = new StringBuilder(mMsgSize);
+        while (builder.length() < mMsgSize) {
+            builder.append("{\"page\":").append(builder.length()).append(",\"text\":\"接续测试消息\"}");
+        }
+        mMsg = builder.substring(0, mMsgSize);
+        mFanOutPeers = Arrays.asList("peer-1", "peer-2", "peer-3", "peer-4");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkContexts.delete(mContext);
+    }
+
+    @Benchmark
+    public void sendContinuityMsg() {
+        mHandoverManager.sendContinuityMsgAsync(PEER_NODE_ID, mMsg).join();
+    }
+
+    @Benchmark
+    public void sendNormalMsg() {
+        mHandoverManager.sendNormalMsgAsync(PEER_NODE_ID, mMsg).join();
+    }
+
+    @Benchmark
+    public void continuityResultFeedback() {
+        mHandoverManager.continuityResultFeedbackAsync(PEER_NODE_ID, true).join();
+    }
+
+    @Benchmark
+    public FanOutSender.FanOutResult fanOutContinuityMsg() {
+        return mHandoverManager.fanOutContinuityMsg(mFanOutPeers, mMsg).join();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * onDataEvent消息解码和分发的开销，处理器与MainActivity中读取的字段一致
+ *
+ * @since 2023-03-31
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventDispatchBenchmark {
+    /**
+     * NORMAL_MSG消息内容长度
+     */
+    @Param({"32", "4096"})
+    public int mContentSize;
+
+    private HandoverEventDispatcher mDispatcher;
+
+    private Blackhole mBlackhole;
+
+    private String mRequestEvent;
+
+    private String mNormalMsgEvent;
+
+    private String mFeedbackEvent;
+
+    private String mDeviceEvent;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mDispatcher = new HandoverEventDispatcher()
+            .register(HandoverSdk.MsgType.CONTINUITY_REQUEST, event -> mBlackhole.consume(event.getNodeId()))
+            .register(HandoverSdk.MsgType.NORMAL_MSG, event -> mBlackhole.consume(event.getDataContent()))
+            .register(HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK,
+                event -> mBlackhole.consume(event.getDataContent()))
+            .register(HandoverSdk.MsgType.CONTINUITY_DEVICE_EVENT,
+                event -> mBlackhole.consume(event.getInt(HandoverManager.ONLINE_DEV_NUM)));
+        StringBuilder content = new StringBuilder(mContentSize);
+        while (content.length() < mContentSize) {
+            content.append('x');
+        }
+        mRequestEvent = "{\"msgType\":\"CONTINUITY_REQUEST\",\"nodeId\":\"node-0123456789abcdef\"}";
+        mNormalMsgEvent = "{\"msgType\":\"NORMAL_MSG\",\"nodeId\":\"node-0123456789abcdef\",\"dataContent\":\""
+            + content + "\"}";
+        mFeedbackEvent = "{\"msgType\":\"CONTINUITY_RESULT_FEEDBACK\",\"nodeId\":\"node-0123456789abcdef\","
+            + "\"dataContent\":\"SUCCESS\"}";
+        mDeviceEvent = "{\"msgType\":\"CONTINUITY_DEVICE_EVENT\",\"dataContent\":\"online\",\"onlineDevNum\":2}";
+    }
+
+    @Benchmark
+    public void continuityRequest() {
+        mDispatcher.dispatch(mRequestEvent);
+    }
+
+    @Benchmark
+    public void normalMsg() {
+        mDispatcher.dispatch(mNormalMsgEvent);
+    }
+
+    @Benchmark
+    public void resultFeedback() {
+        mDispatcher.dispatch(mFeedbackEvent);
+    }
+
+    @Benchmark
+    public void deviceEvent() {
+        mDispatcher.dispatch(mDeviceEvent);
+    }
+}
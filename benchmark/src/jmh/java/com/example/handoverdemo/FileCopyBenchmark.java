@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.core.content.FileProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接续文件转存的吞吐量
+ *
+ * @since 2023-03-31
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileCopyBenchmark {
+    /**
+     * 接续文件大小
+     */
+    @Param({"4096", "262144", "4194304", "33554432"})
+    public int mFileSize;
+
+    private Context mContext;
+
+    private Uri mSourceUri;
+
+    private String mSavePath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mContext = BenchmarkContexts.create();
+        File source = new File(mContext.getCacheDir(), "source.bin");
+        byte[] buffer = new byte[64 * 1024];
+        new Random(mFileSize).nextBytes(buffer);
+        try (FileOutputStream outputStream = new FileOutputStream(source)) {
+            for (int written = 0; written < mFileSize; written += buffer.length) {
+                outputStream.write(buffer, 0, Math.min(buffer.length, mFileSize - written));
+            }
+        }
+        mSourceUri = FileProvider.getUriForFile(mContext, "com.example.handoverdemo.provider", source);
+        mSavePath = new File(mContext.getExternalFilesDir(null), "ContinuityFile.jpg").getPath();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkContexts.delete(mContext);
+    }
+
+    @Benchmark
+    public int copyUriFile() {
+        return CommonUtils.copyUriFile(mContext, mSourceUri, mSavePath);
+    }
+
+    /**
+     * 转存时同步计算SHA-256，用于内容寻址存储
+     */
+    @Benchmark
+    public FileCopyEngine.CopyResult copyAndHash() {
+        return FileCopyEngine.copyAndHash(mContext, mSourceUri, new File(mSavePath));
+    }
+}
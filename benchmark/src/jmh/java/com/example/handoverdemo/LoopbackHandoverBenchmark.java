@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import android.content.Context;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+import com.hihonor.android.magicx.connect.handover.IHandoverSdkCallback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过LoopbackHandoverNetwork在进程内完成一轮接续消息收发的耗时：
+ * Source端发送接续消息，Sink端解码后反馈接续结果，Source端收到反馈为一轮
+ *
+ * @since 2023-04-03
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoopbackHandoverBenchmark {
+    private static final String SOURCE_NODE_ID = "loopback-source";
+
+    private static final String SINK_NODE_ID = "loopback-sink";
+
+    private static final long ROUND_TIMEOUT_MS = 5000;
+
+    /**
+     * 接续消息内容长度
+     */
+    @Param({"256", "65536"})
+    public int mMsgSize;
+
+    /**
+     * 模拟的单向投递时延，单位毫秒
+     */
+    @Param({"0", "2"})
+    public long mLatencyMs;
+
+    private Context mSourceContext;
+
+    private Context mSinkContext;
+
+    private LoopbackHandoverNetwork mNetwork;
+
+    private HandoverManager mSource;
+
+    private HandoverManager mSink;
+
+    private String mMsg;
+
+    private volatile CompletableFuture<Boolean> mPendingFeedback;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mSourceContext = BenchmarkContexts.create();
+        mSinkContext = BenchmarkContexts.create();
+        File tempDir = new File(mSinkContext.getCacheDir(), "loopback");
+        mNetwork = new LoopbackHandoverNetwork(new LoopbackHandoverNetwork.Config().setLatencyMs(mLatencyMs)
+            .setSeed(1), tempDir);
+        mSource = HandoverManager.newInstance(mSourceContext, mNetwork.createEndpoint(SOURCE_NODE_ID, null));
+        mSink = HandoverManager.newInstance(mSinkContext, mNetwork.createEndpoint(SINK_NODE_ID,
+            (peerNodeId, dataContent, uri) -> {
+                String msg = mSink.decodeContinuityMsg(peerNodeId, dataContent);
+                mSink.continuityResultFeedbackAsync(peerNodeId, msg != null);
+            }));
+        HandoverEventDispatcher dispatcher = new HandoverEventDispatcher()
+            .register(HandoverSdk.MsgType.CONTINUITY_RESULT_FEEDBACK, event -> {
+                CompletableFuture<Boolean> pending = mPendingFeedback;
+                if (pending != null) {
+                    pending.complete(HandoverSdk.ContinuityResult.SUCCESS.name().equals(event.getDataContent()));
+                }
+            });
+        mSource.init(new IdleCallback() {
+            @Override
+            public void onDataEvent(String data) {
+                dispatcher.dispatch(data);
+            }
+        });
+        mSink.init(new IdleCallback());
+        StringBuilder msg = new StringBuilder(mMsgSize);
+        while (msg.length() < mMsgSize) {
+            msg.append("{\"key\":").append(msg.length()).append('}');
+        }
+        mMsg = msg.substring(0, mMsgSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mSource.close();
+        mSink.close();
+        mNetwork.shutdown();
+        BenchmarkContexts.delete(mSourceContext);
+        BenchmarkContexts.delete(mSinkContext);
+    }
+
+    @Benchmark
+    public boolean continuityMsgRoundTrip() throws Exception {
+        CompletableFuture<Boolean> pending = new CompletableFuture<>();
+        mPendingFeedback = pending;
+        mSource.sendContinuityMsgAsync(SINK_NODE_ID, mMsg);
+        return pending.get(ROUND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static class IdleCallback implements IHandoverSdkCallback {
+        @Override
+        public void onStateChg(int state) {
+        }
+
+        @Override
+        public void onDataEvent(String data) {
+        }
+    }
+}
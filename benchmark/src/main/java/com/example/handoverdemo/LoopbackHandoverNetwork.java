@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.example.handoverdemo;
+
+import static com.example.handoverdemo.HandoverManager.DATA_CONTENT;
+import static com.example.handoverdemo.HandoverManager.ERROR_CODE;
+import static com.example.handoverdemo.HandoverManager.HANDOVER_STATE_AVAILABLE;
+import static com.example.handoverdemo.HandoverManager.HANDOVER_STATE_UNAVAILABLE;
+import static com.example.handoverdemo.HandoverManager.MSG_TYPE;
+import static com.example.handoverdemo.HandoverManager.NODE_ID;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.hihonor.android.magicx.connect.handover.HandoverSdk;
+import com.hihonor.android.magicx.connect.handover.IHandoverSdkCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内回环接续网络，用于压力测试和长稳测试
+ * 多个模拟端点通过HandoverTransport接入，信令按配置的时延、抖动和丢包率投递到目标端点的回调中；
+ * 接续消息和接续文件投递给目标端点的DataReceiver(对应真实场景中拉起应用的Intent)，
+ * 接续文件先拷贝到临时目录再以file Uri投递，目标端点反馈接续结果后删除
+ *
+ * @since 2023-04-03
+ */
+public class LoopbackHandoverNetwork {
+    /**
+     * 目标端点不存在或不可用时CONTINUITY_FAILED消息中的错误码
+     */
+    public static final int ERR_PEER_UNREACHABLE = -1;
+
+    private static final String TAG = "HandoverDemo-LoopbackNetwork";
+
+    private final Config mConfig;
+
+    private final File mTempDir;
+
+    private final Map<String, Endpoint> mEndpoints = new ConcurrentHashMap<>();
+
+    private final ScheduledThreadPoolExecutor mDeliveryExecutor;
+
+    private final Random mRandom;
+
+    private final AtomicLong mSentCount = new AtomicLong();
+
+    private final AtomicLong mDeliveredCount = new AtomicLong();
+
+    private final AtomicLong mLostCount = new AtomicLong();
+
+    private final AtomicLong mFailedCount = new AtomicLong();
+
+    private final AtomicLong mFileSeq = new AtomicLong();
+
+    /**
+     * 网络配置
+     */
+    public static final class Config {
+        private long mLatencyMs;
+
+        private long mJitterMs;
+
+        private double mLossRate;
+
+        private double mServiceDropRate;
+
+        private boolean mIsAutoRequest = true;
+
+        private int mDeliveryThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        private long mSeed = System.nanoTime();
+
+        /**
+         * 设置固定投递时延
+         *
+         * @param latencyMs 时延，单位毫秒
+         * @return 当前配置
+         */
+        public Config setLatencyMs(long latencyMs) {
+            this.mLatencyMs = latencyMs;
+            return this;
+        }
+
+        /**
+         * 设置投递时延的随机抖动，实际时延为固定时延加上[0, jitterMs]内的随机值
+         *
+         * @param jitterMs 抖动，单位毫秒
+         * @return 当前配置
+         */
+        public Config setJitterMs(long jitterMs) {
+            this.mJitterMs = jitterMs;
+            return this;
+        }
+
+        /**
+         * 设置信令丢失概率
+         *
+         * @param lossRate 丢失概率，取值0~1
+         * @return 当前配置
+         */
+        public Config setLossRate(double lossRate) {
+            this.mLossRate = lossRate;
+            return this;
+        }
+
+        /**
+         * 设置每次发送时发送端接续服务断开的概率，断开后需要重新注册
+         *
+         * @param serviceDropRate 断开概率，取值0~1
+         * @return 当前配置
+         */
+        public Config setServiceDropRate(double serviceDropRate) {
+            this.mServiceDropRate = serviceDropRate;
+            return this;
+        }
+
+        /**
+         * 设置收到接续广播的端点是否自动向广播端发送接续请求(模拟用户点击接续触点)
+         *
+         * @param isAutoRequest true:自动发送接续请求
+         * @return 当前配置
+         */
+        public Config setAutoRequest(boolean isAutoRequest) {
+            this.mIsAutoRequest = isAutoRequest;
+            return this;
+        }
+
+        /**
+         * 设置投递线程数，回调在投递线程中并发执行
+         *
+         * @param deliveryThreads 投递线程数
+         * @return 当前配置
+         */
+        public Config setDeliveryThreads(int deliveryThreads) {
+            this.mDeliveryThreads = deliveryThreads;
+            return this;
+        }
+
+        /**
+         * 设置随机数种子，用于复现
+         *
+         * @param seed 随机数种子
+         * @return 当前配置
+         */
+        public Config setSeed(long seed) {
+            this.mSeed = seed;
+            return this;
+        }
+    }
+
+    /**
+     * 接续数据接收者，对应真实场景中接续框架拉起应用时携带的Intent
+     */
+    public interface DataReceiver {
+        /**
+         * 收到接续消息或接续文件
+         *
+         * @param peerNodeId Source端设备ID
+         * @param dataContent 接续消息内容，接续文件时为null
+         * @param uri 接续文件Uri，接续消息时为null
+         */
+        void onHandoverData(String peerNodeId, String dataContent, Uri uri);
+    }
+
+    /**
+     * 回环网络中的一个端点
+     */
+    public final class Endpoint implements HandoverTransport {
+        private final String mNodeId;
+
+        private final DataReceiver mReceiver;
+
+        /**
+         * 作为Sink端收到的、等待反馈后删除的接续文件，key为Source端设备ID
+         */
+        private final Map<String, List<File>> mStagedFiles = new HashMap<>();
+
+        private volatile IHandoverSdkCallback mCallback;
+
+        private volatile boolean mIsAvailable;
+
+        Endpoint(String nodeId, DataReceiver receiver) {
+            this.mNodeId = nodeId;
+            this.mReceiver = receiver;
+        }
+
+        /**
+         * 获取端点设备ID
+         *
+         * @return 端点设备ID
+         */
+        public String getNodeId() {
+            return mNodeId;
+        }
+
+        @Override
+        public void register(Context context, IHandoverSdkCallback callback) {
+            mCallback = callback;
+            mIsAvailable = true;
+            deliver(() -> callback.onStateChg(HANDOVER_STATE_AVAILABLE));
+        }
+
+        @Override
+        public void unregister(Context context) {
+            mIsAvailable = false;
+            mCallback = null;
+        }
+
+        @Override
+        public void send(Context context, JSONObject envelope, Uri uri) {
+            mSentCount.incrementAndGet();
+            if (!mIsAvailable) {
+                mLostCount.incrementAndGet();
+                return;
+            }
+            if (nextDouble() < mConfig.mServiceDropRate) {
+                dropService(mNodeId);
+                mLostCount.incrementAndGet();
+                return;
+            }
+            HandoverSdk.MsgType msgType;
+            try {
+                msgType = HandoverSdk.MsgType.valueOf(String.valueOf(envelope.get(MSG_TYPE)));
+            } catch (JSONException | IllegalArgumentException e) {
+                Log.e(TAG, "send: invalid msgType.");
+                mFailedCount.incrementAndGet();
+                return;
+            }
+            if (msgType == HandoverSdk.MsgType.CONTINUITY_BROADCAST) {
+                onBroadcast();
+                return;
+            }
+            if (msgType == HandoverSdk.MsgType.CONTINUITY_STOP_BROADCAST) {
+                return;
+            }
+            Endpoint target = mEndpoints.get(envelope.optString(NODE_ID));
+            if (target == null || !target.mIsAvailable) {
+                mFailedCount.incrementAndGet();
+                deliverEvent(this, HandoverSdk.MsgType.CONTINUITY_FAILED, envelope.optString(NODE_ID),
+                    "peer unreachable", ERR_PEER_UNREACHABLE);
+                return;
+            }
+            if (nextDouble() < mConfig.mLossRate) {
+                mLostCount.incrementAndGet();
+                return;
+            }
+            String dataContent = envelope.optString(DATA_CONTENT, null);
+            if ((msgType == HandoverSdk.MsgType.CONTINUITY_MSG || msgType == HandoverSdk.MsgType.CONTINUITY_FILE)
+                    && target.mReceiver == null) {
+                Log.w(TAG, "send: " + target.mNodeId + " has no data receiver.");
+                mFailedCount.incrementAndGet();
+                return;
+            }
+            switch (msgType) {
+                case CONTINUITY_MSG:
+                    deliver(() -> target.mReceiver.onHandoverData(mNodeId, dataContent, null));
+                    break;
+                case CONTINUITY_FILE:
+                    File staged = stageFile(context, uri, target);
+                    if (staged == null) {
+                        mFailedCount.incrementAndGet();
+                        return;
+                    }
+                    deliver(() -> target.mReceiver.onHandoverData(mNodeId, null, Uri.fromFile(staged)));
+                    break;
+                case CONTINUITY_RESULT_FEEDBACK:
+                    // 接续框架收到反馈后删除接续缓存文件
+                    deleteStagedFiles(target.mNodeId);
+                    deliverEvent(target, msgType, mNodeId, dataContent, envelope.optInt(ERROR_CODE));
+                    break;
+                case NORMAL_MSG:
+                    deliverEvent(target, msgType, mNodeId, dataContent, 0);
+                    break;
+                default:
+                    Log.w(TAG, "send: unsupported msgType " + msgType);
+                    break;
+            }
+        }
+
+        private void onBroadcast() {
+            if (!mConfig.mIsAutoRequest) {
+                return;
+            }
+            for (Endpoint endpoint : mEndpoints.values()) {
+                if (endpoint != this && endpoint.mIsAvailable) {
+                    deliverEvent(this, HandoverSdk.MsgType.CONTINUITY_REQUEST, endpoint.mNodeId, null, 0);
+                }
+            }
+        }
+
+        private File stageFile(Context context, Uri uri, Endpoint target) {
+            File dir = new File(mTempDir, target.mNodeId);
+            if (!dir.exists() && !dir.mkdirs()) {
+                Log.e(TAG, "stageFile: create temp dir failed.");
+                return null;
+            }
+            File staged = new File(dir, mNodeId.hashCode() + "-" + mFileSeq.incrementAndGet());
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
+                 OutputStream outputStream = new FileOutputStream(staged)) {
+                if (inputStream == null) {
+                    return null;
+                }
+                int count;
+                while ((count = inputStream.read(buffer)) > 0) {
+                    outputStream.write(buffer, 0, count);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "stageFile: catch IOException.");
+                deleteQuietly(staged);
+                return null;
+            }
+            synchronized (target.mStagedFiles) {
+                target.mStagedFiles.computeIfAbsent(mNodeId, key -> new ArrayList<>()).add(staged);
+            }
+            return staged;
+        }
+
+        private void deleteStagedFiles(String sourceNodeId) {
+            List<File> files;
+            synchronized (mStagedFiles) {
+                files = mStagedFiles.remove(sourceNodeId);
+            }
+            if (files != null) {
+                for (File file : files) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建回环网络
+     *
+     * @param config 网络配置
+     * @param tempDir 接续文件临时目录
+     */
+    public LoopbackHandoverNetwork(Config config, File tempDir) {
+        this.mConfig = config;
+        this.mTempDir = tempDir;
+        this.mRandom = new Random(config.mSeed);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.mDeliveryExecutor = new ScheduledThreadPoolExecutor(config.mDeliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "loopback-delivery-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 创建端点，通过HandoverManager.newInstance(context, endpoint)接入
+     *
+     * @param nodeId 端点设备ID
+     * @param receiver 接续数据接收者，只作为Source端时可为null
+     * @return 端点
+     */
+    public Endpoint createEndpoint(String nodeId, DataReceiver receiver) {
+        Endpoint endpoint = new Endpoint(nodeId, receiver);
+        mEndpoints.put(nodeId, endpoint);
+        return endpoint;
+    }
+
+    /**
+     * 模拟端点的接续服务断开，端点收到不可用状态回调，需要重新注册后才能继续收发
+     *
+     * @param nodeId 端点设备ID
+     */
+    public void dropService(String nodeId) {
+        Endpoint endpoint = mEndpoints.get(nodeId);
+        if (endpoint == null || !endpoint.mIsAvailable) {
+            return;
+        }
+        endpoint.mIsAvailable = false;
+        IHandoverSdkCallback callback = endpoint.mCallback;
+        if (callback != null) {
+            deliver(() -> callback.onStateChg(HANDOVER_STATE_UNAVAILABLE));
+        }
+    }
+
+    /**
+     * 获取统计信息
+     *
+     * @return 发送、投递、丢失、失败的信令数
+     */
+    public String getStats() {
+        return "sent=" + mSentCount.get() + " delivered=" + mDeliveredCount.get() + " lost=" + mLostCount.get()
+                + " failed=" + mFailedCount.get();
+    }
+
+    /**
+     * 关闭回环网络，未投递的信令直接丢弃
+     */
+    public void shutdown() {
+        mDeliveryExecutor.shutdownNow();
+        mEndpoints.clear();
+    }
+
+    private void deliverEvent(Endpoint target, HandoverSdk.MsgType msgType, String fromNodeId, String dataContent,
+        int errorCode) {
+        JSONObject event = new JSONObject();
+        try {
+            event.put(MSG_TYPE, msgType.name());
+            event.put(NODE_ID, fromNodeId);
+            if (dataContent != null) {
+                event.put(DATA_CONTENT, dataContent);
+            }
+            if (msgType == HandoverSdk.MsgType.CONTINUITY_FAILED || errorCode != 0) {
+                event.put(ERROR_CODE, errorCode);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        String data = event.toString();
+        deliver(() -> {
+            IHandoverSdkCallback callback = target.mCallback;
+            if (callback != null && target.mIsAvailable) {
+                callback.onDataEvent(data);
+            }
+        });
+    }
+
+    private void deliver(Runnable runnable) {
+        Runnable counted = () -> {
+            mDeliveredCount.incrementAndGet();
+            runnable.run();
+        };
+        long delay = mConfig.mLatencyMs;
+        if (mConfig.mJitterMs > 0) {
+            delay += (long) (nextDouble() * (mConfig.mJitterMs + 1));
+        }
+        try {
+            if (delay <= 0) {
+                mDeliveryExecutor.execute(counted);
+            } else {
+                mDeliveryExecutor.schedule(counted, delay, TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "deliver: network is shut down.");
+        }
+    }
+
+    private double nextDouble() {
+        return mRandom.nextDouble();
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "deleteQuietly: delete " + file.getName() + " failed.");
+        }
+    }
+}
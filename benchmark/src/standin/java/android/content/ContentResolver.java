@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.content;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+/**
+ * JVM基准测试用的ContentResolver替身，file和content Uri均按路径打开本地文件
+ *
+ * @since 2023-03-31
+ */
+public class ContentResolver {
+    public ParcelFileDescriptor openFileDescriptor(Uri uri, String mode) throws FileNotFoundException {
+        return ParcelFileDescriptor.open(new File(uri.getPath()), ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    public InputStream openInputStream(Uri uri) throws FileNotFoundException {
+        return new FileInputStream(uri.getPath());
+    }
+}
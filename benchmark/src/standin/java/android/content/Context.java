@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.content;
+
+import android.content.res.AssetManager;
+
+import java.io.File;
+
+/**
+ * JVM基准测试用的Context替身，所有应用目录都位于构造时指定的根目录下
+ *
+ * @since 2023-03-31
+ */
+public class Context {
+    private final File mRootDir;
+
+    private final AssetManager mAssetManager;
+
+    private final ContentResolver mContentResolver = new ContentResolver();
+
+    public Context(File rootDir, File assetsDir) {
+        this.mRootDir = rootDir;
+        this.mAssetManager = new AssetManager(assetsDir);
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public String getPackageName() {
+        return "com.example.handoverdemo";
+    }
+
+    public File getFilesDir() {
+        return mkdirs(new File(mRootDir, "files"));
+    }
+
+    public File getCacheDir() {
+        return mkdirs(new File(mRootDir, "cache"));
+    }
+
+    public File getExternalFilesDir(String type) {
+        return mkdirs(new File(mRootDir, "external"));
+    }
+
+    public AssetManager getAssets() {
+        return mAssetManager;
+    }
+
+    public ContentResolver getContentResolver() {
+        return mContentResolver;
+    }
+
+    private static File mkdirs(File dir) {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+}
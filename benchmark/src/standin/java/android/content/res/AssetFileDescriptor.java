@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.content.res;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * JVM基准测试用的AssetFileDescriptor替身，资源文件未压缩，起始偏移量为0
+ *
+ * @since 2023-03-31
+ */
+public class AssetFileDescriptor implements Closeable {
+    private final ParcelFileDescriptor mFd;
+
+    private final long mStartOffset;
+
+    private final long mLength;
+
+    public AssetFileDescriptor(ParcelFileDescriptor fd, long startOffset, long length) {
+        this.mFd = fd;
+        this.mStartOffset = startOffset;
+        this.mLength = length;
+    }
+
+    public ParcelFileDescriptor getParcelFileDescriptor() {
+        return mFd;
+    }
+
+    public long getStartOffset() {
+        return mStartOffset;
+    }
+
+    public long getLength() {
+        return mLength;
+    }
+
+    public FileInputStream createInputStream() throws IOException {
+        return new FileInputStream(mFd.getFileDescriptor());
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFd.close();
+    }
+}
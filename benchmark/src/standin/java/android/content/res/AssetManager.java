@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.content.res;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JVM基准测试用的AssetManager替身，从本地目录中读取资源文件
+ *
+ * @since 2023-03-31
+ */
+public class AssetManager {
+    private final File mAssetsDir;
+
+    public AssetManager(File assetsDir) {
+        this.mAssetsDir = assetsDir;
+    }
+
+    public InputStream open(String fileName) throws IOException {
+        return new FileInputStream(new File(mAssetsDir, fileName));
+    }
+
+    public AssetFileDescriptor openFd(String fileName) throws IOException {
+        File file = new File(mAssetsDir, fileName);
+        return new AssetFileDescriptor(ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY), 0,
+            file.length());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.net;
+
+import java.io.File;
+
+/**
+ * JVM基准测试用的Uri替身，只支持file和content两种scheme，content Uri的路径即为文件的绝对路径
+ *
+ * @since 2023-03-31
+ */
+public final class Uri {
+    private final String mScheme;
+
+    private final String mAuthority;
+
+    private final String mPath;
+
+    private Uri(String scheme, String authority, String path) {
+        this.mScheme = scheme;
+        this.mAuthority = authority;
+        this.mPath = path;
+    }
+
+    public static Uri fromFile(File file) {
+        return new Uri("file", "", file.getAbsolutePath());
+    }
+
+    public static Uri parse(String uriString) {
+        int schemeEnd = uriString.indexOf("://");
+        if (schemeEnd < 0) {
+            return new Uri("", "", uriString);
+        }
+        int pathStart = uriString.indexOf('/', schemeEnd + 3);
+        if (pathStart < 0) {
+            return new Uri(uriString.substring(0, schemeEnd), uriString.substring(schemeEnd + 3), "");
+        }
+        return new Uri(uriString.substring(0, schemeEnd), uriString.substring(schemeEnd + 3, pathStart),
+            uriString.substring(pathStart));
+    }
+
+    public String getScheme() {
+        return mScheme;
+    }
+
+    public String getAuthority() {
+        return mAuthority;
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    @Override
+    public String toString() {
+        return mScheme + "://" + mAuthority + mPath;
+    }
+}
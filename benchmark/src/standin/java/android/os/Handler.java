@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.os;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM基准测试用的Handler替身，只支持post系列接口
+ *
+ * @since 2023-03-31
+ */
+public class Handler {
+    private final Looper mLooper;
+
+    private final Map<Runnable, ScheduledFuture<?>> mDelayed = new ConcurrentHashMap<>();
+
+    public Handler(Looper looper) {
+        this.mLooper = looper;
+    }
+
+    public final Looper getLooper() {
+        return mLooper;
+    }
+
+    public final boolean post(Runnable runnable) {
+        mLooper.mExecutor.execute(runnable);
+        return true;
+    }
+
+    public final boolean postDelayed(Runnable runnable, long delayMillis) {
+        ScheduledFuture<?> future = mLooper.mExecutor.schedule(() -> {
+            mDelayed.remove(runnable);
+            runnable.run();
+        }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        mDelayed.put(runnable, future);
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable runnable) {
+        ScheduledFuture<?> future = mDelayed.remove(runnable);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.os;
+
+/**
+ * JVM基准测试用的HandlerThread替身
+ *
+ * @since 2023-03-31
+ */
+public class HandlerThread {
+    private final Looper mLooper;
+
+    public HandlerThread(String name) {
+        this.mLooper = new Looper(name);
+    }
+
+    public void start() {
+    }
+
+    public Looper getLooper() {
+        return mLooper;
+    }
+
+    public boolean quit() {
+        mLooper.quit();
+        return true;
+    }
+
+    public boolean quitSafely() {
+        mLooper.quitSafely();
+        return true;
+    }
+}
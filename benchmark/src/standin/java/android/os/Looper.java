@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.os;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * JVM基准测试用的Looper替身，每个Looper对应一个单线程调度器
+ *
+ * @since 2023-03-31
+ */
+public final class Looper {
+    private static final Looper MAIN_LOOPER = new Looper("main");
+
+    final ScheduledExecutorService mExecutor;
+
+    Looper(String name) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.mExecutor = executor;
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN_LOOPER;
+    }
+
+    public void quit() {
+        mExecutor.shutdownNow();
+    }
+
+    public void quitSafely() {
+        mExecutor.shutdown();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.os;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * JVM基准测试用的ParcelFileDescriptor替身，只支持只读打开普通文件
+ *
+ * @since 2023-03-31
+ */
+public class ParcelFileDescriptor implements Closeable {
+    public static final int MODE_READ_ONLY = 0x10000000;
+
+    private final RandomAccessFile mFile;
+
+    private ParcelFileDescriptor(RandomAccessFile file) {
+        this.mFile = file;
+    }
+
+    public static ParcelFileDescriptor open(File file, int mode) throws FileNotFoundException {
+        return new ParcelFileDescriptor(new RandomAccessFile(file, "r"));
+    }
+
+    public FileDescriptor getFileDescriptor() {
+        try {
+            return mFile.getFD();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getStatSize() {
+        try {
+            return mFile.length();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.os;
+
+/**
+ * JVM基准测试用的SystemClock替身，基于System.nanoTime
+ *
+ * @since 2023-03-31
+ */
+public final class SystemClock {
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / NANOS_PER_MILLI;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime();
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package android.text;
+
+/**
+ * JVM基准测试用的TextUtils替身
+ *
+ * @since 2023-03-31
+ */
+public final class TextUtils {
+    private TextUtils() {
+    }
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
+    public static boolean equals(CharSequence left, CharSequence right) {
+        if (left == right) {
+            return true;
+        }
+        return left != null && right != null && left.toString().equals(right.toString());
+    }
+}
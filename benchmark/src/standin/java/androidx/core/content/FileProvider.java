@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package androidx.core.content;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+
+/**
+ * JVM基准测试用的FileProvider替身，content Uri的路径直接使用文件的绝对路径
+ *
+ * @since 2023-03-31
+ */
+public class FileProvider {
+    public static Uri getUriForFile(Context context, String authority, File file) {
+        return Uri.parse("content://" + authority + file.getAbsolutePath());
+    }
+}
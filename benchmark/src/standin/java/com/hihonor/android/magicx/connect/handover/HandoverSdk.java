@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.hihonor.android.magicx.connect.handover;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM基准测试用的接续服务SDK替身
+ * 注册后立即上报接续服务可用，发送的信令只计数不投递，基准测试只测量应用侧的开销
+ *
+ * @since 2023-03-31
+ */
+public class HandoverSdk {
+    private static final HandoverSdk INSTANCE = new HandoverSdk();
+
+    private final AtomicLong mSendCount = new AtomicLong();
+
+    public enum MsgType {
+        CONTINUITY_BROADCAST,
+        CONTINUITY_STOP_BROADCAST,
+        CONTINUITY_REQUEST,
+        CONTINUITY_MSG,
+        CONTINUITY_FILE,
+        CONTINUITY_RESULT_FEEDBACK,
+        NORMAL_MSG,
+        CONTINUITY_FAILED,
+        CONTINUITY_DEVICE_EVENT
+    }
+
+    public enum ContinuityResult {
+        SUCCESS,
+        FAILED
+    }
+
+    public static HandoverSdk getInstance() {
+        return INSTANCE;
+    }
+
+    public void registerHandover(Context context, IHandoverSdkCallback callback) {
+        callback.onStateChg(0);
+    }
+
+    public void unregisterHandover(Context context) {
+    }
+
+    public void handoverSend(Context context, JSONObject jsonObject) {
+        mSendCount.incrementAndGet();
+    }
+
+    public void handoverSend(Context context, JSONObject jsonObject, Uri uri) {
+        handoverSend(context, jsonObject);
+    }
+
+    /**
+     * 获取已发送的信令数
+     *
+     * @return 已发送的信令数
+     */
+    public long getSendCount() {
+        return mSendCount.get();
+    }
+}
@@ -0,0 +1,15 @@
+/*
+ * Copyright (c) Honor Device Co., Ltd. 2022-2023. All rights reserved.
+ */
+package com.hihonor.android.magicx.connect.handover;
+
+/**
+ * JVM基准测试用的接续框架回调接口替身，与接续服务SDK中的接口一致
+ *
+ * @since 2023-03-31
+ */
+public interface IHandoverSdkCallback {
+    void onStateChg(int state);
+
+    void onDataEvent(String data);
+}